@@ -0,0 +1,42 @@
+package com.fave100;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import com.fave100.server.ranking.MasterListEngine;
+import com.fave100.server.ranking.SnapshotFaveListSource;
+import com.fave100.server.ranking.TsvMasterListSink;
+
+/**
+ * Rebuilds every master list from a FaveList snapshot on all cores, without App Engine,
+ * to benchmark the build or backfill the lists offline.
+ *
+ * Usage: MasterListRebuilder <snapshot file> <output tsv file> [threads]
+ */
+public class MasterListRebuilder {
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.err.println("Usage: MasterListRebuilder <snapshot file> <output tsv file> [threads]");
+			System.exit(1);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		long started = System.currentTimeMillis();
+		SnapshotFaveListSource source = SnapshotFaveListSource.open(new File(args[0]));
+		long loaded = System.currentTimeMillis();
+		System.out.println("Read " + source.getHashtags().size() + " hashtags in " + (loaded - started) + "ms");
+
+		long listCount;
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), "UTF-8"))) {
+			MasterListEngine engine = new MasterListEngine(source, new TsvMasterListSink(out));
+			listCount = engine.buildAll(threads);
+		}
+		long built = System.currentTimeMillis();
+		System.out.println("Built master lists from " + listCount + " FaveLists on " + threads + " threads in " + (built - loaded) + "ms");
+	}
+}
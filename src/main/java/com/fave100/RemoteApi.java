@@ -22,6 +22,7 @@ import com.fave100.server.domain.appuser.AppUser;
 import com.fave100.server.domain.appuser.Following;
 import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.domain.favelist.Hashtag;
 import com.fave100.shared.Constants;
 import com.google.appengine.tools.remoteapi.RemoteApiInstaller;
@@ -282,6 +283,7 @@ public class RemoteApi {
 			}
 		}
 		ofy().save().entities(faveLists).now();
+		ofy().save().entities(FaveListSummary.of(faveLists)).now();
 		System.out.println("Replaced:");
 		System.out.println(id + " ----> " + newId);
 		System.out.println(id.replaceAll(".", " ") + " ----> " + song);
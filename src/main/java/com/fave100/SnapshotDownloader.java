@@ -0,0 +1,75 @@
+package com.fave100;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fave100.server.domain.SnapshotChunk;
+import com.fave100.server.domain.SnapshotExport;
+import com.fave100.server.ranking.SnapshotWriter;
+import com.google.appengine.tools.remoteapi.RemoteApiInstaller;
+import com.google.appengine.tools.remoteapi.RemoteApiOptions;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.ObjectifyService;
+
+/**
+ * Copies the chunks of a finished snapshot export into a local snapshot file, which
+ * {@link MasterListRebuilder} can replay. Chunks are fetched by key a few at a time,
+ * so the download runs in bounded memory whatever the size of the export.
+ *
+ * Usage: SnapshotDownloader <app host> <export id> <snapshot file>
+ */
+public class SnapshotDownloader {
+
+	// Chunks can be close to 1MB each
+	private static int CHUNKS_PER_FETCH = 10;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: SnapshotDownloader <app host> <export id> <snapshot file>");
+			System.exit(1);
+		}
+
+		RemoteApiOptions options = new RemoteApiOptions()
+				.server(args[0], 443)
+				.useApplicationDefaultCredential();
+
+		ObjectifyService.register(SnapshotExport.class);
+		ObjectifyService.register(SnapshotChunk.class);
+
+		RemoteApiInstaller installer = new RemoteApiInstaller();
+		installer.install(options);
+		try {
+			SnapshotExport export = ofy().load().type(SnapshotExport.class).id(Long.parseLong(args[1])).now();
+			if (export == null || !export.isFinished()) {
+				System.err.println("Snapshot export " + args[1] + " doesn't exist or hasn't finished");
+				System.exit(1);
+			}
+
+			try (SnapshotWriter writer = new SnapshotWriter(new FileOutputStream(args[2]), export.getStarted().getTime())) {
+				for (int first = 0; first < export.getChunkCount(); first += CHUNKS_PER_FETCH) {
+					List<Key<SnapshotChunk>> keys = new ArrayList<>();
+					for (int index = first; index < Math.min(first + CHUNKS_PER_FETCH, export.getChunkCount()); index++) {
+						keys.add(SnapshotChunk.key(export.getId(), index));
+					}
+					Map<Key<SnapshotChunk>, SnapshotChunk> chunks = ofy().load().keys(keys);
+					for (Key<SnapshotChunk> key : keys) {
+						SnapshotChunk chunk = chunks.get(key);
+						if (chunk == null)
+							throw new IOException("Missing chunk " + key.getName());
+						writer.writeChunk(chunk.getKind(), chunk.getData());
+					}
+					ofy().clear();
+					System.out.println("Downloaded " + Math.min(first + CHUNKS_PER_FETCH, export.getChunkCount()) + " of " + export.getChunkCount() + " chunks");
+				}
+			}
+		}
+		finally {
+			installer.uninstall();
+		}
+	}
+}
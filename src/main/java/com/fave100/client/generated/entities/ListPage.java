@@ -0,0 +1,71 @@
+/*
+* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+*
+* WARNING: THIS IS A GENERATED FILE. ANY CHANGES YOU
+* MAKE WILL BE LOST THE NEXT TIME THIS FILE IS GENERATED
+*
+* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+*/
+
+package com.fave100.client.generated.entities;
+
+import java.util.List;
+
+public class ListPage {
+
+    private String criticUrl;
+    private FollowingResult following;
+    private List<FaveItem> items;
+    private AppUser user;
+    private boolean followed;
+    private String list;
+
+    public String getCriticUrl() {
+        return this.criticUrl;
+    }
+
+    public void setCriticUrl(String criticUrl){
+        this.criticUrl = criticUrl;
+    }
+
+    public FollowingResult getFollowing() {
+        return this.following;
+    }
+
+    public void setFollowing(FollowingResult following){
+        this.following = following;
+    }
+
+    public List<FaveItem> getItems() {
+        return this.items;
+    }
+
+    public void setItems(List<FaveItem> items){
+        this.items = items;
+    }
+
+    public AppUser getUser() {
+        return this.user;
+    }
+
+    public void setUser(AppUser user){
+        this.user = user;
+    }
+
+    public boolean isFollowed() {
+        return this.followed;
+    }
+
+    public void setFollowed(boolean followed){
+        this.followed = followed;
+    }
+
+    public String getList() {
+        return this.list;
+    }
+
+    public void setList(String list){
+        this.list = list;
+    }
+
+}
\ No newline at end of file
@@ -19,6 +19,7 @@ import com.gwtplatform.dispatch.rest.shared.RestAction;
 import javax.ws.rs.Path;
 import javax.ws.rs.GET;
 import com.fave100.client.generated.entities.AppUser;
+import com.fave100.client.generated.entities.ListPage;
 import javax.ws.rs.QueryParam;
 
 @Path("/")
@@ -40,6 +41,10 @@ public interface UsersService extends RestService {
     @Path("/users/{user}/favelists/{list}/critic_url")
     public RestAction<Void> setCriticUrl (@PathParam("user") String user, @PathParam("list") String list, String body);
 
+    @GET
+    @Path("/users/{user}/favelists/{list}/page")
+    public RestAction<ListPage> getListPage (@PathParam("user") String user, @PathParam("list") String list);
+
     @GET
     @Path("/users/{user}/favelists/{list}/critic_url")
     public RestAction<StringResult> getCriticUrl (@PathParam("user") String user, @PathParam("list") String list);
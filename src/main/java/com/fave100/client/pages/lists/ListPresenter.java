@@ -11,7 +11,7 @@ import com.fave100.client.events.song.SongSelectedEvent;
 import com.fave100.client.events.user.UserFollowedEvent;
 import com.fave100.client.events.user.UserUnfollowedEvent;
 import com.fave100.client.generated.entities.AppUser;
-import com.fave100.client.generated.entities.BooleanResult;
+import com.fave100.client.generated.entities.ListPage;
 import com.fave100.client.generated.entities.StringResult;
 import com.fave100.client.pages.PagePresenter;
 import com.fave100.client.pages.lists.widgets.favelist.FavelistPresenter;
@@ -84,6 +84,8 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 	private String _requestedListMode;
 	private boolean isFollowing;
 	private AppUser requestedUser;
+	// Everything the page of another user's list is first drawn from
+	private ListPage _listPage;
 	private final EventBus _eventBus;
 	private PlaceManager _placeManager;
 	private CurrentUser _currentUser;
@@ -205,6 +207,7 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 		super.prepareFromRequest(placeRequest);
 
 		requestedUser = null;
+		_listPage = null;
 		isFollowing = false;
 		// Use parameters to determine what to reveal on page
 		requestedUsername = placeRequest.getParameter(PlaceParams.USER_PARAM, "");
@@ -236,8 +239,8 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 				return;
 			}
 
-			// Otherwise, request the info from the server
-			_api.call(_api.service().users().getAppUser(requestedUsername), new AsyncCallback<AppUser>() {
+			// Otherwise, request the whole page from the server at once
+			_api.call(_api.service().users().getListPage(requestedUsername, _requestedHashtag), new AsyncCallback<ListPage>() {
 
 				@Override
 				public void onFailure(Throwable caught) {
@@ -246,28 +249,13 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 				}
 
 				@Override
-				public void onSuccess(AppUser user) {
-					requestedUser = user;
-					if (!requestedUser.getHashtags().contains(_requestedHashtag)) {
-						_requestedHashtag = Constants.DEFAULT_HASHTAG;
-					}
+				public void onSuccess(ListPage page) {
+					requestedUser = page.getUser();
+					// The user's default list if they don't have the one requested
+					_requestedHashtag = page.getList();
+					isFollowing = page.isFollowed();
+					_listPage = page;
 					showPage();
-
-				}
-			});
-
-			_api.call(_api.service().user().isFollowing(requestedUsername), new AsyncCallback<BooleanResult>() {
-
-				@Override
-				public void onFailure(Throwable caught) {
-					isFollowing = false;
-					refreshFollowCTA();
-				}
-
-				@Override
-				public void onSuccess(BooleanResult result) {
-					isFollowing = result.getValue();
-					refreshFollowCTA();
 				}
 			});
 		}
@@ -277,7 +265,10 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 		_ownPage = _currentUser.isLoggedIn() && _currentUser.equals(requestedUser);
 		refreshFollowCTA();
 
-		if (requestedUser != null && requestedUser.isCritic()) {
+		if (requestedUser != null && requestedUser.isCritic() && _listPage != null) {
+			showCriticUrl(_listPage.getCriticUrl());
+		}
+		else if (requestedUser != null && requestedUser.isCritic()) {
 			_api.call(_api.service().users().getCriticUrl(requestedUsername, _requestedHashtag), new RestCallback<StringResult>() {
 
 				@Override
@@ -287,13 +278,7 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 
 				@Override
 				public void onSuccess(StringResult result) {
-					if (_ownPage) {
-						getView().setCriticUrl(result.getValue());
-						getProxy().manualReveal(ListPresenter.this);
-					}
-					else {
-						Window.Location.replace(result.getValue());
-					}
+					showCriticUrl(result.getValue());
 				}
 
 				@Override
@@ -311,6 +296,7 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 			getView().setPageDetails(requestedUser, _currentUser, Constants.TRENDING_LIST_NAME.equals(_requestedHashtag));
 
 			favelist.setUser(requestedUser);
+			favelist.setListPage(_listPage);
 			favelist.setHashtag(_requestedHashtag);
 			favelist.setListMode(_requestedListMode);
 			favelist.refreshFavelist();
@@ -323,6 +309,7 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 			if (requestedUser != null) {
 				usersFollowing.getView().show();
 				usersFollowing.setUser(requestedUser);
+				usersFollowing.setListPage(_listPage);
 				usersFollowing.refreshLists();
 				globalListDetails.getView().hide();
 			}
@@ -338,6 +325,16 @@ public class ListPresenter extends PagePresenter<ListPresenter.MyView, ListPrese
 
 	}
 
+	private void showCriticUrl(String criticUrl) {
+		if (_ownPage) {
+			getView().setCriticUrl(criticUrl);
+			getProxy().manualReveal(ListPresenter.this);
+		}
+		else {
+			Window.Location.replace(criticUrl);
+		}
+	}
+
 	private void refreshFollowCTA() {
 		if (_ownPage) {
 			getView().setFollowCTA(false, isFollowing);
@@ -14,6 +14,7 @@ import com.fave100.client.events.favelist.FaveListSizeChangedEvent;
 import com.fave100.client.generated.entities.AppUser;
 import com.fave100.client.generated.entities.FaveItem;
 import com.fave100.client.generated.entities.FaveItemCollection;
+import com.fave100.client.generated.entities.ListPage;
 import com.fave100.client.generated.entities.WhylineEdit;
 import com.fave100.client.pagefragments.playlist.PlaylistPresenter;
 import com.fave100.client.pagefragments.popups.addsong.AddSongPresenter;
@@ -58,6 +59,8 @@ public class FavelistPresenter extends
 	private PlaceManager _placeManager;
 	private String _listMode;
 	private PlaylistPresenter _playlistPresenter;
+	// The list page the list was loaded with, used for the first render only
+	private ListPage _listPage;
 	private String _hashtag;
 	private List<FavePickWidget> _widgets;
 	private boolean _descending;
@@ -131,6 +134,17 @@ public class FavelistPresenter extends
 			buildWidgets(_currentUser.getFaveList());
 			return;
 		}
+		// Or from the list page if it came with it
+		else if (_user != null && _listPage != null && _listPage.getList().equals(_hashtag)) {
+			final List<FaveItem> items = _listPage.getItems();
+			_listPage = null;
+			if (items == null) {
+				getView().setListFound(false);
+			}
+			else {
+				buildWidgets(items);
+			}
+		}
 		// Otherwise get it from the server if we are requesting a user's list
 		else if (_user != null) {
 			_api.call(_api.service().users().getFaveList(_user.getUsername(), _hashtag), new AsyncCallback<FaveItemCollection>() {
@@ -392,6 +406,10 @@ public class FavelistPresenter extends
 		_hashtag = hashtag;
 	}
 
+	public void setListPage(final ListPage listPage) {
+		_listPage = listPage;
+	}
+
 	public void setListMode(String listMode) {
 		_listMode = listMode;
 	}
@@ -10,6 +10,7 @@ import com.fave100.client.events.user.UserFollowedEvent;
 import com.fave100.client.events.user.UserUnfollowedEvent;
 import com.fave100.client.generated.entities.AppUser;
 import com.fave100.client.generated.entities.FollowingResult;
+import com.fave100.client.generated.entities.ListPage;
 import com.fave100.client.pages.lists.widgets.usersfollowing.UsersFollowingView.UsersFollowingStyle;
 import com.fave100.client.widgets.Icon;
 import com.fave100.shared.place.NameTokens;
@@ -55,6 +56,8 @@ public class UsersFollowingPresenter extends PresenterWidget<UsersFollowingPrese
 	CurrentUser _currentUser;
 	RequestCache _requestCache;
 	AppUser _user;
+	// The list page the following was loaded with, used for the first render only
+	private ListPage _listPage;
 	private FaveApi _api;
 	private ParameterTokenFormatter _parameterTokenFormatter;
 	int listSize = 0;
@@ -96,6 +99,10 @@ public class UsersFollowingPresenter extends PresenterWidget<UsersFollowingPrese
 		_user = user;
 	}
 
+	public void setListPage(final ListPage listPage) {
+		_listPage = listPage;
+	}
+
 	public void refreshLists() {
 		// First clear the lists
 		getView().setFollowing(null);
@@ -133,6 +140,20 @@ public class UsersFollowingPresenter extends PresenterWidget<UsersFollowingPrese
 				_requestCache.getFollowingForCurrentUser(_currentUser.getUsername(), followingReq);
 			}
 		}
+		// Take it from the list page if it came with it
+		else if (_listPage != null) {
+			final FollowingResult followingResult = _listPage.getFollowing();
+			_listPage = null;
+			// Private following isn't sent
+			if (followingResult == null) {
+				getView().setFollowing(null);
+			}
+			else {
+				buildListItems(false, followingResult.getFollowing());
+				if (!followingResult.isMore())
+					getView().hideMoreFollowingButton();
+			}
+		}
 		else {
 			_api.call(_api.service().users().getFollowing(_user.getUsername(), 0), new AsyncCallback<FollowingResult>() {
 
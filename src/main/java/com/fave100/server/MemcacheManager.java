@@ -1,83 +1,305 @@
 package com.fave100.server;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedHashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import com.fave100.server.cache.FaveItemCodec;
 import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.shared.Constants;
+import com.google.appengine.api.memcache.AsyncMemcacheService;
+import com.google.appengine.api.memcache.Expiration;
 import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheService.IdentifiableValue;
+import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
 
 public class MemcacheManager {
 
 	private static final String NAMESPACE_NEWEST = "Newest";
-	private static final String NAMESPACE_TRENDING = "Trending";
-	private static final String TRENDING_MIN_ID = "min";
-	private static final String TRENDING_SCORE_ID = "s";
-	private static final String TRENDING_REMAINING_ID = "remaining";
+	private static final String NAMESPACE_ACTIVITY = "Activity";
+	private static final String NAMESPACE_VERSION = "Version";
+	private static final String NAMESPACE_LEASE = "Lease";
+	private static final String NAMESPACE_SHARED = "Shared";
+	private static final String ACTIVITY_WRITES_ID = "w";
+	private static final String ACTIVITY_READS_ID = "r";
+	private static final String NEWEST_CURSOR_ID = "c";
 	private static final String ID_SEPARATOR = ":";
+	private static final int SEQUENCE_BYTES = 8;
+	private static final long READS_FLUSH_MILLIS = 10 * 1000;
+	private static final int NEWEST_ATTEMPTS = 10;
 
+	// Master list reads counted on this instance that haven't been added to memcache yet, by memcache id
+	private static final ConcurrentHashMap<String, AtomicLong> PENDING_READS = new ConcurrentHashMap<String, AtomicLong>();
+	private static final AtomicLong lastReadsFlush = new AtomicLong();
+
+	// Record a pick at the head of the list's newest ring, overwriting the oldest once it is full
 	public static void addNewSong(String list, FaveItem faveItem) {
 		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_NEWEST);
 
-		@SuppressWarnings("unchecked")
-		LinkedHashSet<FaveItem> newestItems = (LinkedHashSet<FaveItem>)cache.get(list);
-		if (newestItems == null) {
-			newestItems = new LinkedHashSet<FaveItem>();
-			cache.put(list, newestItems);
+		// The cursor hands out a sequence number to each pick, so parallel adds never share a slot
+		String cursorId = list + ID_SEPARATOR + NEWEST_CURSOR_ID;
+		Long sequence = cache.increment(cursorId, 1L, 0L);
+		// The newest list is only best effort, the next build rebuilds it from the FaveLists
+		if (sequence == null) {
+			Logger.getAnonymousLogger().log(Level.WARNING, "Couldn't add a pick to the newest list of " + list + ", memcache is unavailable");
+			return;
 		}
+		String slotId = newestSlotId(list, sequence);
+		byte[] slot = encodeSlot(sequence, faveItem);
+
+		// A writer that stalled for a whole lap of the ring must not overwrite the newer pick in its slot,
+		// though slots left from before the cursor was reset or evicted are overwritten
+		for (int attempt = 0; attempt < NEWEST_ATTEMPTS; attempt++) {
+			IdentifiableValue current = cache.getIdentifiable(slotId);
+			if (current == null) {
+				if (cache.put(slotId, slot, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT))
+					return;
+				continue;
+			}
 
-		if (newestItems.size() >= Constants.MAX_ITEMS_PER_LIST && !newestItems.contains(faveItem)) {
-			newestItems.remove(newestItems.iterator().next());
+			long currentSequence = slotSequence(current.getValue());
+			if (currentSequence > sequence) {
+				Object cursor = cache.get(cursorId);
+				if (cursor instanceof Number && currentSequence <= ((Number)cursor).longValue())
+					return;
+			}
+			if (cache.putIfUntouched(slotId, current, slot))
+				return;
 		}
-		newestItems.add(faveItem);
-		cache.put(list, newestItems);
+		// Contended or failing every time, which isn't worth holding up the pick for
+		Logger.getAnonymousLogger().log(Level.WARNING, "Gave up adding a pick to the newest list of " + list + " after " + NEWEST_ATTEMPTS + " attempts");
 	}
 
+	// The newest songs of the list, newest first
 	public static List<FaveItem> getNewestSongs(String list) {
 		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_NEWEST);
 
-		@SuppressWarnings("unchecked")
-		List<FaveItem> newestSongs = new ArrayList<FaveItem>((LinkedHashSet<FaveItem>)cache.get(list));
-		Collections.reverse(newestSongs);
+		String cursorId = list + ID_SEPARATOR + NEWEST_CURSOR_ID;
+		List<String> ids = new ArrayList<String>();
+		ids.add(cursorId);
+		for (int i = 0; i < Constants.MAX_ITEMS_PER_LIST; i++) {
+			ids.add(list + ID_SEPARATOR + i);
+		}
+		Map<String, Object> values = cache.getAll(ids);
+
+		List<FaveItem> newestSongs = new ArrayList<FaveItem>();
+		if (!(values.get(cursorId) instanceof Number))
+			return newestSongs;
+
+		// Only slots written in the last lap of the ring count, older ones were left from before the cursor was reset
+		long cursor = ((Number)values.get(cursorId)).longValue();
+		for (long sequence = cursor; sequence > Math.max(0, cursor - Constants.MAX_ITEMS_PER_LIST); sequence--) {
+			Object value = values.get(newestSlotId(list, sequence));
+			if (slotSequence(value) == sequence) {
+				FaveItem faveItem = slotFaveItem(value);
+				if (faveItem != null) {
+					newestSongs.add(faveItem);
+				}
+			}
+		}
 		return newestSongs;
 	}
 
+	// Replace the list's newest ring with the given songs, oldest first
 	public static void setNewestSongs(String list, List<FaveItem> faveItems) {
 		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_NEWEST);
-		cache.put(list, new LinkedHashSet<FaveItem>(faveItems));
+		cache.putAll(newestRing(list, faveItems));
+	}
+
+	// Refill the list's newest ring with the given songs, oldest first, unless it has been started since it went missing
+	public static boolean seedNewestSongs(String list, List<FaveItem> faveItems) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_NEWEST);
+		Map<String, Object> values = newestRing(list, faveItems);
+		// Claim the cursor first, so that picks added from here on go after the seeded ones
+		String cursorId = list + ID_SEPARATOR + NEWEST_CURSOR_ID;
+		if (!cache.put(cursorId, values.remove(cursorId), null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT))
+			return false;
+
+		cache.putAll(values);
+		return true;
+	}
+
+	// Set the newest lists of several hashtags in a single call
+	public static void setNewestSongs(Map<String, List<FaveItem>> newestSongs) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_NEWEST);
+		Map<String, Object> values = new HashMap<String, Object>();
+		for (Map.Entry<String, List<FaveItem>> entry : newestSongs.entrySet()) {
+			values.putAll(newestRing(entry.getKey(), entry.getValue()));
+		}
+		cache.putAll(values);
+	}
+
+	// The cursor and slots of a ring holding the newest of the given songs, oldest first
+	private static Map<String, Object> newestRing(String list, List<FaveItem> faveItems) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		int first = Math.max(0, faveItems.size() - Constants.MAX_ITEMS_PER_LIST);
+		for (int i = first; i < faveItems.size(); i++) {
+			long sequence = i - first + 1;
+			values.put(newestSlotId(list, sequence), encodeSlot(sequence, faveItems.get(i)));
+		}
+		values.put(list + ID_SEPARATOR + NEWEST_CURSOR_ID, (long)(faveItems.size() - first));
+		return values;
 	}
 
-	public static long incrementTrendingMin(long increment, long defaultMin) {
-		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_TRENDING);
-		return cache.increment(TRENDING_MIN_ID, increment, defaultMin);
+	private static String newestSlotId(String list, long sequence) {
+		return list + ID_SEPARATOR + ((sequence - 1) % Constants.MAX_ITEMS_PER_LIST);
 	}
 
-	public static void resetTrendingMin() {
-		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_TRENDING);
-		cache.put(TRENDING_MIN_ID, 0);
+	// A pick in one slot of a newest ring: its place in the sequence of the list's picks, then the pick itself
+	private static byte[] encodeSlot(long sequence, FaveItem faveItem) {
+		byte[] encoded = FaveItemCodec.encode(Collections.singletonList(faveItem));
+		return ByteBuffer.allocate(SEQUENCE_BYTES + encoded.length).putLong(sequence).put(encoded).array();
 	}
 
-	public static long getTrendingScore(FaveItem faveItem) {
-		return getTrendingScore(faveItem, true);
+	// The sequence of a slot, or -1 if there is no slot of this version
+	private static long slotSequence(Object value) {
+		if (!(value instanceof byte[]) || ((byte[])value).length <= SEQUENCE_BYTES || ((byte[])value)[SEQUENCE_BYTES] != FaveItemCodec.VERSION)
+			return -1;
+		return ByteBuffer.wrap((byte[])value).getLong();
 	}
 
-	public static long getTrendingScore(FaveItem faveItem, boolean alter) {
-		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_TRENDING);
-		long score = Math.max(800_000_000 - (new Date().getTime() - faveItem.getDatePicked().getTime()), 0);
-		String id = TRENDING_SCORE_ID + ID_SEPARATOR + faveItem.getSongID();
-		if (alter)
-			return cache.increment(id, score, score);
+	private static FaveItem slotFaveItem(Object value) {
+		byte[] slot = (byte[])value;
+		try {
+			return FaveItemCodec.decode(Arrays.copyOfRange(slot, SEQUENCE_BYTES, slot.length)).get(0);
+		}
+		catch (IOException | IndexOutOfBoundsException e) {
+			Logger.getAnonymousLogger().log(Level.WARNING, "Skipping unreadable newest slot", e);
+			return null;
+		}
+	}
 
-		Long storedScore = (Long)cache.get(id);
-		return storedScore != null ? storedScore : score;
+	// Take a lease on some work, so that only one instance does it at a time, returns false if another holds it
+	public static boolean takeLease(String lease, long expirySeconds) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_LEASE);
+		return cache.put(lease, new Date().getTime(), Expiration.byDeltaSeconds((int)expirySeconds), SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
 	}
 
-	public static long incrementRemainingHashtagCount(long increment) {
-		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_TRENDING);
-		return cache.increment(TRENDING_REMAINING_ID, increment, 0L);
+	public static void releaseLease(String lease) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_LEASE);
+		cache.delete(lease);
+	}
+
+	// The version stamp of a key in one of the local caches. Stamps start from the time they are first
+	// read or changed, so that one that was evicted doesn't start over from a version that was handed out before.
+	// Null if memcache is unavailable, in which case nothing cached under the key can be trusted
+	public static Long getCacheVersion(String cacheName, String key) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_VERSION);
+		return cache.increment(cacheName + ID_SEPARATOR + key, 0L, new Date().getTime());
+	}
+
+	// Publish a change to keys of one of the local caches, without waiting for it
+	public static Future<Map<String, Long>> bumpCacheVersions(String cacheName, Collection<String> keys) {
+		AsyncMemcacheService cache = MemcacheServiceFactory.getAsyncMemcacheService(NAMESPACE_VERSION);
+		List<String> ids = new ArrayList<String>();
+		for (String key : keys) {
+			ids.add(cacheName + ID_SEPARATOR + key);
+		}
+		return cache.incrementAll(ids, 1L, new Date().getTime());
+	}
+
+	// The encoded value of one of the local caches loaded by another instance at the given version of its key, or null if there is none
+	public static byte[] getSharedValue(String cacheName, String key, long version) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_SHARED);
+		Object value = cache.get(cacheName + ID_SEPARATOR + key + ID_SEPARATOR + version);
+		return value instanceof byte[] ? (byte[])value : null;
+	}
+
+	public static void putSharedValue(String cacheName, String key, long version, byte[] value, long expirySeconds) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_SHARED);
+		cache.put(cacheName + ID_SEPARATOR + key + ID_SEPARATOR + version, value, Expiration.byDeltaSeconds((int)expirySeconds));
+	}
+
+	// Count a change to one of the hashtag's lists, for the build scheduler
+	public static void countHashtagWrite(String hashtag) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_ACTIVITY);
+		cache.increment(ACTIVITY_WRITES_ID + ID_SEPARATOR + hashtag.toLowerCase(), 1L, 0L);
+	}
+
+	// Count a read of the hashtag's master lists, for the build scheduler. Reads are counted on the heap
+	// and added to memcache every few seconds in the background, so serving a list never waits on memcache
+	public static void countHashtagRead(String hashtag) {
+		String id = ACTIVITY_READS_ID + ID_SEPARATOR + hashtag.toLowerCase();
+		AtomicLong count = PENDING_READS.get(id);
+		if (count == null) {
+			AtomicLong added = new AtomicLong();
+			count = PENDING_READS.putIfAbsent(id, added);
+			if (count == null) {
+				count = added;
+			}
+		}
+		count.incrementAndGet();
+
+		long now = new Date().getTime();
+		long flushed = lastReadsFlush.get();
+		if (now - flushed >= READS_FLUSH_MILLIS && lastReadsFlush.compareAndSet(flushed, now)) {
+			flushHashtagReads();
+		}
+	}
+
+	// Add the reads counted on this instance to memcache, without waiting for it
+	public static Future<Map<String, Long>> flushHashtagReads() {
+		Map<String, Long> offsets = new HashMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> pending : PENDING_READS.entrySet()) {
+			long count = pending.getValue().getAndSet(0);
+			if (count > 0) {
+				offsets.put(pending.getKey(), count);
+			}
+		}
+		AsyncMemcacheService cache = MemcacheServiceFactory.getAsyncMemcacheService(NAMESPACE_ACTIVITY);
+		return cache.incrementAll(offsets, 0L);
+	}
+
+	// The writes counted for each hashtag since they were last taken, by hashtag
+	public static Map<String, Long> takeHashtagWrites(Collection<String> hashtags) {
+		return takeActivityCounts(ACTIVITY_WRITES_ID, hashtags);
+	}
+
+	// The reads counted for each hashtag since they were last taken, by hashtag
+	public static Map<String, Long> takeHashtagReads(Collection<String> hashtags) {
+		// Other instances flush theirs within a few seconds, reads served here since then shouldn't wait for the next take
+		try {
+			flushHashtagReads().get();
+		}
+		catch (InterruptedException | ExecutionException e) {
+			Logger.getAnonymousLogger().log(Level.WARNING, "Couldn't flush hashtag reads", e);
+		}
+		return takeActivityCounts(ACTIVITY_READS_ID, hashtags);
+	}
+
+	private static Map<String, Long> takeActivityCounts(String prefix, Collection<String> hashtags) {
+		MemcacheService cache = MemcacheServiceFactory.getMemcacheService(NAMESPACE_ACTIVITY);
+		List<String> ids = new ArrayList<String>();
+		for (String hashtag : hashtags) {
+			ids.add(prefix + ID_SEPARATOR + hashtag);
+		}
+		Map<String, Object> storedCounts = cache.getAll(ids);
+
+		// Take the counts off rather than deleting them, so that any counted in between aren't lost
+		Map<String, Long> counts = new HashMap<String, Long>();
+		Map<String, Long> offsets = new HashMap<String, Long>();
+		for (Map.Entry<String, Object> entry : storedCounts.entrySet()) {
+			long count = ((Number)entry.getValue()).longValue();
+			counts.put(entry.getKey().substring(prefix.length() + ID_SEPARATOR.length()), count);
+			offsets.put(entry.getKey(), -count);
+		}
+		if (!offsets.isEmpty()) {
+			cache.incrementAll(offsets);
+		}
+		return counts;
 	}
 }
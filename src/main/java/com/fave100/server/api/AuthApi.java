@@ -40,6 +40,7 @@ import com.fave100.server.domain.appuser.GoogleID;
 import com.fave100.server.domain.appuser.LoginCredentials;
 import com.fave100.server.domain.appuser.TwitterID;
 import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.exceptions.EmailIdAlreadyExistsException;
 import com.fave100.server.exceptions.FacebookIdAlreadyExistsException;
 import com.fave100.server.exceptions.GoogleIdAlreadyExistsException;
@@ -116,7 +117,7 @@ public class AuthApi {
 							final FaveList faveList = new FaveList(username, Constants.DEFAULT_HASHTAG);
 							// Store email address
 							final EmailID emailID = new EmailID(email, appUser);
-							ofy().save().entities(appUser, faveList, emailID).now();
+							ofy().save().entities(appUser, faveList, new FaveListSummary(faveList), emailID).now();
 							return AuthApi.login(request, new LoginCredentials(username, password));
 						}
 						else {
@@ -180,7 +181,7 @@ public class AuthApi {
 						final FaveList faveList = new FaveList(username.getValue(), Constants.DEFAULT_HASHTAG);
 						// Create the GoogleID lookup
 						final GoogleID googleID = new GoogleID(user.getUserId(), appUser);
-						ofy().save().entities(appUser, googleID, faveList).now();
+						ofy().save().entities(appUser, googleID, faveList, new FaveListSummary(faveList)).now();
 						return AuthApi.loginWithGoogle(request);
 					}
 					return null;
@@ -244,7 +245,7 @@ public class AuthApi {
 						final FaveList faveList = new FaveList(username, Constants.DEFAULT_HASHTAG);
 						// Create the TwitterID lookup
 						final TwitterID twitterID = new TwitterID(user.getId(), appUser);
-						ofy().save().entities(appUser, twitterID, faveList).now();
+						ofy().save().entities(appUser, twitterID, faveList, new FaveListSummary(faveList)).now();
 						request.getSession().setAttribute(SessionAttributes.AUTH_USER, username);
 						return appUser;
 					}
@@ -303,7 +304,7 @@ public class AuthApi {
 							final FaveList faveList = new FaveList(username, Constants.DEFAULT_HASHTAG);
 							// Create the Facebook lookup
 							final FacebookID facebookID = new FacebookID(userFacebookId, appUser);
-							ofy().save().entities(appUser, facebookID, faveList).now();
+							ofy().save().entities(appUser, facebookID, faveList, new FaveListSummary(faveList)).now();
 							return AuthApi.loginWithFacebook(request, new StringResult(code));
 						}
 						return null;
@@ -1,11 +1,30 @@
 package com.fave100.server.api;
 
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.cache.LocalCache;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.domain.favelist.FaveListDao;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.server.filters.CompressionFilter;
 
 import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.api.uri.UriTemplate;
 import com.sun.jersey.spi.container.ContainerRequest;
 import com.sun.jersey.spi.container.ContainerRequestFilter;
 import com.sun.jersey.spi.container.ContainerResponse;
@@ -15,17 +34,41 @@ import com.sun.jersey.spi.container.ResourceFilterFactory;
 
 public class CacheFilterFactory implements ResourceFilterFactory {
 
+	// The Cache-Control header of a request with a CachePolicy, for the filters after it
+	static final String CACHE_CONTROL_PROPERTY = CacheFilterFactory.class.getName() + ".cacheControl";
+	// Not in the JAX-RS 1.1 HttpHeaders
+	private static final String VARY = "Vary";
+
 	private static final List<ResourceFilter> NO_CACHE_FILTER = Collections.<ResourceFilter> singletonList(new CacheResponseFilter("no-cache"));
 
 	@Override
 	public List<ResourceFilter> create(AbstractMethod am) {
 		CacheControlHeader cch = am.getAnnotation(CacheControlHeader.class);
-		if (cch == null) {
-			return NO_CACHE_FILTER;
+		CachePolicy policy = am.getAnnotation(CachePolicy.class);
+		List<ResourceFilter> filters;
+		if (policy != null) {
+			filters = Collections.<ResourceFilter> singletonList(new CachePolicyFilter(policy, pathTemplate(am)));
 		}
 		else {
-			return Collections.<ResourceFilter> singletonList(new CacheResponseFilter(cch.value()));
+			filters = cch == null ? NO_CACHE_FILTER : Collections.<ResourceFilter> singletonList(new CacheResponseFilter(cch.value()));
+		}
+
+		VersionTag versionTag = am.getAnnotation(VersionTag.class);
+		if (versionTag != null) {
+			filters = new ArrayList<>(filters);
+			filters.add(new VersionTagFilter(versionTag, pathTemplate(am)));
 		}
+		return filters;
+	}
+
+	// The template of the full path of the method, which filters have to match themselves to read its params
+	static UriTemplate pathTemplate(AbstractMethod am) {
+		String path = am.getResource().getPath() == null ? "" : am.getResource().getPath().getValue();
+		if (am instanceof AbstractSubResourceMethod) {
+			path += "/" + ((AbstractSubResourceMethod)am).getPath().getValue();
+		}
+		// Request paths are matched without their leading slash
+		return new UriTemplate(path.replaceAll("/+", "/").replaceFirst("^/", ""));
 	}
 
 	private static class CacheResponseFilter implements ResourceFilter, ContainerResponseFilter {
@@ -52,4 +95,169 @@ public class CacheFilterFactory implements ResourceFilterFactory {
 			return response;
 		}
 	}
-}
\ No newline at end of file
+
+	private static class CachePolicyFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+		// A hashtag with no schedule is due to be built now
+		private static final LocalCache.Loader<HashtagSchedule> SCHEDULE_LOADER = new LocalCache.Loader<HashtagSchedule>() {
+			@Override
+			public HashtagSchedule load(String hashtag) {
+				HashtagSchedule schedule = ofy().load().type(HashtagSchedule.class).id(hashtag).now();
+				// An unscheduled hashtag is due at once
+				return schedule == null ? new HashtagSchedule(hashtag) : schedule;
+			}
+		};
+
+		private final CachePolicy policy;
+		private final UriTemplate pathTemplate;
+
+		CachePolicyFilter(CachePolicy policy, UriTemplate pathTemplate) {
+			this.policy = policy;
+			this.pathTemplate = pathTemplate;
+		}
+
+		@Override
+		public ContainerRequestFilter getRequestFilter() {
+			return this;
+		}
+
+		@Override
+		public ContainerResponseFilter getResponseFilter() {
+			return this;
+		}
+
+		@Override
+		public ContainerRequest filter(ContainerRequest request) {
+			// Worked out before the request goes on, so that a 304 can be sent with it too
+			request.getProperties().put(CACHE_CONTROL_PROPERTY, headerValue(request));
+			return request;
+		}
+
+		private String headerValue(ContainerRequest request) {
+			if (policy.value() == CachePolicy.Scope.PRIVATE)
+				return "private, " + (policy.maxAge() > 0 ? "max-age=" + policy.maxAge() : "no-cache");
+
+			long sharedMaxAge = policy.maxAge();
+			Map<String, String> pathParams = new HashMap<>();
+			if (policy.value() == CachePolicy.Scope.MASTER_LIST && Arrays.asList(policy.modes()).contains(request.getQueryParameters().getFirst("mode"))
+					&& pathTemplate.match(request.getPath(true), pathParams)) {
+				// Built lists can't change until their next build, an overdue one could change at any time
+				HashtagSchedule schedule = LocalCaches.SCHEDULES.get(pathParams.get(policy.listParam()).toLowerCase(), SCHEDULE_LOADER);
+				sharedMaxAge = Math.max(0, (schedule.getNextBuild().getTime() - new Date().getTime()) / 1000);
+				// Nor can lists whose build is enqueued but not saved yet be kept for longer than browsers keep them
+				if (!schedule.isBuilt()) {
+					sharedMaxAge = Math.min(policy.maxAge(), sharedMaxAge);
+				}
+			}
+
+			// Browsers can't be told when a list changes early, so keep them to the shorter max-age
+			return "public, max-age=" + Math.min(policy.maxAge(), sharedMaxAge) + ", s-maxage=" + sharedMaxAge
+					+ (policy.staleWhileRevalidate() > 0 ? ", stale-while-revalidate=" + policy.staleWhileRevalidate() : "");
+		}
+
+		@Override
+		public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+			// Errors aren't kept, a missing list could be made at any time
+			if (response.getStatus() >= 400) {
+				response.getHttpHeaders().putSingle(HttpHeaders.CACHE_CONTROL, "no-cache");
+				return response;
+			}
+
+			response.getHttpHeaders().putSingle(HttpHeaders.CACHE_CONTROL, request.getProperties().get(CACHE_CONTROL_PROPERTY));
+			if (policy.value() != CachePolicy.Scope.PRIVATE) {
+				// Shared caches must keep gzipped responses apart from the rest
+				response.getHttpHeaders().putSingle(VARY, HttpHeaders.ACCEPT_ENCODING);
+			}
+			return response;
+		}
+	}
+
+	private static class VersionTagFilter implements ResourceFilter, ContainerRequestFilter, ContainerResponseFilter {
+		private static final String TAG_PROPERTY = VersionTagFilter.class.getName();
+
+		private final VersionTag versionTag;
+		private final UriTemplate pathTemplate;
+
+		VersionTagFilter(VersionTag versionTag, UriTemplate pathTemplate) {
+			this.versionTag = versionTag;
+			this.pathTemplate = pathTemplate;
+		}
+
+		@Override
+		public ContainerRequestFilter getRequestFilter() {
+			return this;
+		}
+
+		@Override
+		public ContainerResponseFilter getResponseFilter() {
+			return this;
+		}
+
+		@Override
+		public ContainerRequest filter(ContainerRequest request) {
+			if (versionTag.modes().length > 0) {
+				String mode = request.getQueryParameters().getFirst("mode");
+				if (mode == null || !Arrays.asList(versionTag.modes()).contains(mode))
+					return request;
+			}
+
+			String key = versionTag.key();
+			if (versionTag.params().length > 0) {
+				Map<String, String> pathParams = new HashMap<>();
+				if (!pathTemplate.match(request.getPath(true), pathParams))
+					return request;
+
+				StringBuilder params = new StringBuilder();
+				for (String param : versionTag.params()) {
+					if (params.length() > 0) {
+						params.append(FaveListDao.SEPERATOR_TOKEN);
+					}
+					params.append(pathParams.get(param).toLowerCase());
+				}
+				key = params.toString();
+			}
+
+			Long version = MemcacheManager.getCacheVersion(versionTag.stamp(), key);
+			// Without the stamp there's nothing to tag or compare against, so the response goes out in full
+			if (version == null)
+				return request;
+
+			// Make sure the cached value served along with the tag is no older than it
+			LocalCache<?> cache = LocalCaches.byStamp(versionTag.stamp());
+			if (cache != null) {
+				cache.checkVersion(key, version);
+			}
+
+			String tag = versionTag.stamp() + "-" + version;
+			String ifNoneMatch = request.getHeaderValue(HttpHeaders.IF_NONE_MATCH);
+			if (ifNoneMatch != null) {
+				// Only the encoding this request would be sent in, small responses go out uncompressed whatever it is
+				String encoding = CompressionFilter.negotiate(request.getHeaderValue(HttpHeaders.ACCEPT_ENCODING));
+				for (String match : ifNoneMatch.split(",")) {
+					// If-None-Match compares weakly, and the tag of a compressed response is the same version
+					String value = match.trim().replaceFirst("^W/", "").replace("\"", "");
+					if (value.equals(tag) || (encoding != null && value.equals(CompressionFilter.tagFor(tag, encoding))) || value.equals("*"))
+						throw new WebApplicationException(Response.notModified(new EntityTag(value))
+								.header(HttpHeaders.CACHE_CONTROL, request.getProperties().get(CACHE_CONTROL_PROPERTY)).build());
+				}
+			}
+
+			request.getProperties().put(TAG_PROPERTY, tag);
+			return request;
+		}
+
+		@Override
+		public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+			String tag = (String)request.getProperties().get(TAG_PROPERTY);
+			if (tag == null || response.getStatus() != Response.Status.OK.getStatusCode())
+				return response;
+
+			// Strong tags have to differ between encodings of the same version, as the CompressionFilter tags those it compresses
+			Object encoding = response.getHttpHeaders().getFirst("Content-Encoding");
+			if (encoding != null) {
+				tag = CompressionFilter.tagFor(tag, encoding.toString());
+			}
+			response.getHttpHeaders().putSingle(HttpHeaders.ETAG, new EntityTag(tag));
+			return response;
+		}
+	}
+}
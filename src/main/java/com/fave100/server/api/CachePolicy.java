@@ -0,0 +1,37 @@
+package com.fave100.server.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * How long browsers and shared caches may keep a response, worked out per request rather than
+ * fixed as with {@link CacheControlHeader}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CachePolicy {
+
+	enum Scope {
+		// The same for everyone, kept by browsers and shared caches for maxAge seconds
+		PUBLIC,
+		// A built master list, kept by shared caches until the next build of its hashtag is due, and by browsers for at most maxAge seconds
+		MASTER_LIST,
+		// Depends on who is asking or can change at any time, so only kept by the browser, and revalidated after maxAge seconds
+		PRIVATE
+	}
+
+	Scope value();
+
+	int maxAge() default 0;
+
+	// How long a shared cache may serve the response once it is out of date, while it fetches a new one
+	int staleWhileRevalidate() default 0;
+
+	// The path param of the hashtag a master list belongs to
+	String listParam() default "list";
+
+	// The modes of a master list that are built, the others are PUBLIC
+	String[] modes() default {};
+}
@@ -0,0 +1,53 @@
+package com.fave100.server.api;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fave100.server.filters.ResponseStats;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResourceMethod;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.ResourceFilterFactory;
+
+/**
+ * Names the endpoint each request is matched to, so that the CompressionFilter can count its
+ * response against it.
+ */
+public class EndpointFilterFactory implements ResourceFilterFactory {
+
+	@Override
+	public List<ResourceFilter> create(AbstractMethod am) {
+		String endpoint = CacheFilterFactory.pathTemplate(am).getTemplate();
+		if (am instanceof AbstractResourceMethod) {
+			endpoint = ((AbstractResourceMethod)am).getHttpMethod() + " " + endpoint;
+		}
+		return Collections.<ResourceFilter> singletonList(new EndpointFilter(endpoint));
+	}
+
+	private static class EndpointFilter implements ResourceFilter, ContainerRequestFilter {
+		private final String endpoint;
+
+		EndpointFilter(String endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		@Override
+		public ContainerRequestFilter getRequestFilter() {
+			return this;
+		}
+
+		@Override
+		public ContainerResponseFilter getResponseFilter() {
+			return null;
+		}
+
+		@Override
+		public ContainerRequest filter(ContainerRequest request) {
+			ResponseStats.nameEndpoint(endpoint);
+			return request;
+		}
+	}
+}
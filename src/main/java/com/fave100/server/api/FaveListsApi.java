@@ -3,34 +3,51 @@ package com.fave100.server.api;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.ws.rs.DELETE;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.fave100.server.MemcacheManager;
+import com.fave100.server.cache.LeasedLoader;
+import com.fave100.server.cache.LocalCache;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.cache.StringListCodec;
+import com.fave100.server.cache.RenderedJson;
+import com.fave100.server.cache.RenderedLists;
 import com.fave100.server.domain.ApiPaths;
 import com.fave100.server.domain.BooleanResult;
 import com.fave100.server.domain.FeaturedLists;
 import com.fave100.server.domain.StringResult;
 import com.fave100.server.domain.StringResultCollection;
 import com.fave100.server.domain.appuser.AppUser;
+import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveItemCollection;
 import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.ListSlice;
+import com.fave100.server.domain.favelist.TrendingSnapshot;
+import com.fave100.server.filters.CompressionFilter;
 import com.fave100.shared.Constants;
 import com.fave100.shared.ListMode;
 import com.sun.jersey.api.NotFoundException;
 import com.wordnik.swagger.annotations.Api;
 import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
 
 @Path("/" + ApiPaths.FAVELIST_ROOT)
 @Produces(MediaType.APPLICATION_JSON)
@@ -39,35 +56,129 @@ public class FaveListsApi {
 
 	public static final int QUALITY_LIST_SIZE = 10;
 
+	// Reads every hashtag, so only one instance at a time does it
+	private static final LocalCache.Loader<ArrayList<String>> LIST_NAMES_LOADER = new LeasedLoader<ArrayList<String>>(LocalCaches.LIST_NAMES,
+			new StringListCodec(), new LocalCache.Loader<ArrayList<String>>() {
+				@Override
+				public ArrayList<String> load(String key) {
+					List<Hashtag> masterLists = ofy().load().type(Hashtag.class).limit(1000).list();
+
+					ArrayList<String> listNames = new ArrayList<>();
+					for (Hashtag masterList : masterLists) {
+						// Only add if the list has enough picks to qualify as a "quality" list
+						if (masterList.getList().size() >= QUALITY_LIST_SIZE) {
+							listNames.add(masterList.getName());
+						}
+					}
+					return listNames;
+				}
+			});
+
+	private static final LocalCache.Loader<Hashtag> HASHTAG_LOADER = new LocalCache.Loader<Hashtag>() {
+		@Override
+		public Hashtag load(String listName) {
+			return ofy().load().type(Hashtag.class).id(listName).now();
+		}
+	};
+
+	private static final String NEWEST_LEASE = "newest:";
+	private static final long NEWEST_LEASE_SECONDS = 10;
+	private static final List<String> RENDERED_MODES = Arrays.asList(ListMode.USERS, ListMode.CRITICS);
+	// Not in the JAX-RS 1.1 HttpHeaders
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+
+	private static final LocalCache.Loader<RenderedLists> MASTER_LISTS_LOADER = new LocalCache.Loader<RenderedLists>() {
+		@Override
+		public RenderedLists load(String listName) {
+			// Straight from the datastore, as a cached hashtag could be older than the stamp the lists are tagged with
+			Hashtag masterList = HASHTAG_LOADER.load(listName);
+			if (masterList == null)
+				return null;
+
+			Map<String, List<FaveItem>> masterLists = new HashMap<String, List<FaveItem>>();
+			masterLists.put(ListMode.USERS, masterList.getList());
+			masterLists.put(ListMode.CRITICS, masterList.getCriticsList());
+			return new RenderedLists(masterLists);
+		}
+	};
+
 	@GET
 	@Path(ApiPaths.GET_LIST_NAMES)
+	@CachePolicy(value = CachePolicy.Scope.PUBLIC, maxAge = 300, staleWhileRevalidate = 300)
+	@VersionTag(stamp = LocalCaches.LIST_NAMES_STAMP, key = LocalCaches.LIST_NAMES_KEY)
 	@ApiOperation(value = "Get FaveList names", response = StringResultCollection.class)
 	public static StringResultCollection getListNames() {
-		List<Hashtag> masterLists = ofy().load().type(Hashtag.class).limit(1000).list();
-
 		List<StringResult> listNames = new ArrayList<>();
-		for (Hashtag masterList : masterLists) {
-			// Only add if the list has enough picks to qualify as a "quality" list
-			if (masterList.getList().size() >= QUALITY_LIST_SIZE) {
-				listNames.add(new StringResult(masterList.getName()));
-			}
+		for (String listName : LocalCaches.LIST_NAMES.get(LocalCaches.LIST_NAMES_KEY, LIST_NAMES_LOADER)) {
+			listNames.add(new StringResult(listName));
 		}
-
 		return new StringResultCollection(listNames);
 	}
 
 	@GET
 	@Path(ApiPaths.GET_MASTER_FAVELIST)
-	@ApiOperation(value = "Get a master FaveList", response = FaveItemCollection.class)
-	public static FaveItemCollection getMasterFaveList(@PathParam("list") final String list, @QueryParam("mode") @DefaultValue("all") String mode) {
+	@CachePolicy(value = CachePolicy.Scope.MASTER_LIST, maxAge = 60, staleWhileRevalidate = 300, modes = {ListMode.USERS, ListMode.CRITICS})
+	@VersionTag(stamp = LocalCaches.MASTER_LIST_STAMP, params = {"list"}, modes = {ListMode.USERS, ListMode.CRITICS})
+	@ApiOperation(value = "Get a master FaveList", response = FaveItemCollection.class, nickname = "getMasterFaveList")
+	public static Response getRenderedMasterFaveList(@PathParam("list") final String list, @QueryParam("mode") @DefaultValue("all") String mode,
+			@ApiParam(value = "The index of the first FaveItem") @QueryParam(ListSlice.OFFSET_PARAM) @DefaultValue("0") int offset,
+			@ApiParam(value = "The most FaveItems to return, all of them if 0") @QueryParam(ListSlice.LIMIT_PARAM) @DefaultValue("0") int limit,
+			@ApiParam(value = "The fields of each FaveItem to return, comma separated, all of them if missing") @QueryParam(ListSlice.FIELDS_PARAM) String fields,
+			@HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+
+		ListSlice slice = getSlice(offset, limit, fields);
+
+		// Built lists only change along with their hashtag, so they are rendered once and written out as they are
+		if (!RENDERED_MODES.contains(mode)) {
+			FaveItemCollection masterList = getMasterFaveList(list, mode);
+			if (slice.isWhole())
+				return Response.ok(masterList).build();
+			return Response.ok(RenderedJson.toJson(new FaveItemCollection(slice.apply(masterList.getItems())), slice.getFields())).build();
+		}
+
 		String listName = list.toLowerCase();
+		MemcacheManager.countHashtagRead(listName);
+		RenderedLists masterLists = LocalCaches.MASTER_LISTS.get(listName, MASTER_LISTS_LOADER);
+		if (masterLists == null)
+			throw new NotFoundException();
+
+		RenderedJson masterList = masterLists.get(mode, slice);
+		if (CompressionFilter.GZIP.equals(CompressionFilter.negotiate(acceptEncoding)))
+			return Response.ok(masterList.getGzipped()).header(CONTENT_ENCODING, CompressionFilter.GZIP).build();
+
+		return Response.ok(masterList.getJson()).build();
+	}
+
+	// The slice of a list asked for, which is cut before the list is rendered
+	static ListSlice getSlice(int offset, int limit, String fields) {
+		try {
+			return ListSlice.of(offset, limit, fields);
+		}
+		catch (IllegalArgumentException e) {
+			throw new WebApplicationException(Response.status(Response.Status.BAD_REQUEST).entity(e.getMessage()).build());
+		}
+	}
+
+	public static FaveItemCollection getMasterFaveList(final String list, String mode) {
+		String listName = list.toLowerCase();
+		MemcacheManager.countHashtagRead(listName);
 
 		// Attempt to get the list from memcache first, if possible
 		if (ListMode.NEWEST.equals(mode)) {
-			return new FaveItemCollection(MemcacheManager.getNewestSongs(listName));
+			List<FaveItem> newestSongs = MemcacheManager.getNewestSongs(listName);
+			if (newestSongs.isEmpty())
+				return new FaveItemCollection(refillNewestSongs(listName));
+			return new FaveItemCollection(newestSongs);
+		}
+
+		// Kept ready by the trending sketches, the global ones under the trending list's name
+		if (ListMode.TRENDING.equals(mode)) {
+			TrendingSnapshot trending = ofy().load().type(TrendingSnapshot.class).id(listName).now();
+			return new FaveItemCollection(trending != null ? trending.getTop() : new ArrayList<FaveItem>());
 		}
 
-		Hashtag masterList = ofy().load().type(Hashtag.class).id(listName).now();
+		// Hot master lists are served straight from the heap
+		Hashtag masterList = LocalCaches.HASHTAGS.get(listName, HASHTAG_LOADER);
 		if (masterList == null)
 			throw new NotFoundException();
 
@@ -84,13 +195,28 @@ public class FaveListsApi {
 		throw new NotFoundException();
 	}
 
+	// Serve the newest list of the last build while one request refills the missing ring from it
+	private static List<FaveItem> refillNewestSongs(String listName) {
+		Hashtag masterList = LocalCaches.HASHTAGS.get(listName, HASHTAG_LOADER);
+		if (masterList == null || masterList.getNewestList().isEmpty())
+			return new ArrayList<FaveItem>();
+
+		if (MemcacheManager.takeLease(NEWEST_LEASE + listName, NEWEST_LEASE_SECONDS)) {
+			MemcacheManager.seedNewestSongs(listName, masterList.getNewestList());
+		}
+		List<FaveItem> newestSongs = new ArrayList<FaveItem>(masterList.getNewestList());
+		Collections.reverse(newestSongs);
+		return newestSongs;
+	}
+
 	@GET
 	@Path(ApiPaths.MASTER_FAVELIST_MODES)
+	@CachePolicy(value = CachePolicy.Scope.PUBLIC, maxAge = 300, staleWhileRevalidate = 300)
 	@ApiOperation(value = "Returns the modes that exist for the list", response = StringResultCollection.class)
 	public static StringResultCollection getMasterFaveListModes(@PathParam("list") final String list) {
 		String listName = list.toLowerCase();
 
-		Hashtag masterList = ofy().load().type(Hashtag.class).id(listName).now();
+		Hashtag masterList = LocalCaches.HASHTAGS.get(listName, HASHTAG_LOADER);
 		if (masterList == null)
 			throw new NotFoundException();
 
@@ -107,6 +233,11 @@ public class FaveListsApi {
 			modes.add(ListMode.NEWEST);
 		}
 
+		TrendingSnapshot trending = ofy().load().type(TrendingSnapshot.class).id(listName).now();
+		if (trending != null && !trending.getTop().isEmpty()) {
+			modes.add(ListMode.TRENDING);
+		}
+
 		List<StringResult> items = new ArrayList<StringResult>();
 		for (String mode : modes) {
 			items.add(new StringResult(mode));
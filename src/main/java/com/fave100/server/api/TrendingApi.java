@@ -26,6 +26,7 @@ public class TrendingApi {
 
 	@GET
 	@Path(ApiPaths.TRENDING_FAVELISTS)
+	@CachePolicy(value = CachePolicy.Scope.PUBLIC, maxAge = 300, staleWhileRevalidate = 300)
 	@ApiOperation(value = "Get a list of trending FaveLists", response = StringResultCollection.class)
 	public static StringResultCollection getTrendingFaveLists() {
 		// Nov 26 2013: Temporarily disabling proper trending in favor of hard-coded popular lists
@@ -4,6 +4,7 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
@@ -33,6 +34,7 @@ import org.mindrot.jbcrypt.BCrypt;
 import com.fave100.server.MemcacheManager;
 import com.fave100.server.SessionAttributes;
 import com.fave100.server.UrlBuilder;
+import com.fave100.server.cache.LocalCaches;
 import com.fave100.server.domain.ApiPaths;
 import com.fave100.server.domain.BooleanResult;
 import com.fave100.server.domain.EmailPasswordResetDetails;
@@ -47,10 +49,13 @@ import com.fave100.server.domain.appuser.EmailID;
 import com.fave100.server.domain.appuser.Following;
 import com.fave100.server.domain.appuser.PwdResetToken;
 import com.fave100.server.domain.appuser.UserInfo;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveList;
 import com.fave100.server.domain.favelist.FaveListDao;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.ScoreLedger;
 import com.fave100.server.exceptions.AlreadyFollowingException;
 import com.fave100.server.exceptions.CannotFollowYourselfException;
 import com.fave100.server.exceptions.EmailIdAlreadyExistsException;
@@ -60,6 +65,7 @@ import com.fave100.server.exceptions.FaveListLimitReachedException;
 import com.fave100.server.exceptions.FaveListSizeReachedException;
 import com.fave100.server.exceptions.NotLoggedInException;
 import com.fave100.server.servlets.AvatarUploadServlet;
+import com.fave100.server.servlets.TrendingSketchServlet;
 import com.fave100.shared.Constants;
 import com.fave100.shared.Validator;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
@@ -79,6 +85,7 @@ import com.wordnik.swagger.annotations.ApiResponses;
 public class UserApi {
 
 	@GET
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Get the current user", response = AppUser.class)
 	public static AppUser getLoggedInUser(@Context HttpServletRequest request) {
 		final String username = (String)request.getSession().getAttribute(SessionAttributes.AUTH_USER);
@@ -95,6 +102,7 @@ public class UserApi {
 
 	@GET
 	@Path(ApiPaths.USER_SETTINGS)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Get current user settings", response = UserInfo.class)
 	public static UserInfo getCurrentUserSettings(@LoggedInUser AppUser currentUser) {
 		return new UserInfo(currentUser);
@@ -297,12 +305,12 @@ public class UserApi {
 				Hashtag hashtag = ofy().load().type(Hashtag.class).id(listName).now();
 				// Hashtag already exists, add it to user's lists
 				if (hashtag != null) {
-					ofy().save().entities(currentUser, faveList).now();
+					ofy().save().entities(currentUser, faveList, new FaveListSummary(faveList)).now();
 				}
 				// Create a new hashtag
 				else {
 					hashtag = new Hashtag(listName, username);
-					ofy().save().entities(currentUser, faveList, hashtag).now();
+					ofy().save().entities(currentUser, faveList, new FaveListSummary(faveList), hashtag).now();
 				}
 			}
 		});
@@ -329,7 +337,12 @@ public class UserApi {
 		}
 
 		// Delete FaveList
-		ofy().delete().entity(listToDelete).now();
+		ofy().delete().entities(listToDelete, new FaveListSummary(listToDelete)).now();
+		LocalCaches.faveListChanged(listToDelete.getId());
+
+		// Remove the list's scores from the hashtag ledger
+		ScoreLedger.recordChange(listToDelete.getHashtagId(), listToDelete.isCriticList(), listToDelete.getList(), Collections.<FaveItem> emptyList());
+		DirtyHashtag.mark(listToDelete.getHashtagId());
 
 		// Delete associated WhyLines
 		ofy().delete().entities(whylinesToDelete).now();
@@ -368,11 +381,15 @@ public class UserApi {
 			throw new FaveItemAlreadyInListException();
 
 		// Create the new FaveItem
+		final List<FaveItem> before = new ArrayList<>(faveList.getList());
 		faveList.getList().add(newFaveItem);
-		ofy().save().entities(faveList).now();
+		ofy().save().entities(faveList, new FaveListSummary(faveList)).now();
+		ScoreLedger.recordChange(faveList, before);
+		DirtyHashtag.mark(faveList.getHashtagId());
 
 		// Add it to memcache newest
 		MemcacheManager.addNewSong(listName, newFaveItem);
+		TrendingSketchServlet.recordPick(listName, newFaveItem);
 
 		return;
 	}
@@ -403,8 +420,11 @@ public class UserApi {
 		if (currentWhyline != null) {
 			ofy().delete().key(currentWhyline.getKey()).now();
 		}
+		final List<FaveItem> before = new ArrayList<>(faveList.getList());
 		faveList.getList().remove(faveItemToRemove);
-		ofy().save().entities(faveList).now();
+		ofy().save().entities(faveList, new FaveListSummary(faveList)).now();
+		ScoreLedger.recordChange(faveList, before);
+		DirtyHashtag.mark(faveList.getHashtagId());
 
 		return;
 	}
@@ -436,9 +456,12 @@ public class UserApi {
 		if (faveItemToRerank == null)
 			return;
 
+		final List<FaveItem> before = new ArrayList<>(faveList.getList());
 		faveList.getList().remove(faveItemToRerank);
 		faveList.getList().add(newIndex, faveItemToRerank);
-		ofy().save().entities(faveList).now();
+		ofy().save().entities(faveList, new FaveListSummary(faveList)).now();
+		ScoreLedger.recordChange(faveList, before);
+		DirtyHashtag.mark(faveList.getHashtagId());
 
 		return;
 	}
@@ -502,6 +525,7 @@ public class UserApi {
 
 	@GET
 	@Path(ApiPaths.USER_FOLLOWING)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Is following", response = BooleanResult.class)
 	public static BooleanResult isFollowing(@Context HttpServletRequest request, @PathParam("user") final String username) {
 		if (!AppUserDao.isAppUserLoggedIn(request))
@@ -557,6 +581,7 @@ public class UserApi {
 
 	@GET
 	@Path(ApiPaths.ADMINS)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Get all admins", response = AppUserCollection.class)
 	public static AppUserCollection getAdmins(@LoggedInUser AppUser currentUser) {
 		if (!currentUser.isAdmin())
@@ -573,7 +598,11 @@ public class UserApi {
 		if (!currentUser.isAdmin())
 			throw new WebApplicationException(Response.status(Response.Status.FORBIDDEN).build());
 
-		AppUser user = UsersApi.getAppUser(username);
+		// Not the cached user, which is shared between requests
+		AppUser user = AppUserDao.findAppUser(username);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
+
 		user.setAdmin(true);
 		ofy().save().entity(user).now();
 	}
@@ -585,13 +614,17 @@ public class UserApi {
 		if (!currentUser.isAdmin())
 			throw new WebApplicationException(Response.status(Response.Status.FORBIDDEN).build());
 
-		AppUser user = UsersApi.getAppUser(username);
+		AppUser user = AppUserDao.findAppUser(username);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
+
 		user.setAdmin(false);
 		ofy().save().entity(user).now();
 	}
 
 	@GET
 	@Path(ApiPaths.CRITICS)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Get all critics", response = AppUserCollection.class)
 	public static AppUserCollection getCritics(@LoggedInUser AppUser currentUser) {
 		if (!currentUser.isAdmin())
@@ -608,7 +641,10 @@ public class UserApi {
 		if (!currentUser.isAdmin())
 			throw new WebApplicationException(Response.status(Response.Status.FORBIDDEN).build());
 
-		AppUser user = UsersApi.getAppUser(username);
+		AppUser user = AppUserDao.findAppUser(username);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
+
 		user.setCritic(true);
 		ofy().save().entity(user).now();
 	}
@@ -620,7 +656,10 @@ public class UserApi {
 		if (!currentUser.isAdmin())
 			throw new WebApplicationException(Response.status(Response.Status.FORBIDDEN).build());
 
-		AppUser user = UsersApi.getAppUser(username);
+		AppUser user = AppUserDao.findAppUser(username);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
+
 		user.setCritic(false);
 		ofy().save().entity(user).now();
 	}
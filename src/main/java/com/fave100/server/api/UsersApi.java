@@ -3,8 +3,13 @@ package com.fave100.server.api;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
@@ -12,18 +17,30 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import com.fave100.server.SessionAttributes;
+import com.fave100.server.cache.LocalCache;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.cache.RenderedJson;
 import com.fave100.server.domain.ApiPaths;
 import com.fave100.server.domain.StringResult;
 import com.fave100.server.domain.appuser.AppUser;
 import com.fave100.server.domain.appuser.Following;
 import com.fave100.server.domain.appuser.FollowingResult;
+import com.fave100.server.domain.favelist.DirtyHashtag;
+import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveItemCollection;
 import com.fave100.server.domain.favelist.FaveList;
 import com.fave100.server.domain.favelist.FaveListDao;
+import com.fave100.server.domain.favelist.FaveListSummary;
+import com.fave100.server.domain.favelist.ListPage;
+import com.fave100.server.domain.favelist.ListSlice;
+import com.fave100.server.domain.favelist.ScoreLedger;
 import com.fave100.shared.Constants;
+import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Ref;
 import com.sun.jersey.api.NotFoundException;
 import com.wordnik.swagger.annotations.Api;
@@ -37,12 +54,21 @@ import com.wordnik.swagger.annotations.ApiResponses;
 @Api(value = "/" + ApiPaths.USERS_ROOT, description = "Operations on Users")
 public class UsersApi {
 
+	private static final LocalCache.Loader<AppUser> APP_USER_LOADER = new LocalCache.Loader<AppUser>() {
+		@Override
+		public AppUser load(String usernameID) {
+			return ofy().load().type(AppUser.class).id(usernameID).now();
+		}
+	};
+
 	@GET
 	@Path(ApiPaths.GET_USER)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
+	@VersionTag(stamp = LocalCaches.APP_USER_STAMP, params = {"user"})
 	@ApiOperation(value = "Find a user by their username", response = AppUser.class)
 	@ApiResponses(value = {@ApiResponse(code = 404, message = ApiExceptions.USER_NOT_FOUND)})
 	public static AppUser getAppUser(@ApiParam(value = "The username", required = true) @PathParam("user") final String username) {
-		AppUser appUser = ofy().load().type(AppUser.class).id(username.toLowerCase()).now();
+		AppUser appUser = LocalCaches.APP_USERS.get(username.toLowerCase(), APP_USER_LOADER);
 		if (appUser == null)
 			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
 
@@ -51,6 +77,7 @@ public class UsersApi {
 
 	@GET
 	@Path(ApiPaths.GET_USERS_FOLLOWING)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
 	@ApiOperation(value = "Get following", response = FollowingResult.class)
 	public static FollowingResult getFollowing(@LoggedInUser AppUser currentUser, @PathParam("user") final String username, @QueryParam("index") final int index) {
 		final AppUser user = getAppUser(username);
@@ -61,6 +88,10 @@ public class UsersApi {
 			throw new WebApplicationException(Response.status(Response.Status.FORBIDDEN).entity("List is private").build());
 
 		final Following following = ofy().load().type(Following.class).id(username.toLowerCase()).now();
+		return getFollowingPage(following, index);
+	}
+
+	private static FollowingResult getFollowingPage(final Following following, final int index) {
 		if (following != null && following.getFollowing() != null) {
 			List<Ref<AppUser>> users = following.getFollowing();
 			users = users.subList(index, Math.min(index + Constants.MORE_FOLLOWING_INC, following.getFollowing().size()));
@@ -73,12 +104,26 @@ public class UsersApi {
 
 	@GET
 	@Path(ApiPaths.GET_USERS_FAVELIST)
-	@ApiOperation(value = "Get a user's FaveList", response = FaveItemCollection.class)
-	@ApiResponses(value = {@ApiResponse(code = 404, message = ApiExceptions.FAVELIST_NOT_FOUND)})
-	public static FaveItemCollection getFaveList(
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
+	@VersionTag(stamp = LocalCaches.FAVE_LIST_STAMP, params = {"user", "list"})
+	@ApiOperation(value = "Get a user's FaveList", response = FaveItemCollection.class, nickname = "getFaveList")
+	@ApiResponses(value = {@ApiResponse(code = 400, message = "Bad offset, limit or fields"), @ApiResponse(code = 404, message = ApiExceptions.FAVELIST_NOT_FOUND)})
+	public static Response getSlicedFaveList(
 			@ApiParam(value = "The username", required = true) @PathParam("user") final String username,
-			@ApiParam(value = "The list", required = true) @PathParam("list") final String list) {
+			@ApiParam(value = "The list", required = true) @PathParam("list") final String list,
+			@ApiParam(value = "The index of the first FaveItem") @QueryParam(ListSlice.OFFSET_PARAM) @DefaultValue("0") final int offset,
+			@ApiParam(value = "The most FaveItems to return, all of them if 0") @QueryParam(ListSlice.LIMIT_PARAM) @DefaultValue("0") final int limit,
+			@ApiParam(value = "The fields of each FaveItem to return, comma separated, all of them if missing") @QueryParam(ListSlice.FIELDS_PARAM) final String fields) {
+
+		final ListSlice slice = FaveListsApi.getSlice(offset, limit, fields);
+		final FaveItemCollection faveList = getFaveList(username, list);
+		if (slice.isWhole())
+			return Response.ok(faveList).build();
 
+		return Response.ok(RenderedJson.toJson(new FaveItemCollection(slice.apply(faveList.getItems())), slice.getFields())).build();
+	}
+
+	public static FaveItemCollection getFaveList(final String username, final String list) {
 		final FaveList faveList = FaveListDao.findFaveList(username, list);
 		if (faveList == null)
 			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.FAVELIST_NOT_FOUND).build());
@@ -86,6 +131,52 @@ public class UsersApi {
 		return new FaveItemCollection(faveList.getList());
 	}
 
+	@GET
+	@Path(ApiPaths.GET_LIST_PAGE)
+	@CachePolicy(CachePolicy.Scope.PRIVATE)
+	@ApiOperation(value = "Get everything a user's list page is first drawn from", response = ListPage.class)
+	@ApiResponses(value = {@ApiResponse(code = 404, message = ApiExceptions.USER_NOT_FOUND)})
+	public static ListPage getListPage(@Context HttpServletRequest request,
+			@ApiParam(value = "The username", required = true) @PathParam("user") final String username,
+			@ApiParam(value = "The list", required = true) @PathParam("list") final String list) {
+
+		final String usernameID = username.toLowerCase();
+		final String currentUsername = (String)request.getSession().getAttribute(SessionAttributes.AUTH_USER);
+
+		// The user, the list and the default list to fall back on, and who both users are following, all in one batch
+		final Key<AppUser> userKey = Key.create(AppUser.class, usernameID);
+		final Key<FaveList> listKey = Key.create(FaveList.class, usernameID + FaveListDao.SEPERATOR_TOKEN + list.toLowerCase());
+		final Key<FaveList> defaultListKey = Key.create(FaveList.class, usernameID + FaveListDao.SEPERATOR_TOKEN + Constants.DEFAULT_HASHTAG.toLowerCase());
+		final Key<Following> followingKey = Key.create(Following.class, usernameID);
+		final List<Key<?>> keys = new ArrayList<Key<?>>(Arrays.asList(userKey, listKey, defaultListKey, followingKey));
+		Key<Following> currentFollowingKey = null;
+		if (currentUsername != null) {
+			currentFollowingKey = Key.create(Following.class, currentUsername.toLowerCase());
+			keys.add(currentFollowingKey);
+		}
+		final Map<Key<Object>, Object> loaded = ofy().load().keys(keys.toArray(new Key<?>[keys.size()]));
+
+		final AppUser user = (AppUser)loaded.get(userKey);
+		if (user == null)
+			throw new WebApplicationException(Response.status(Response.Status.NOT_FOUND).entity(ApiExceptions.USER_NOT_FOUND).build());
+
+		// The page shows the default list for any list the user doesn't have
+		final String shownList = user.getHashtags().contains(list) ? list : Constants.DEFAULT_HASHTAG;
+		final FaveList faveList = (FaveList)loaded.get(shownList.equals(list) ? listKey : defaultListKey);
+		final List<FaveItem> items = faveList != null ? faveList.getList() : null;
+		final String criticUrl = faveList != null && faveList.getCriticUrl() != null ? faveList.getCriticUrl() : "";
+
+		final Following currentFollowing = currentFollowingKey != null ? (Following)loaded.get(currentFollowingKey) : null;
+		final boolean followed = currentFollowing != null && currentFollowing.getFollowing() != null && currentFollowing.getFollowing().contains(Ref.create(userKey));
+
+		FollowingResult following = null;
+		if (!user.isFollowingPrivate() || usernameID.equals(currentUsername != null ? currentUsername.toLowerCase() : null)) {
+			following = getFollowingPage((Following)loaded.get(followingKey), 0);
+		}
+
+		return new ListPage(user, shownList, items, criticUrl, followed, following);
+	}
+
 	@GET
 	@Path(ApiPaths.LIST_CRITIC_URL)
 	@ApiOperation(value = "Get the critic url for a list", response = StringResult.class)
@@ -111,8 +202,11 @@ public class UsersApi {
 		// TODO: Oct 1 2014 Validate the submitted URL
 		// GWTP sends the request with extra quotes attached
 		criticUrl = criticUrl.replace("\"", "");
+		final boolean wasCritic = faveList.isCriticList();
 		faveList.setCriticUrl(criticUrl);
-		ofy().save().entity(faveList).now();
+		ofy().save().entities(faveList, new FaveListSummary(faveList)).now();
+		ScoreLedger.recordCriticChange(faveList, wasCritic);
+		DirtyHashtag.mark(faveList.getHashtagId());
 
 	}
 }
@@ -0,0 +1,26 @@
+package com.fave100.server.api;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Serves the response with an ETag made from the version stamp of what it was built from, and answers
+ * a request whose If-None-Match still holds with 304 before the resource method runs.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface VersionTag {
+	// The name of the version stamp, which every change to what the response is built from must bump
+	String stamp();
+
+	// The path params that make up the key of the stamp, lower cased and joined as FaveList ids are
+	String[] params() default {};
+
+	// The key of the stamp when it has no params
+	String key() default "";
+
+	// Only tag responses for these modes, if any are given
+	String[] modes() default {};
+}
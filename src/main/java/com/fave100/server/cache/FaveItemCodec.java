@@ -0,0 +1,161 @@
+package com.fave100.server.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * Encodes lists of FaveItems for memcache, in place of Java serialization.
+ *
+ * The encoding starts with a format version, so a value written by another version of the app
+ * reads as missing rather than failing, whatever changes are made to FaveItem. Every song, artist,
+ * song id and whyline is stored once in a string table and referred to by index, numbers are
+ * varints and dates are zigzag encoded deltas in epoch millis from the previous item's date.
+ * The whyline ref isn't kept, as the whyline itself is.
+ */
+public class FaveItemCodec {
+
+	public static final byte VERSION = 1;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	// Index 0 of the string table is null
+	private static final int NULL_INDEX = 0;
+	private static final int HAS_DATE = 1;
+
+	public static byte[] encode(final List<FaveItem> faveItems) {
+		final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		final List<String> strings = new ArrayList<String>();
+		final Output items = new Output(16 * faveItems.size());
+		long lastDate = 0;
+		for (final FaveItem faveItem : faveItems) {
+			items.writeVarint(intern(faveItem.getSong(), indexes, strings));
+			items.writeVarint(intern(faveItem.getArtist(), indexes, strings));
+			items.writeVarint(intern(faveItem.getSongID(), indexes, strings));
+			items.writeVarint(intern(faveItem.getWhyline(), indexes, strings));
+			if (faveItem.getDatePicked() == null) {
+				items.writeVarint(0);
+			}
+			else {
+				items.writeVarint(HAS_DATE);
+				final long delta = faveItem.getDatePicked().getTime() - lastDate;
+				items.writeVarint((delta << 1) ^ (delta >> 63));
+				lastDate = faveItem.getDatePicked().getTime();
+			}
+		}
+
+		final Output out = new Output(items.size() + 32 * strings.size() + 8);
+		out.write(VERSION);
+		out.writeVarint(faveItems.size());
+		out.writeVarint(strings.size());
+		for (final String string : strings) {
+			final byte[] bytes = string.getBytes(UTF_8);
+			out.writeVarint(bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+		out.write(items.buffer(), 0, items.size());
+		return out.toByteArray();
+	}
+
+	// Throws if the bytes aren't a FaveItem list of this version
+	public static List<FaveItem> decode(final byte[] bytes) throws IOException {
+		final ByteBuffer in = ByteBuffer.wrap(bytes);
+		try {
+			final byte version = in.get();
+			if (version != VERSION)
+				throw new IOException("Unknown FaveItem encoding version " + version);
+
+			final int count = readVarint(in);
+			final String[] strings = new String[readVarint(in) + 1];
+			for (int i = 1; i < strings.length; i++) {
+				final byte[] string = new byte[readVarint(in)];
+				in.get(string);
+				strings[i] = new String(string, UTF_8);
+			}
+
+			final List<FaveItem> faveItems = new ArrayList<FaveItem>(count);
+			long lastDate = 0;
+			for (int i = 0; i < count; i++) {
+				final FaveItem faveItem = new FaveItem(strings[readIndex(in, strings)], strings[readIndex(in, strings)], strings[readIndex(in, strings)]);
+				faveItem.setWhyline(strings[readIndex(in, strings)]);
+				if ((readVarint(in) & HAS_DATE) != 0) {
+					final long zigzag = readVarlong(in);
+					lastDate += (zigzag >>> 1) ^ -(zigzag & 1);
+					faveItem.setDatePicked(new Date(lastDate));
+				}
+				else {
+					faveItem.setDatePicked(null);
+				}
+				faveItems.add(faveItem);
+			}
+			return faveItems;
+		}
+		catch (final BufferUnderflowException e) {
+			throw new IOException("Truncated FaveItem list", e);
+		}
+	}
+
+	private static int intern(final String value, final Map<String, Integer> indexes, final List<String> strings) {
+		if (value == null)
+			return NULL_INDEX;
+
+		Integer index = indexes.get(value);
+		if (index == null) {
+			strings.add(value);
+			index = strings.size();
+			indexes.put(value, index);
+		}
+		return index;
+	}
+
+	private static class Output extends ByteArrayOutputStream {
+		Output(final int size) {
+			super(size);
+		}
+
+		void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int)value);
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+	}
+
+	private static int readIndex(final ByteBuffer in, final String[] strings) throws IOException {
+		final int index = readVarint(in);
+		if (index >= strings.length)
+			throw new IOException("String index out of range");
+		return index;
+	}
+
+	private static int readVarint(final ByteBuffer in) throws IOException {
+		final long value = readVarlong(in);
+		if (value > Integer.MAX_VALUE)
+			throw new IOException("Varint out of range");
+		return (int)value;
+	}
+
+	private static long readVarlong(final ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+}
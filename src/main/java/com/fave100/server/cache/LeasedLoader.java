@@ -0,0 +1,95 @@
+package com.fave100.server.cache;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fave100.server.MemcacheManager;
+
+/**
+ * Loads values that are expensive to work out once for every instance, rather than once on each.
+ *
+ * The first instance to miss takes a short lease on the key and shares what it loads through
+ * memcache, under the version stamp of the key it was loaded at. Instances that miss while the
+ * lease is held wait a little for the shared value before loading it themselves, so a lost lease
+ * holder only delays them. Shared values are stored in the encoding of the given codec.
+ */
+public class LeasedLoader<V> implements LocalCache.Loader<V> {
+
+	public interface Codec<V> {
+		byte[] encode(V value);
+
+		// Throws if the bytes aren't a value this codec wrote
+		V decode(byte[] bytes) throws IOException;
+	}
+
+	private static final long LEASE_SECONDS = 10;
+	private static final long SHARED_SECONDS = 10 * 60;
+	private static final int WAITS = 10;
+	private static final long WAIT_MILLIS = 100;
+
+	private final String cacheName;
+	private final Codec<V> codec;
+	private final LocalCache.Loader<V> loader;
+
+	public LeasedLoader(final LocalCache<V> cache, final Codec<V> codec, final LocalCache.Loader<V> loader) {
+		this.cacheName = cache.getName();
+		this.codec = codec;
+		this.loader = loader;
+	}
+
+	@Override
+	public V load(final String key) {
+		final Long version = MemcacheManager.getCacheVersion(cacheName, key);
+		// Nothing can be shared without a stamp to share it under
+		if (version == null)
+			return loader.load(key);
+
+		V value = getSharedValue(key, version);
+		if (value != null)
+			return value;
+
+		final String lease = cacheName + ":" + key;
+		if (!MemcacheManager.takeLease(lease, LEASE_SECONDS)) {
+			for (int i = 0; i < WAITS; i++) {
+				try {
+					Thread.sleep(WAIT_MILLIS);
+				}
+				catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				value = getSharedValue(key, version);
+				if (value != null)
+					return value;
+			}
+			return loader.load(key);
+		}
+
+		try {
+			value = loader.load(key);
+			if (value != null) {
+				MemcacheManager.putSharedValue(cacheName, key, version, codec.encode(value), SHARED_SECONDS);
+			}
+			return value;
+		}
+		finally {
+			MemcacheManager.releaseLease(lease);
+		}
+	}
+
+	// The value shared at the version, or null if there is none or it can't be read
+	private V getSharedValue(final String key, final long version) {
+		final byte[] bytes = MemcacheManager.getSharedValue(cacheName, key, version);
+		if (bytes == null)
+			return null;
+
+		try {
+			return codec.decode(bytes);
+		}
+		catch (final IOException e) {
+			Logger.getAnonymousLogger().log(Level.WARNING, "Skipping unreadable shared value of " + cacheName + ":" + key, e);
+			return null;
+		}
+	}
+}
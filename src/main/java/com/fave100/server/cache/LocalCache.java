@@ -0,0 +1,299 @@
+package com.fave100.server.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fave100.server.MemcacheManager;
+
+/**
+ * A bounded cache of values on the heap of this instance, in front of memcache and the datastore.
+ *
+ * Every key has a version stamp in memcache, which is bumped whenever its value changes on any
+ * instance. A cached value is served straight from the heap for a short while after it was
+ * loaded or last checked, after which its stamp is checked again, so a change made on another
+ * instance shows up within {@code revalidateMillis}. Changes made on this instance show up at once.
+ * A change is published as it is saved and again once the request's writes are done, since a value
+ * loaded in between would otherwise be cached under the new stamp. Values are reloaded after
+ * {@code ttlMillis} whatever their stamp, which bounds the staleness of a value whose stamp was evicted.
+ *
+ * Each key is loaded by one request at a time on an instance. Other requests for the key carry on
+ * with the value being replaced, if there is one, or else wait for the load rather than repeat it.
+ *
+ * The least recently used values are evicted once the estimated size of all values is over the limit.
+ * Cached values are shared between requests, so callers must not change them.
+ */
+public class LocalCache<V> {
+
+	public interface Loader<V> {
+		// The value of the key, or null if there is none, which isn't cached
+		V load(String key);
+	}
+
+	public interface Weigher<V> {
+		// The rough size of the value on the heap in bytes
+		int weigh(V value);
+	}
+
+	private static class Entry<V> {
+		final V value;
+		final int weight;
+		final long version;
+		final long expires;
+		volatile long validated;
+
+		Entry(final V value, final int weight, final long version, final long expires, final long validated) {
+			this.value = value;
+			this.weight = weight;
+			this.version = version;
+			this.expires = expires;
+			this.validated = validated;
+		}
+	}
+
+	private final String name;
+	private final long maxWeight;
+	private final long ttlMillis;
+	private final long revalidateMillis;
+	private final Weigher<V> weigher;
+
+	// In access order, so the eldest is the least recently used
+	private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true);
+	private long weight;
+	// The loads in progress by key
+	private final ConcurrentHashMap<String, FutureTask<V>> loading = new ConcurrentHashMap<String, FutureTask<V>>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong expirations = new AtomicLong();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	public LocalCache(final String name, final long maxWeight, final long ttlMillis, final long revalidateMillis, final Weigher<V> weigher) {
+		this.name = name;
+		this.maxWeight = maxWeight;
+		this.ttlMillis = ttlMillis;
+		this.revalidateMillis = revalidateMillis;
+		this.weigher = weigher;
+	}
+
+	public V get(final String key, final Loader<V> loader) {
+		final long now = new Date().getTime();
+		final Entry<V> entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+
+		Long checkedVersion = null;
+		if (entry != null) {
+			if (now >= entry.expires) {
+				expirations.incrementAndGet();
+			}
+			else if (now < entry.validated + revalidateMillis) {
+				hits.incrementAndGet();
+				return entry.value;
+			}
+			else {
+				checkedVersion = MemcacheManager.getCacheVersion(name, key);
+				if (checkedVersion == null) {
+					misses.incrementAndGet();
+					return loader.load(key);
+				}
+				if (checkedVersion == entry.version) {
+					entry.validated = now;
+					hits.incrementAndGet();
+					return entry.value;
+				}
+			}
+		}
+
+		// Only one request loads each key at a time, the others wait for it or carry on with the value it replaces
+		final Long version = checkedVersion;
+		final FutureTask<V> load = new FutureTask<V>(new Callable<V>() {
+			@Override
+			public V call() {
+				return load(key, loader, version, now);
+			}
+		});
+		final FutureTask<V> inFlight = loading.putIfAbsent(key, load);
+		if (inFlight != null) {
+			if (entry != null) {
+				staleHits.incrementAndGet();
+				return entry.value;
+			}
+			coalesced.incrementAndGet();
+			return await(inFlight);
+		}
+
+		misses.incrementAndGet();
+		try {
+			load.run();
+			return await(load);
+		}
+		finally {
+			loading.remove(key, load);
+		}
+	}
+
+	private V load(final String key, final Loader<V> loader, Long version, final long now) {
+		// Read the stamp before loading, so that a change saved during the load is caught by the next check
+		if (version == null) {
+			version = MemcacheManager.getCacheVersion(name, key);
+			// Without a stamp a cached value could never be checked, so leave the cache as it is
+			if (version == null)
+				return loader.load(key);
+		}
+		final V value = loader.load(key);
+		if (value != null) {
+			put(key, new Entry<V>(value, weigher.weigh(value), version, now + ttlMillis, now));
+		}
+		else {
+			synchronized (this) {
+				final Entry<V> removed = entries.remove(key);
+				if (removed != null) {
+					weight -= removed.weight;
+				}
+			}
+		}
+		return value;
+	}
+
+	private static <V> V await(final FutureTask<V> load) {
+		try {
+			return load.get();
+		}
+		catch (final ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a load", e);
+		}
+	}
+
+	// Check the key's value against a stamp just read elsewhere, so that the next get serves nothing older
+	public void checkVersion(final String key, final long version) {
+		final Entry<V> entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry == null)
+			return;
+
+		if (entry.version == version) {
+			entry.validated = new Date().getTime();
+		}
+		else if (entry.version < version) {
+			entry.validated = 0;
+		}
+	}
+
+	// Drop the keys here and publish their change to every other instance, and again once the request's writes are done
+	public void changed(final Collection<String> keys) {
+		committed(keys);
+		LocalCaches.changedInRequest(name, keys);
+	}
+
+	// Drop the keys here and publish their change to every other instance
+	Future<?> committed(final Collection<String> keys) {
+		synchronized (this) {
+			for (final String key : keys) {
+				final Entry<V> entry = entries.remove(key);
+				if (entry != null) {
+					weight -= entry.weight;
+				}
+			}
+		}
+		return MemcacheManager.bumpCacheVersions(name, keys);
+	}
+
+	public void changed(final String key) {
+		changed(Collections.singletonList(key));
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	private synchronized void put(final String key, final Entry<V> entry) {
+		// A value too big to ever fit would only evict everything else
+		if (entry.weight > maxWeight)
+			return;
+
+		final Entry<V> previous = entries.put(key, entry);
+		if (previous != null) {
+			weight -= previous.weight;
+		}
+		weight += entry.weight;
+
+		final Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+		while (weight > maxWeight && eldest.hasNext()) {
+			final Entry<V> evicted = eldest.next().getValue();
+			eldest.remove();
+			weight -= evicted.weight;
+			evictions.incrementAndGet();
+		}
+	}
+
+	/* Getters */
+
+	public String getName() {
+		return name;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	// Stale values served while another request was loading their replacement
+	public long getStaleHits() {
+		return staleHits.get();
+	}
+
+	// Misses that waited for another request's load rather than loading themselves
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + getSize() + " values, " + getWeight() + " of " + maxWeight + " bytes, "
+				+ getHits() + " hits, " + getMisses() + " misses, " + getEvictions() + " evictions, " + getExpirations() + " expirations, "
+				+ getStaleHits() + " stale hits, " + getCoalesced() + " coalesced misses";
+	}
+}
@@ -0,0 +1,163 @@
+package com.fave100.server.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.domain.appuser.AppUser;
+import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+
+/**
+ * The local caches of the hot reads, which the entities they hold keep up to date as they are saved.
+ * Changes are published again by {@link com.fave100.server.filters.CacheChangeFilter} once the request is done.
+ */
+public class LocalCaches {
+
+	public static final String LIST_NAMES_KEY = "all";
+
+	// The names of the version stamps, which are also the names of the caches they keep up to date
+	public static final String HASHTAG_STAMP = "Hashtag";
+	public static final String MASTER_LIST_STAMP = "MasterList";
+	public static final String APP_USER_STAMP = "AppUser";
+	public static final String LIST_NAMES_STAMP = "ListNames";
+	public static final String SCHEDULE_STAMP = "HashtagSchedule";
+	// FaveLists aren't cached here, their stamps are only made into ETags
+	public static final String FAVE_LIST_STAMP = "FaveList";
+
+	// The keys changed by the request on this thread, by stamp
+	private static final ThreadLocal<Map<String, Set<String>>> CHANGED = new ThreadLocal<Map<String, Set<String>>>();
+
+	private static final long REVALIDATE_MILLIS = 5 * 1000;
+	private static final long TTL_MILLIS = 10 * 60 * 1000;
+	// Rough sizes of the cached values, counting the object overhead of their strings
+	private static final int FAVE_ITEM_BYTES = 300;
+	private static final int APP_USER_BYTES = 1000;
+	private static final int LIST_NAME_BYTES = 80;
+	private static final int SCHEDULE_BYTES = 300;
+
+	// Master lists by hashtag id
+	public static final LocalCache<Hashtag> HASHTAGS = new LocalCache<Hashtag>(HASHTAG_STAMP, 16 * 1024 * 1024, TTL_MILLIS, REVALIDATE_MILLIS,
+			new LocalCache.Weigher<Hashtag>() {
+				@Override
+				public int weigh(final Hashtag hashtag) {
+					return 1000 + FAVE_ITEM_BYTES * (hashtag.getList().size() + hashtag.getCriticsList().size() + hashtag.getNewestList().size());
+				}
+			});
+
+	// The rendered master lists of each hashtag, by hashtag id
+	public static final LocalCache<RenderedLists> MASTER_LISTS = new LocalCache<RenderedLists>(MASTER_LIST_STAMP, 8 * 1024 * 1024, TTL_MILLIS, REVALIDATE_MILLIS,
+			new LocalCache.Weigher<RenderedLists>() {
+				@Override
+				public int weigh(final RenderedLists masterLists) {
+					return masterLists.getWeight();
+				}
+			});
+
+	// Users by their lower cased username
+	public static final LocalCache<AppUser> APP_USERS = new LocalCache<AppUser>(APP_USER_STAMP, 4 * 1024 * 1024, TTL_MILLIS, REVALIDATE_MILLIS,
+			new LocalCache.Weigher<AppUser>() {
+				@Override
+				public int weigh(final AppUser appUser) {
+					return APP_USER_BYTES;
+				}
+			});
+
+	// The names of the quality lists, all under LIST_NAMES_KEY, changed along with any hashtag
+	public static final LocalCache<ArrayList<String>> LIST_NAMES = new LocalCache<ArrayList<String>>(LIST_NAMES_STAMP, 1024 * 1024, TTL_MILLIS, REVALIDATE_MILLIS,
+			new LocalCache.Weigher<ArrayList<String>>() {
+				@Override
+				public int weigh(final ArrayList<String> listNames) {
+					return LIST_NAME_BYTES * listNames.size();
+				}
+			});
+
+	// The build schedules of each hashtag, which say how long its master lists can be kept, by hashtag id
+	public static final LocalCache<HashtagSchedule> SCHEDULES = new LocalCache<HashtagSchedule>(SCHEDULE_STAMP, 1024 * 1024, TTL_MILLIS, REVALIDATE_MILLIS,
+			new LocalCache.Weigher<HashtagSchedule>() {
+				@Override
+				public int weigh(final HashtagSchedule schedule) {
+					return SCHEDULE_BYTES;
+				}
+			});
+
+	public static List<LocalCache<?>> all() {
+		return Arrays.<LocalCache<?>> asList(HASHTAGS, MASTER_LISTS, APP_USERS, LIST_NAMES, SCHEDULES);
+	}
+
+	// The cache kept up to date by the stamp, or null if there is none
+	public static LocalCache<?> byStamp(final String stamp) {
+		for (final LocalCache<?> cache : all()) {
+			if (cache.getName().equals(stamp))
+				return cache;
+		}
+		return null;
+	}
+
+	// Publish a change to a FaveList, which has to be done by hand when it is deleted
+	public static void faveListChanged(final String faveListId) {
+		final List<String> keys = Collections.singletonList(faveListId);
+		MemcacheManager.bumpCacheVersions(FAVE_LIST_STAMP, keys);
+		changedInRequest(FAVE_LIST_STAMP, keys);
+	}
+
+	// Remember the keys changed as they were saved, to publish them again once the save has completed
+	static void changedInRequest(final String stamp, final Collection<String> keys) {
+		Map<String, Set<String>> changed = CHANGED.get();
+		if (changed == null) {
+			changed = new HashMap<String, Set<String>>();
+			CHANGED.set(changed);
+		}
+		Set<String> stampKeys = changed.get(stamp);
+		if (stampKeys == null) {
+			stampKeys = new HashSet<String>();
+			changed.put(stamp, stampKeys);
+		}
+		stampKeys.addAll(keys);
+	}
+
+	// Publish every change saved in this request again, now that its writes are done
+	public static void publishChanges() {
+		final Map<String, Set<String>> changed = CHANGED.get();
+		CHANGED.remove();
+		if (changed == null)
+			return;
+
+		final List<Future<?>> bumps = new ArrayList<Future<?>>();
+		for (final Map.Entry<String, Set<String>> stampKeys : changed.entrySet()) {
+			final LocalCache<?> cache = byStamp(stampKeys.getKey());
+			if (cache != null) {
+				bumps.add(cache.committed(stampKeys.getValue()));
+			}
+			else {
+				bumps.add(MemcacheManager.bumpCacheVersions(stampKeys.getKey(), stampKeys.getValue()));
+			}
+		}
+		for (final Future<?> bump : bumps) {
+			try {
+				bump.get();
+			}
+			catch (InterruptedException | ExecutionException e) {
+				Logger.getAnonymousLogger().log(Level.WARNING, "Couldn't publish a change to the local caches", e);
+			}
+		}
+	}
+
+	public static void clearAll() {
+		for (final LocalCache<?> cache : all()) {
+			cache.clear();
+		}
+		CHANGED.remove();
+	}
+}
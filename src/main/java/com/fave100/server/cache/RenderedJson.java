@@ -0,0 +1,93 @@
+package com.fave100.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * A response rendered to JSON once and kept gzipped, so that it can be written out as it is
+ * for as long as the value it was rendered from doesn't change.
+ */
+public class RenderedJson {
+
+	private static final String FIELDS_FILTER = "fields";
+	// Thread safe, and left with the defaults of the JSON provider's mapper apart from the filter that picks the fields of FaveItems
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	static {
+		MAPPER.addMixInAnnotations(FaveItem.class, FilteredFields.class);
+		MAPPER.setFilters(new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAllExcept(Collections.<String> emptySet())));
+	}
+
+	@JsonFilter(FIELDS_FILTER)
+	private static class FilteredFields {
+	}
+
+	private final byte[] gzipped;
+
+	private RenderedJson(final byte[] gzipped) {
+		this.gzipped = gzipped;
+	}
+
+	public static RenderedJson render(final Object value) {
+		return render(value, null);
+	}
+
+	// Render with only the given fields of each FaveItem, or all of them if null
+	public static RenderedJson render(final Object value, final Set<String> faveItemFields) {
+		try {
+			final byte[] json = toJson(value, faveItemFields);
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream(json.length / 4);
+			try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+				gzip.write(json);
+			}
+			return new RenderedJson(bytes.toByteArray());
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Couldn't render " + value.getClass().getSimpleName(), e);
+		}
+	}
+
+	// The JSON of a value that isn't worth keeping, with only the given fields of each FaveItem, or all of them if null
+	public static byte[] toJson(final Object value, final Set<String> faveItemFields) {
+		final ObjectWriter writer = faveItemFields == null ? MAPPER.writer()
+				: MAPPER.writer(new SimpleFilterProvider().addFilter(FIELDS_FILTER, SimpleBeanPropertyFilter.filterOutAllExcept(faveItemFields)));
+		try {
+			return writer.writeValueAsBytes(value);
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Couldn't render " + value.getClass().getSimpleName(), e);
+		}
+	}
+
+	// The JSON itself, for the few clients that don't accept gzip
+	public byte[] getJson() {
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			final ByteArrayOutputStream json = new ByteArrayOutputStream(gzipped.length * 4);
+			final byte[] buffer = new byte[4096];
+			int read;
+			while ((read = gzip.read(buffer)) != -1) {
+				json.write(buffer, 0, read);
+			}
+			return json.toByteArray();
+		}
+		catch (final IOException e) {
+			throw new IllegalStateException("Couldn't unzip rendered JSON", e);
+		}
+	}
+
+	public byte[] getGzipped() {
+		return gzipped;
+	}
+}
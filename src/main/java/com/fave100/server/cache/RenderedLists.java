@@ -0,0 +1,67 @@
+package com.fave100.server.cache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.FaveItemCollection;
+import com.fave100.server.domain.favelist.ListSlice;
+
+/**
+ * The master lists of a hashtag by mode, rendered whole when they are loaded, and in the slices
+ * asked for so far as they are asked for.
+ *
+ * The slices kept never add up to more than the whole lists, so the lists weigh at most twice
+ * what they do when loaded. Slices asked for once that is reached are rendered for each request.
+ */
+public class RenderedLists {
+
+	private final Map<String, List<FaveItem>> lists;
+	private final Map<String, RenderedJson> whole = new HashMap<String, RenderedJson>();
+	private final ConcurrentHashMap<String, RenderedJson> slices = new ConcurrentHashMap<String, RenderedJson>();
+	private final int wholeBytes;
+	private final AtomicInteger sliceBytes = new AtomicInteger();
+
+	public RenderedLists(final Map<String, List<FaveItem>> lists) {
+		this.lists = lists;
+		int bytes = 0;
+		for (final Map.Entry<String, List<FaveItem>> list : lists.entrySet()) {
+			final RenderedJson rendered = RenderedJson.render(new FaveItemCollection(list.getValue()));
+			whole.put(list.getKey(), rendered);
+			bytes += rendered.getGzipped().length;
+		}
+		wholeBytes = bytes;
+	}
+
+	// Null if there is no list for the mode
+	public RenderedJson get(final String mode, final ListSlice slice) {
+		if (slice.isWhole())
+			return whole.get(mode);
+
+		final List<FaveItem> list = lists.get(mode);
+		if (list == null)
+			return null;
+
+		final String key = mode + ":" + slice.getKey();
+		RenderedJson rendered = slices.get(key);
+		if (rendered == null) {
+			rendered = RenderedJson.render(new FaveItemCollection(slice.apply(list)), slice.getFields());
+			final int bytes = rendered.getGzipped().length;
+			// Another request may have rendered the same slice meanwhile, in which case it is the one kept
+			final RenderedJson kept = sliceBytes.addAndGet(bytes) <= wholeBytes ? slices.putIfAbsent(key, rendered) : rendered;
+			if (kept != null) {
+				sliceBytes.addAndGet(-bytes);
+				return kept;
+			}
+		}
+		return rendered;
+	}
+
+	// The most the lists can weigh on the heap, with all the slices they can keep
+	public int getWeight() {
+		return 200 + 2 * (100 * whole.size() + wholeBytes);
+	}
+}
@@ -0,0 +1,55 @@
+package com.fave100.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Encodes lists of strings for memcache, such as the list names, in place of Java serialization.
+ *
+ * Starts with a format version, like {@link FaveItemCodec}, followed by the count and each string
+ * in modified UTF-8.
+ */
+public class StringListCodec implements LeasedLoader.Codec<ArrayList<String>> {
+
+	public static final byte VERSION = 1;
+
+	@Override
+	public byte[] encode(final ArrayList<String> strings) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(8 + 32 * strings.size());
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeInt(strings.size());
+			for (final String string : strings) {
+				out.writeUTF(string);
+			}
+		}
+		catch (final IOException e) {
+			// Not thrown by an in memory stream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	// Throws if the bytes aren't a string list of this version
+	@Override
+	public ArrayList<String> decode(final byte[] bytes) throws IOException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			final byte version = in.readByte();
+			if (version != VERSION)
+				throw new IOException("Unknown string list encoding version " + version);
+
+			final int count = in.readInt();
+			if (count < 0 || count > bytes.length)
+				throw new IOException("String count out of range");
+			final ArrayList<String> strings = new ArrayList<String>(count);
+			for (int i = 0; i < count; i++) {
+				strings.add(in.readUTF());
+			}
+			return strings;
+		}
+	}
+}
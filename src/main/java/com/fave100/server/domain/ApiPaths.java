@@ -38,6 +38,7 @@ public final class ApiPaths {
 	public static final String ALTER_CRITIC = "/critics/{user}";
 	public static final String GET_USERS_FAVELIST = "/{user}/favelists/{list}";
 	public static final String LIST_CRITIC_URL = "/{user}/favelists/{list}/critic_url";
+	public static final String GET_LIST_PAGE = "/{user}/favelists/{list}/page";
 	public static final String GET_USERS_FOLLOWING = "/{user}/following";
 	public static final String IS_APPUSER_LOGGED_IN = "/isLoggedIn";
 
@@ -0,0 +1,63 @@
+package com.fave100.server.domain;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * One chunk of a {@link SnapshotExport}, as encoded by {@link com.fave100.server.ranking.SnapshotCodec}.
+ *
+ * Chunks are keyed by export and index, so that they can be fetched in order by key
+ * and copied straight into a snapshot file.
+ */
+@Entity
+public class SnapshotChunk {
+
+	@Id private String id;
+	private long exportId;
+	private int index;
+	private int kind;
+	private byte[] data;
+
+	@SuppressWarnings("unused")
+	private SnapshotChunk() {
+	}
+
+	public SnapshotChunk(final long exportId, final int index, final byte kind, final byte[] data) {
+		this.id = getId(exportId, index);
+		this.exportId = exportId;
+		this.index = index;
+		this.kind = kind;
+		this.data = data;
+	}
+
+	public static String getId(final long exportId, final int index) {
+		return exportId + ":" + index;
+	}
+
+	public static Key<SnapshotChunk> key(final long exportId, final int index) {
+		return Key.create(SnapshotChunk.class, getId(exportId, index));
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public long getExportId() {
+		return exportId;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public byte getKind() {
+		return (byte)kind;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,94 @@
+package com.fave100.server.domain;
+
+import java.util.Date;
+
+import com.fave100.server.ranking.SnapshotCodec;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * The progress of an export of every FaveList, Hashtag and AppUser into {@link SnapshotChunk}s:
+ * the kind being exported, the cursor of its next chunk and the number of chunks saved so far.
+ *
+ * Each export task saves one chunk and then this, so a task that fails part way is retried
+ * from the same cursor and overwrites the same chunk.
+ */
+@Entity
+public class SnapshotExport {
+
+	@Id private Long id;
+	private Date started;
+	private Date finished;
+	// The SnapshotCodec kind being exported, KIND_END once every kind has been
+	private int kind = SnapshotCodec.KIND_FAVELISTS;
+	private String cursor;
+	private int chunkCount;
+	private long rowCount;
+
+	@SuppressWarnings("unused")
+	private SnapshotExport() {
+	}
+
+	public SnapshotExport(final Date started) {
+		this.id = started.getTime();
+		this.started = started;
+	}
+
+	// Carry on with the next kind from its beginning
+	public void nextKind() {
+		switch (kind) {
+			case SnapshotCodec.KIND_FAVELISTS:
+				kind = SnapshotCodec.KIND_HASHTAGS;
+				break;
+			case SnapshotCodec.KIND_HASHTAGS:
+				kind = SnapshotCodec.KIND_USERS;
+				break;
+			default:
+				kind = SnapshotCodec.KIND_END;
+				finished = new Date();
+		}
+		cursor = null;
+	}
+
+	// Record a saved chunk, and where the next one starts
+	public void chunkSaved(final int rows, final String cursor) {
+		this.chunkCount++;
+		this.rowCount += rows;
+		this.cursor = cursor;
+	}
+
+	public boolean isFinished() {
+		return kind == SnapshotCodec.KIND_END;
+	}
+
+	/* Getters */
+
+	public Long getId() {
+		return id;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Date getFinished() {
+		return finished;
+	}
+
+	public byte getKind() {
+		return (byte)kind;
+	}
+
+	// Null at the start of each kind
+	public String getCursor() {
+		return cursor;
+	}
+
+	public int getChunkCount() {
+		return chunkCount;
+	}
+
+	public long getRowCount() {
+		return rowCount;
+	}
+}
@@ -10,12 +10,14 @@ import org.mindrot.jbcrypt.BCrypt;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fave100.server.cache.LocalCaches;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.api.images.ServingUrlOptions;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnSave;
 import com.googlecode.objectify.condition.IfTrue;
 
 /**
@@ -56,6 +58,12 @@ public class AppUser {
 		this.joinDate = new Date();
 	}
 
+	// Users are cached by every instance, so each save has to let them know
+	@OnSave
+	void onSave() {
+		LocalCaches.APP_USERS.changed(usernameID);
+	}
+
 	public String getAvatarImage() {
 		return (getAvatarImage(80));
 	}
@@ -0,0 +1,61 @@
+package com.fave100.server.domain.favelist;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.Date;
+
+import com.fave100.server.MemcacheManager;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * Marks a hashtag whose FaveLists have changed since its master lists were last built.
+ *
+ * Kept apart from the Hashtag entity so that marking is a single blind write that can't
+ * race with the builder saving the Hashtag. The builder removes the mark after a successful
+ * build, unless the hashtag changed again while it was building.
+ */
+@Entity
+public class DirtyHashtag {
+
+	@Id private String id;
+	private Date changed;
+
+	@SuppressWarnings("unused")
+	private DirtyHashtag() {
+	}
+
+	public DirtyHashtag(final String hashtagId) {
+		this.id = hashtagId.toLowerCase();
+		this.changed = new Date();
+	}
+
+	public static void mark(final String hashtagId) {
+		ofy().save().entity(new DirtyHashtag(hashtagId)).now();
+		MemcacheManager.countHashtagWrite(hashtagId);
+	}
+
+	// Remove the mark of a hashtag that has been built with all changes made before buildStarted
+	public static void clear(final String hashtagId, final Date buildStarted) {
+		ofy().transact(new VoidWork() {
+			@Override
+			public void vrun() {
+				final DirtyHashtag dirty = ofy().load().type(DirtyHashtag.class).id(hashtagId.toLowerCase()).now();
+				if (dirty != null && !dirty.getChanged().after(buildStarted)) {
+					ofy().delete().entity(dirty).now();
+				}
+			}
+		});
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public Date getChanged() {
+		return changed;
+	}
+}
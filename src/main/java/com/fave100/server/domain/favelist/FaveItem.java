@@ -87,6 +87,7 @@ public class FaveItem implements Serializable {
 		this.songID = songID;
 	}
 
+	// Null on the items of the users' and critics' master lists, which stand for every pick of the song
 	@JsonIgnore
 	public Date getDatePicked() {
 		return datePicked;
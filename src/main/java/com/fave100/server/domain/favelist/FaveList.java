@@ -3,12 +3,14 @@ package com.fave100.server.domain.favelist;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fave100.server.cache.LocalCaches;
 import com.fave100.server.domain.appuser.AppUser;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Ref;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnSave;
 
 @Entity
 public class FaveList {
@@ -30,6 +32,17 @@ public class FaveList {
 		setHashtag(hashtag);
 	}
 
+	// Lists are served with ETags made from their version stamp, so each save has to change it
+	@OnSave
+	void onSave() {
+		LocalCaches.faveListChanged(id);
+	}
+
+	// Critic lists are scored separately from regular user lists
+	public boolean isCriticList() {
+		return criticUrl != null && !criticUrl.isEmpty();
+	}
+
 	/* Getters and Setters */
 
 	public String getId() {
@@ -4,6 +4,8 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import javax.inject.Named;
 
+import com.fave100.server.ranking.MasterListBuild;
+
 public class FaveListDao {
 
 	public static final String SEPERATOR_TOKEN = ":";
@@ -19,7 +21,7 @@ public class FaveListDao {
 	}
 
 	public static double calculateItemScore(@Named final int position) {
-		return ((double)(-1 * position) / 11 + ((double)111 / 11));
+		return MasterListBuild.calculateItemScore(position);
 	}
 
 }
@@ -0,0 +1,92 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.Serialize;
+
+/**
+ * The parts of a FaveList that the master list builder needs, written alongside
+ * every FaveList save under the same id.
+ *
+ * Whylines and their refs are left out, and the ranked songs are stored as a few
+ * zipped arrays with the position implied by the index, so a build reads a small
+ * fraction of the bytes of the full FaveList. Builds read them as a {@link com.fave100.server.ranking.ListSummary}.
+ */
+@Entity
+public class FaveListSummary {
+
+	@Id private String id;
+	@Index private String hashtagId;
+	private boolean critic;
+	@Serialize(zip = true) private String[] songIDs;
+	@Serialize(zip = true) private String[] songs;
+	@Serialize(zip = true) private String[] artists;
+	@Serialize(zip = true) private long[] datesPicked;
+
+	@SuppressWarnings("unused")
+	private FaveListSummary() {
+	}
+
+	public FaveListSummary(final FaveList faveList) {
+		this.id = faveList.getId();
+		this.hashtagId = faveList.getHashtagId();
+		this.critic = faveList.isCriticList();
+
+		final List<FaveItem> list = faveList.getList();
+		songIDs = new String[list.size()];
+		songs = new String[list.size()];
+		artists = new String[list.size()];
+		datesPicked = new long[list.size()];
+		for (int i = 0; i < list.size(); i++) {
+			final FaveItem faveItem = list.get(i);
+			songIDs[i] = faveItem.getSongID();
+			songs[i] = faveItem.getSong();
+			artists[i] = faveItem.getArtist();
+			datesPicked[i] = faveItem.getDatePicked().getTime();
+		}
+	}
+
+	public static List<FaveListSummary> of(final Collection<FaveList> faveLists) {
+		final List<FaveListSummary> summaries = new ArrayList<>();
+		for (final FaveList faveList : faveLists) {
+			summaries.add(new FaveListSummary(faveList));
+		}
+		return summaries;
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public String getHashtagId() {
+		return hashtagId;
+	}
+
+	public boolean isCritic() {
+		return critic;
+	}
+
+	// Position - 1 is the index in each of the arrays
+	public String[] getSongIDs() {
+		return songIDs;
+	}
+
+	public String[] getSongs() {
+		return songs;
+	}
+
+	public String[] getArtists() {
+		return artists;
+	}
+
+	public long[] getDatesPicked() {
+		return datesPicked;
+	}
+}
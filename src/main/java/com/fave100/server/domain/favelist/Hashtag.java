@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import com.fave100.server.cache.LocalCaches;
 import com.fave100.server.domain.appuser.AppUser;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Ref;
@@ -12,6 +13,7 @@ import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.googlecode.objectify.annotation.IgnoreSave;
 import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnSave;
 
 @Entity
 @Cache
@@ -28,6 +30,10 @@ public class Hashtag {
 	private List<FaveItem> criticsList = new ArrayList<FaveItem>();
 	private List<FaveItem> newestList = new ArrayList<FaveItem>();
 	@Index private double zscore = 0;
+	// When the master lists were last built, for the enqueuer's staleness refresh
+	@Index private Date lastBuilt;
+	// When a full build last checked the score ledger, null for hashtags from before the ledger, which have to be fully built first
+	private Date ledgerReconciled;
 	List<Integer> slidingListCount = new ArrayList<>();
 
 	@SuppressWarnings("unused")
@@ -39,6 +45,16 @@ public class Hashtag {
 		this.name = name;
 		this.setCreatedBy(Ref.create(Key.create(AppUser.class, createdBy.toLowerCase())));
 		setDateCreated(new Date());
+		// A new hashtag's ledger starts out complete, every pick is recorded in it from the first
+		ledgerReconciled = getDateCreated();
+	}
+
+	// Master lists and list names are cached by every instance, so each save has to let them know
+	@OnSave
+	void onSave() {
+		LocalCaches.HASHTAGS.changed(id);
+		LocalCaches.MASTER_LISTS.changed(id);
+		LocalCaches.LIST_NAMES.changed(LocalCaches.LIST_NAMES_KEY);
 	}
 
 	public void addListCount(int listCount) {
@@ -114,6 +130,22 @@ public class Hashtag {
 		this.criticsList = criticsList;
 	}
 
+	public Date getLastBuilt() {
+		return lastBuilt;
+	}
+
+	public void setLastBuilt(Date lastBuilt) {
+		this.lastBuilt = lastBuilt;
+	}
+
+	public Date getLedgerReconciled() {
+		return ledgerReconciled;
+	}
+
+	public void setLedgerReconciled(Date ledgerReconciled) {
+		this.ledgerReconciled = ledgerReconciled;
+	}
+
 	public List<FaveItem> getNewestList() {
 		return newestList;
 	}
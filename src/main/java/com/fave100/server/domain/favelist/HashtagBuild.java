@@ -0,0 +1,79 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+
+/**
+ * The plan of a sharded master list build: the FaveList cursor ranges that
+ * each shard of the hashtag should score, and the shards that have finished.
+ * There is at most one build in progress per hashtag, a newer build replaces an older one.
+ *
+ * @see HashtagBuildShard
+ */
+@Entity
+public class HashtagBuild {
+
+	@Id private String id;
+	private long buildId;
+	private Date started;
+	// Web-safe start cursor of each shard, the first shard starts at the beginning ("")
+	private List<String> cursors = new ArrayList<String>();
+	// The shards that have saved their results, only changed in transactions
+	private Set<Integer> finishedShards = new HashSet<Integer>();
+
+	@SuppressWarnings("unused")
+	private HashtagBuild() {
+	}
+
+	public HashtagBuild(final String hashtagId) {
+		this.id = hashtagId.toLowerCase();
+		this.started = new Date();
+		this.buildId = started.getTime();
+	}
+
+	public int getShardCount() {
+		return cursors.size();
+	}
+
+	// The start cursor of the shard, or null if the shard starts at the beginning
+	public String getStartCursor(final int shard) {
+		final String cursor = cursors.get(shard);
+		return cursor.isEmpty() ? null : cursor;
+	}
+
+	// The end cursor of the shard, or null if the shard runs until the end
+	public String getEndCursor(final int shard) {
+		return shard + 1 < cursors.size() ? cursors.get(shard + 1) : null;
+	}
+
+	// Record the shard as finished, returns whether every shard now is
+	public boolean finishShard(final int shard) {
+		finishedShards.add(shard);
+		return finishedShards.size() == cursors.size();
+	}
+
+	/* Getters and Setters */
+
+	public String getId() {
+		return id;
+	}
+
+	public long getBuildId() {
+		return buildId;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public List<String> getCursors() {
+		return cursors;
+	}
+
+}
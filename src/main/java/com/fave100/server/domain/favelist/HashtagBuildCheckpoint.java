@@ -0,0 +1,101 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Serialize;
+
+/**
+ * The progress of a full build of a hashtag that is scanned across several tasks: the
+ * cursor of the next page of FaveLists to scan, and everything scanned before it.
+ *
+ * A task that runs out of time saves its progress here and chains a continuation task,
+ * which resumes from the cursor instead of scanning the hashtag again. Progress is also
+ * saved every few pages, so a retried task loses at most those pages.
+ *
+ * There is one checkpoint per hashtag, so starting a new build replaces any older one.
+ */
+@Entity
+public class HashtagBuildCheckpoint {
+
+	@Id private String id;
+	private long buildId;
+	private Date started;
+	private String cursor;
+	private int listCount;
+	// One representative FaveItem per scored song, with scores by position, 0 where the song wasn't picked by that kind of list
+	@Serialize(zip = true) private ArrayList<FaveItem> faveItems = new ArrayList<>();
+	@Serialize(zip = true) private double[] userScores = new double[0];
+	@Serialize(zip = true) private double[] criticScores = new double[0];
+	@Serialize(zip = true) private ArrayList<FaveItem> newest = new ArrayList<>();
+
+	@SuppressWarnings("unused")
+	private HashtagBuildCheckpoint() {
+	}
+
+	public HashtagBuildCheckpoint(final String hashtagId) {
+		this.id = hashtagId.toLowerCase();
+		this.started = new Date();
+		this.buildId = started.getTime();
+	}
+
+	/* Getters and Setters */
+
+	public String getId() {
+		return id;
+	}
+
+	public long getBuildId() {
+		return buildId;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	// Null until the first page has been scanned
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(final String cursor) {
+		this.cursor = cursor;
+	}
+
+	public int getListCount() {
+		return listCount;
+	}
+
+	public void setListCount(final int listCount) {
+		this.listCount = listCount;
+	}
+
+	public List<FaveItem> getFaveItems() {
+		return faveItems;
+	}
+
+	public double[] getUserScores() {
+		return userScores;
+	}
+
+	public double[] getCriticScores() {
+		return criticScores;
+	}
+
+	public void setScores(final List<FaveItem> faveItems, final double[] userScores, final double[] criticScores) {
+		this.faveItems = new ArrayList<>(faveItems);
+		this.userScores = userScores;
+		this.criticScores = criticScores;
+	}
+
+	public List<FaveItem> getNewest() {
+		return newest;
+	}
+
+	public void setNewest(final List<FaveItem> newest) {
+		this.newest = new ArrayList<>(newest);
+	}
+}
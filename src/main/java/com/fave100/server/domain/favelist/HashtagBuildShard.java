@@ -0,0 +1,87 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Serialize;
+
+/**
+ * The partial scores of one shard of a sharded master list build. Each shard
+ * always writes to the same entity, so a retried shard task simply replaces
+ * its earlier result.
+ *
+ * @see HashtagBuild
+ */
+@Entity
+public class HashtagBuildShard {
+
+	@Id private String id;
+	private long buildId;
+	private int listCount;
+	// One representative FaveItem per scored song, so the reducer can build the master lists
+	@Serialize(zip = true) private ArrayList<FaveItem> faveItems = new ArrayList<>();
+	// Scores by position in faveItems, 0 where the song wasn't picked by that kind of list
+	@Serialize(zip = true) private double[] userScores = new double[0];
+	@Serialize(zip = true) private double[] criticScores = new double[0];
+	@Serialize(zip = true) private ArrayList<FaveItem> newest = new ArrayList<>();
+
+	@SuppressWarnings("unused")
+	private HashtagBuildShard() {
+	}
+
+	public HashtagBuildShard(final String hashtagId, final int shard, final long buildId) {
+		this.id = createId(hashtagId, shard);
+		this.buildId = buildId;
+	}
+
+	public static String createId(final String hashtagId, final int shard) {
+		return hashtagId.toLowerCase() + FaveListDao.SEPERATOR_TOKEN + shard;
+	}
+
+	/* Getters and Setters */
+
+	public String getId() {
+		return id;
+	}
+
+	public long getBuildId() {
+		return buildId;
+	}
+
+	public int getListCount() {
+		return listCount;
+	}
+
+	public void setListCount(final int listCount) {
+		this.listCount = listCount;
+	}
+
+	public List<FaveItem> getFaveItems() {
+		return faveItems;
+	}
+
+	public double[] getUserScores() {
+		return userScores;
+	}
+
+	public double[] getCriticScores() {
+		return criticScores;
+	}
+
+	public void setScores(final List<FaveItem> faveItems, final double[] userScores, final double[] criticScores) {
+		this.faveItems = new ArrayList<>(faveItems);
+		this.userScores = userScores;
+		this.criticScores = criticScores;
+	}
+
+	public List<FaveItem> getNewest() {
+		return newest;
+	}
+
+	public void setNewest(final List<FaveItem> newest) {
+		this.newest = new ArrayList<>(newest);
+	}
+
+}
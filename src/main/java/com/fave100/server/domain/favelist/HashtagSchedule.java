@@ -0,0 +1,129 @@
+package com.fave100.server.domain.favelist;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.Date;
+
+import com.fave100.server.cache.LocalCaches;
+import com.googlecode.objectify.VoidWork;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+import com.googlecode.objectify.annotation.OnSave;
+
+/**
+ * When a hashtag's master lists are next due to be refreshed, and the recent activity that decided it.
+ *
+ * Write and read rates are smoothed over a few hours, and together with the hashtag's zscore they set
+ * the refresh interval: busy hashtags are refreshed every few minutes, dormant ones once a day.
+ * The next build is scheduled as a build is enqueued, but the master lists only keep until it once
+ * the builder has recorded the enqueued build, since until then they could change at any time.
+ * Kept apart from the Hashtag entity, so that scheduling never races with the builder saving the Hashtag.
+ */
+@Entity
+public class HashtagSchedule {
+
+	public static long MIN_INTERVAL_MILLIS = 5 * 60 * 1000;
+	public static long MAX_INTERVAL_MILLIS = 24 * 60 * 60 * 1000;
+	// How quickly the smoothed rates follow the latest counts
+	public static double RATE_WINDOW_HOURS = 6;
+	// A read counts for much less than a change to one of the hashtag's lists
+	public static double READ_WEIGHT = 0.1;
+
+	@Id private String id;
+	@Index private Date nextBuild;
+	private Date ratesUpdated;
+	// When a build was last enqueued and when the last build to be saved started
+	private Date enqueued;
+	private Date built;
+	// Per hour
+	private double writeRate;
+	private double readRate;
+
+	@SuppressWarnings("unused")
+	private HashtagSchedule() {
+	}
+
+	public HashtagSchedule(final String hashtagId) {
+		this.id = hashtagId.toLowerCase();
+		this.nextBuild = new Date();
+		this.ratesUpdated = nextBuild;
+	}
+
+	// Master lists are cached until their next build, so moving it has to reach every instance
+	@OnSave
+	void onSave() {
+		LocalCaches.SCHEDULES.changed(id);
+	}
+
+	// Record a build that started at the time, unless it was overtaken by a newer one
+	public static void built(final String hashtagId, final Date started) {
+		ofy().transact(new VoidWork() {
+			@Override
+			public void vrun() {
+				final HashtagSchedule schedule = ofy().load().type(HashtagSchedule.class).id(hashtagId.toLowerCase()).now();
+				if (schedule != null && (schedule.built == null || schedule.built.before(started))) {
+					schedule.built = started;
+					ofy().save().entity(schedule).now();
+				}
+			}
+		});
+	}
+
+	// Fold the writes and reads counted since the last update into the smoothed rates
+	public void updateRates(final long writes, final long reads, final Date now) {
+		final double hours = Math.max(now.getTime() - ratesUpdated.getTime(), 60 * 1000) / (60.0 * 60 * 1000);
+		final double weight = 1 - Math.exp(-hours / RATE_WINDOW_HOURS);
+		writeRate += weight * (writes / hours - writeRate);
+		readRate += weight * (reads / hours - readRate);
+		ratesUpdated = now;
+	}
+
+	public double getActivity(final double zscore) {
+		return writeRate + READ_WEIGHT * readRate + Math.max(0, zscore);
+	}
+
+	// Shrinks from a day for a dormant hashtag towards the minimum as activity grows
+	public long getInterval(final double zscore) {
+		return Math.max(MIN_INTERVAL_MILLIS, (long)(MAX_INTERVAL_MILLIS / (1 + getActivity(zscore))));
+	}
+
+	// Busier hashtags come first, but the longer a hashtag is overdue relative to its interval the higher it climbs
+	public double getPriority(final double zscore, final Date now) {
+		final long overdue = Math.max(0, now.getTime() - nextBuild.getTime());
+		return (1 + getActivity(zscore)) * (1 + overdue / (double)getInterval(zscore));
+	}
+
+	public void scheduleNext(final double zscore, final Date now) {
+		nextBuild = new Date(now.getTime() + getInterval(zscore));
+	}
+
+	// Schedule the next build after the one being enqueued now
+	public void enqueued(final double zscore, final Date now) {
+		scheduleNext(zscore, now);
+		enqueued = now;
+	}
+
+	// Whether the last enqueued build has been saved, so that the lists stay as they are until the next build
+	public boolean isBuilt() {
+		return built != null && (enqueued == null || !built.before(enqueued));
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public Date getNextBuild() {
+		return nextBuild;
+	}
+
+	public double getWriteRate() {
+		return writeRate;
+	}
+
+	public double getReadRate() {
+		return readRate;
+	}
+}
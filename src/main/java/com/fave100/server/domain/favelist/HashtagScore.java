@@ -0,0 +1,100 @@
+package com.fave100.server.domain.favelist;
+
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Index;
+
+/**
+ * A single row of a hashtag's score ledger: the running total of the rank
+ * scores that a song has received in all user and critic lists of the hashtag.
+ *
+ * @see ScoreLedger
+ */
+@Entity
+public class HashtagScore {
+
+	@Id private String id;
+	@Index private String hashtagId;
+	private String songID;
+	private String song;
+	private String artist;
+	@Index private double userScore = 0;
+	@Index private double criticScore = 0;
+
+	@SuppressWarnings("unused")
+	private HashtagScore() {
+	}
+
+	public HashtagScore(final String hashtagId, final FaveItem faveItem) {
+		this.id = ScoreLedger.createId(hashtagId, faveItem.getSongID());
+		this.hashtagId = hashtagId;
+		this.songID = faveItem.getSongID();
+		this.song = faveItem.getSong();
+		this.artist = faveItem.getArtist();
+	}
+
+	public void addScore(final double delta, final boolean critic) {
+		if (critic) {
+			criticScore += delta;
+		}
+		else {
+			userScore += delta;
+		}
+	}
+
+	public double getScore(final boolean critic) {
+		return critic ? criticScore : userScore;
+	}
+
+	public void setScore(final double score, final boolean critic) {
+		if (critic) {
+			criticScore = score;
+		}
+		else {
+			userScore = score;
+		}
+	}
+
+	public boolean isEmpty() {
+		return userScore < ScoreLedger.EPSILON && criticScore < ScoreLedger.EPSILON;
+	}
+
+	// A FaveItem suitable for a master list, without whyline or date picked
+	public FaveItem toFaveItem() {
+		final FaveItem faveItem = new FaveItem(song, artist, songID);
+		faveItem.setWhyline("");
+		faveItem.setDatePicked(null);
+		return faveItem;
+	}
+
+	/* Getters and Setters */
+
+	public String getId() {
+		return id;
+	}
+
+	public String getHashtagId() {
+		return hashtagId;
+	}
+
+	public String getSongID() {
+		return songID;
+	}
+
+	public String getSong() {
+		return song;
+	}
+
+	public String getArtist() {
+		return artist;
+	}
+
+	public double getUserScore() {
+		return userScore;
+	}
+
+	public double getCriticScore() {
+		return criticScore;
+	}
+
+}
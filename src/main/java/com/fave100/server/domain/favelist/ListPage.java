@@ -0,0 +1,87 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.List;
+
+import com.fave100.server.domain.appuser.AppUser;
+import com.fave100.server.domain.appuser.FollowingResult;
+import com.wordnik.swagger.annotations.ApiModel;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+
+/**
+ * Everything the page of a user's list is first drawn from, so that it takes one request rather than one per part.
+ */
+@ApiModel(value = "ListPage")
+public class ListPage {
+
+	@ApiModelProperty(required = true, value = "The user whose list it is") private AppUser user;
+	@ApiModelProperty(required = true, value = "The list shown, the default list if the user doesn't have the one asked for") private String list;
+	@ApiModelProperty(value = "The FaveItems of the list, missing if it isn't found") private List<FaveItem> items;
+	@ApiModelProperty(required = true, value = "The critic url of the list, empty if it has none") private String criticUrl;
+	@ApiModelProperty(required = true, value = "Whether the current user is following the user") private boolean followed;
+	@ApiModelProperty(value = "The first of the users the user is following, missing if they are private") private FollowingResult following;
+
+	@SuppressWarnings("unused")
+	private ListPage() {
+	}
+
+	public ListPage(final AppUser user, final String list, final List<FaveItem> items, final String criticUrl, final boolean followed,
+					final FollowingResult following) {
+		this.user = user;
+		this.list = list;
+		this.items = items;
+		this.criticUrl = criticUrl;
+		this.followed = followed;
+		this.following = following;
+	}
+
+	/* Getters and Setters */
+
+	public AppUser getUser() {
+		return user;
+	}
+
+	public void setUser(final AppUser user) {
+		this.user = user;
+	}
+
+	public String getList() {
+		return list;
+	}
+
+	public void setList(final String list) {
+		this.list = list;
+	}
+
+	public List<FaveItem> getItems() {
+		return items;
+	}
+
+	public void setItems(final List<FaveItem> items) {
+		this.items = items;
+	}
+
+	public String getCriticUrl() {
+		return criticUrl;
+	}
+
+	public void setCriticUrl(final String criticUrl) {
+		this.criticUrl = criticUrl;
+	}
+
+	public boolean isFollowed() {
+		return followed;
+	}
+
+	public void setFollowed(final boolean followed) {
+		this.followed = followed;
+	}
+
+	public FollowingResult getFollowing() {
+		return following;
+	}
+
+	public void setFollowing(final FollowingResult following) {
+		this.following = following;
+	}
+
+}
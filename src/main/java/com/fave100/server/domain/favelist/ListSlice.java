@@ -0,0 +1,85 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A range of a list of FaveItems and the fields of each to send, as asked for in the query of a list request.
+ */
+public class ListSlice {
+
+	public static final String OFFSET_PARAM = "offset";
+	public static final String LIMIT_PARAM = "limit";
+	public static final String FIELDS_PARAM = "fields";
+	// The fields of a FaveItem in its JSON that can be asked for
+	public static final List<String> FIELDS = Arrays.asList("song", "artist", "songID", "whyline");
+
+	public static final ListSlice WHOLE = new ListSlice(0, 0, null);
+
+	private final int offset;
+	// No limit if 0
+	private final int limit;
+	// Every field if null, sorted so that the same fields in any order make the same key
+	private final Set<String> fields;
+
+	private ListSlice(final int offset, final int limit, final Set<String> fields) {
+		this.offset = offset;
+		this.limit = limit;
+		this.fields = fields;
+	}
+
+	// Throws IllegalArgumentException for a negative range or a field FaveItems don't have
+	public static ListSlice of(final int offset, final int limit, final String fields) {
+		if (offset < 0 || limit < 0)
+			throw new IllegalArgumentException("The offset and limit can't be negative");
+
+		Set<String> selected = null;
+		if (fields != null && !fields.trim().isEmpty()) {
+			selected = new TreeSet<String>();
+			for (final String field : fields.split(",")) {
+				if (!FIELDS.contains(field.trim()))
+					throw new IllegalArgumentException("Unknown field " + field.trim() + ", must be one of " + FIELDS);
+				selected.add(field.trim());
+			}
+			if (selected.size() == FIELDS.size()) {
+				selected = null;
+			}
+		}
+
+		if (offset == 0 && limit == 0 && selected == null)
+			return WHOLE;
+
+		return new ListSlice(offset, limit, selected);
+	}
+
+	public boolean isWhole() {
+		return this == WHOLE;
+	}
+
+	public List<FaveItem> apply(final List<FaveItem> faveItems) {
+		final int from = Math.min(offset, faveItems.size());
+		final int to = limit == 0 ? faveItems.size() : Math.min(from + limit, faveItems.size());
+		return faveItems.subList(from, to);
+	}
+
+	// The same for every request for the same slice
+	public String getKey() {
+		return offset + "-" + limit + "-" + (fields == null ? "" : fields.toString());
+	}
+
+	/* Getters */
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public Set<String> getFields() {
+		return fields;
+	}
+}
@@ -0,0 +1,190 @@
+package com.fave100.server.domain.favelist;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fave100.server.ranking.ScoreAccumulator;
+import com.fave100.server.ranking.SongDictionary;
+import com.googlecode.objectify.VoidWork;
+
+/**
+ * Keeps a running score total per song for every hashtag, so that master lists
+ * can be refreshed without re-reading every FaveList of the hashtag.
+ *
+ * User list mutations report the list before and after the change, and only
+ * the songs whose rank score actually changed are written. Each row's delta is
+ * applied in a transaction, so concurrent changes to the same song all count.
+ * Ledger writes are not transactional with the FaveList save though, so any drift
+ * from a failed request is repaired by a reconciliation build (see {@link #reconcile}).
+ */
+public class ScoreLedger {
+
+	public static final String SEPERATOR_TOKEN = ":";
+	// Scores are sums of doubles, anything below this is considered zero
+	public static final double EPSILON = 0.000001;
+	// Cross-group transactions can span at most 25 entity groups
+	static final int MAX_ROWS_PER_TRANSACTION = 25;
+
+	public static String createId(final String hashtagId, final String songID) {
+		return hashtagId.toLowerCase() + SEPERATOR_TOKEN + songID;
+	}
+
+	public static void recordChange(final FaveList faveList, final List<FaveItem> before) {
+		recordChange(faveList.getHashtagId(), faveList.isCriticList(), before, faveList.getList());
+	}
+
+	public static void recordChange(final String hashtagId, final boolean critic, final List<FaveItem> before, final List<FaveItem> after) {
+		final Map<String, Double> deltas = new LinkedHashMap<>();
+		final Map<String, FaveItem> faveItems = new HashMap<>();
+
+		int position = 1;
+		for (final FaveItem faveItem : before) {
+			deltas.put(faveItem.getSongID(), -FaveListDao.calculateItemScore(position));
+			faveItems.put(faveItem.getSongID(), faveItem);
+			position++;
+		}
+
+		position = 1;
+		for (final FaveItem faveItem : after) {
+			final Double oldScore = deltas.get(faveItem.getSongID());
+			final double score = FaveListDao.calculateItemScore(position);
+			deltas.put(faveItem.getSongID(), oldScore != null ? oldScore + score : score);
+			faveItems.put(faveItem.getSongID(), faveItem);
+			position++;
+		}
+
+		final Map<String, Double> changed = new HashMap<>();
+		for (final Map.Entry<String, Double> delta : deltas.entrySet()) {
+			if (Math.abs(delta.getValue()) >= EPSILON) {
+				changed.put(delta.getKey(), delta.getValue());
+			}
+		}
+
+		applyDeltas(hashtagId.toLowerCase(), critic, changed, faveItems);
+	}
+
+	// Moves the whole list from one side of the ledger to the other, when a list becomes (or stops being) a critic list
+	public static void recordCriticChange(final FaveList faveList, final boolean wasCritic) {
+		if (wasCritic == faveList.isCriticList())
+			return;
+
+		final List<FaveItem> empty = Collections.emptyList();
+		recordChange(faveList.getHashtagId(), wasCritic, faveList.getList(), empty);
+		recordChange(faveList.getHashtagId(), !wasCritic, empty, faveList.getList());
+	}
+
+	private static void applyDeltas(final String hashtagId, final boolean critic, final Map<String, Double> deltas, final Map<String, FaveItem> faveItems) {
+		final List<String> songIDs = new ArrayList<>(deltas.keySet());
+		// Every row is its own entity group, so concurrent changes to the same song are serialized by the transactions
+		for (int i = 0; i < songIDs.size(); i += MAX_ROWS_PER_TRANSACTION) {
+			final List<String> batch = songIDs.subList(i, Math.min(i + MAX_ROWS_PER_TRANSACTION, songIDs.size()));
+			ofy().transact(new VoidWork() {
+				@Override
+				public void vrun() {
+					applyDeltas(hashtagId, critic, batch, deltas, faveItems);
+				}
+			});
+		}
+	}
+
+	// Read, change and write the rows of the songs, in the transaction
+	private static void applyDeltas(final String hashtagId, final boolean critic, final List<String> songIDs, final Map<String, Double> deltas,
+			final Map<String, FaveItem> faveItems) {
+
+		final List<String> ids = new ArrayList<>();
+		for (final String songID : songIDs) {
+			ids.add(createId(hashtagId, songID));
+		}
+		final Map<String, HashtagScore> existing = ofy().load().type(HashtagScore.class).ids(ids);
+
+		final List<HashtagScore> toSave = new ArrayList<>();
+		final List<HashtagScore> toDelete = new ArrayList<>();
+		for (final String songID : songIDs) {
+			HashtagScore hashtagScore = existing.get(createId(hashtagId, songID));
+			if (hashtagScore == null) {
+				hashtagScore = new HashtagScore(hashtagId, faveItems.get(songID));
+			}
+			hashtagScore.addScore(deltas.get(songID), critic);
+
+			if (hashtagScore.isEmpty()) {
+				toDelete.add(hashtagScore);
+			}
+			else {
+				toSave.add(hashtagScore);
+			}
+		}
+
+		ofy().save().entities(toSave).now();
+		ofy().delete().entities(toDelete).now();
+	}
+
+	// The highest scored songs of the hashtag, ready to be used as a master list
+	public static List<FaveItem> getTopItems(final String hashtagId, final boolean critic, final int limit) {
+		final String property = critic ? "criticScore" : "userScore";
+		final List<HashtagScore> scores = ofy().load().type(HashtagScore.class)
+				.filter("hashtagId", hashtagId.toLowerCase())
+				.filter(property + " >", EPSILON)
+				.order("-" + property)
+				.limit(limit)
+				.list();
+
+		final List<FaveItem> items = new ArrayList<>();
+		for (final HashtagScore score : scores) {
+			items.add(score.toFaveItem());
+		}
+		return items;
+	}
+
+	/**
+	 * Compares the ledger of a hashtag against scores freshly calculated from all of its FaveLists,
+	 * and overwrites any ledger rows that have drifted.
+	 *
+	 * @return the number of ledger rows that had to be corrected
+	 */
+	public static int reconcile(final String hashtagId, final SongDictionary songs, final ScoreAccumulator users, final ScoreAccumulator critics) {
+		final String id = hashtagId.toLowerCase();
+		final Map<String, HashtagScore> expected = new HashMap<>();
+		addExpected(id, songs, users, false, expected);
+		addExpected(id, songs, critics, true, expected);
+
+		final List<HashtagScore> toSave = new ArrayList<>();
+		final List<HashtagScore> toDelete = new ArrayList<>();
+		for (final HashtagScore actual : ofy().load().type(HashtagScore.class).filter("hashtagId", id)) {
+			final HashtagScore correct = expected.remove(actual.getId());
+			if (correct == null) {
+				toDelete.add(actual);
+			}
+			else if (Math.abs(correct.getUserScore() - actual.getUserScore()) >= EPSILON
+					|| Math.abs(correct.getCriticScore() - actual.getCriticScore()) >= EPSILON) {
+				toSave.add(correct);
+			}
+		}
+		// Anything left over was missing from the ledger entirely
+		toSave.addAll(expected.values());
+
+		ofy().save().entities(toSave).now();
+		ofy().delete().entities(toDelete).now();
+
+		return toSave.size() + toDelete.size();
+	}
+
+	private static void addExpected(final String hashtagId, final SongDictionary songs, final ScoreAccumulator scores, final boolean critic,
+			final Map<String, HashtagScore> expected) {
+		for (int song = scores.nextScored(0); song >= 0; song = scores.nextScored(song + 1)) {
+			final String id = createId(hashtagId, songs.getSongID(song));
+			HashtagScore hashtagScore = expected.get(id);
+			if (hashtagScore == null) {
+				hashtagScore = new HashtagScore(hashtagId, songs.getFaveItem(song));
+				expected.put(id, hashtagScore);
+			}
+			hashtagScore.setScore(scores.get(song), critic);
+		}
+	}
+
+}
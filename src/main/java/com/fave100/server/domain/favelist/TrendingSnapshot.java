@@ -0,0 +1,79 @@
+package com.fave100.server.domain.favelist;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.fave100.server.ranking.TrendingSketch;
+import com.fave100.shared.Constants;
+import com.googlecode.objectify.annotation.Cache;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Serialize;
+
+/**
+ * The trending sketch of one hashtag, or of every hashtag under {@link Constants#TRENDING_LIST_NAME},
+ * as of the last picks folded into it, along with its top songs at that point.
+ *
+ * The top songs are kept ready, as they only change when picks are folded in, so reading them is a single get.
+ */
+@Entity
+@Cache
+public class TrendingSnapshot {
+
+	// Sized so that a zipped sketch stays well under the entity size limit
+	public static final int GLOBAL_WIDTH = 4096;
+	public static final int GLOBAL_CAPACITY = 1000;
+	public static final int HASHTAG_WIDTH = 512;
+	public static final int HASHTAG_CAPACITY = 200;
+	public static final int DEPTH = 4;
+
+	@Id private String id;
+	private Date updated;
+	@Serialize(zip = true) private TrendingSketch sketch;
+	private List<FaveItem> top = new ArrayList<FaveItem>();
+
+	@SuppressWarnings("unused")
+	private TrendingSnapshot() {
+	}
+
+	public TrendingSnapshot(final String hashtagId, final Date now) {
+		this.id = hashtagId.toLowerCase();
+		this.updated = now;
+		this.sketch = isGlobal() ? new TrendingSketch(GLOBAL_WIDTH, DEPTH, GLOBAL_CAPACITY, now.getTime())
+				: new TrendingSketch(HASHTAG_WIDTH, DEPTH, HASHTAG_CAPACITY, now.getTime());
+	}
+
+	public boolean isGlobal() {
+		return Constants.TRENDING_LIST_NAME.equals(id);
+	}
+
+	// Fold in a pick, the top songs are refreshed once all picks of a batch have been added
+	public void add(final FaveItem pick) {
+		sketch.add(pick);
+	}
+
+	public void refreshTop(final Date now) {
+		top = sketch.top(Constants.MAX_ITEMS_PER_LIST);
+		updated = now;
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public Date getUpdated() {
+		return updated;
+	}
+
+	public TrendingSketch getSketch() {
+		return sketch;
+	}
+
+	// Most picked first
+	public List<FaveItem> getTop() {
+		return top;
+	}
+}
@@ -0,0 +1,42 @@
+package com.fave100.server.filters;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import com.fave100.server.cache.LocalCaches;
+
+/**
+ * Publishes the changes to cached values saved by a request again once its writes are done.
+ *
+ * Entities publish their changes as they are saved, before the write has been committed, so another
+ * instance could load the old value under the new stamp in between. Publishing again afterwards
+ * makes it reload. Has to come before the ObjectifyFilter, which completes any writes left pending.
+ */
+public class CacheChangeFilter implements Filter {
+
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain filterChain) throws IOException, ServletException {
+		try {
+			filterChain.doFilter(request, response);
+		}
+		finally {
+			LocalCaches.publishChanges();
+		}
+	}
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+		// nothing todo
+	}
+
+	@Override
+	public void destroy() {
+		// nothing todo
+	}
+}
@@ -0,0 +1,363 @@
+package com.fave100.server.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Compresses responses with gzip, or deflate for clients that don't take gzip, once they are
+ * big enough for it to pay off. Responses an endpoint has already compressed, such as the
+ * rendered master lists, go out as they are, so the same bytes are never compressed twice.
+ *
+ * Counts the bytes each endpoint writes and the bytes sent for them in {@link ResponseStats}.
+ */
+public class CompressionFilter implements Filter {
+
+	public static final String GZIP = "gzip";
+	public static final String DEFLATE = "deflate";
+
+	// Smaller responses fit in a packet or two anyway, and can come out bigger once compressed
+	private int threshold = 1024;
+
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain filterChain) throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+			filterChain.doFilter(request, response);
+			return;
+		}
+
+		final String encoding = negotiate(((HttpServletRequest)request).getHeader("Accept-Encoding"));
+		final CompressingResponse compressing = new CompressingResponse((HttpServletResponse)response, encoding, threshold);
+		try {
+			filterChain.doFilter(request, compressing);
+			compressing.finish();
+		}
+		finally {
+			ResponseStats.record(compressing.bytesIn, compressing.bytesOut, compressing.compressed, compressing.precompressed);
+		}
+	}
+
+	// The encoding to compress with, gzip if the client takes it, or null if it takes neither.
+	// Endpoints that compress their own responses use it too, so that every response agrees on the encoding
+	public static String negotiate(final String acceptEncoding) {
+		if (acceptEncoding == null)
+			return null;
+
+		boolean gzip = false;
+		boolean deflate = false;
+		boolean any = false;
+		for (final String accepted : acceptEncoding.split(",")) {
+			final String[] parts = accepted.trim().split(";");
+			final String coding = parts[0].trim().toLowerCase();
+			// A quality of 0 means the client won't take it
+			boolean refused = false;
+			for (int i = 1; i < parts.length; i++) {
+				final String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						refused = Float.parseFloat(param.substring(2)) <= 0;
+					}
+					catch (final NumberFormatException e) {
+						refused = true;
+					}
+				}
+			}
+			if (refused)
+				continue;
+
+			if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+				gzip = true;
+			}
+			else if (coding.equals(DEFLATE)) {
+				deflate = true;
+			}
+			else if (coding.equals("*")) {
+				any = true;
+			}
+		}
+
+		if (gzip || (any && !deflate))
+			return GZIP;
+		return deflate ? DEFLATE : null;
+	}
+
+	// Holds back the body until it is big enough to compress, and the headers that depend on whether it is
+	private static class CompressingResponse extends HttpServletResponseWrapper {
+		private final String encoding;
+		private final int threshold;
+
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		// Null while the body is being held back
+		private OutputStream out;
+		private ServletOutputStream stream;
+		private PrintWriter writer;
+
+		private int contentLength = -1;
+		private String etag;
+		private String vary;
+		// Set once the container has written the body itself
+		private boolean sent;
+
+		long bytesIn;
+		long bytesOut;
+		boolean compressed;
+		boolean precompressed;
+
+		CompressingResponse(final HttpServletResponse response, final String encoding, final int threshold) {
+			super(response);
+			this.encoding = encoding;
+			this.threshold = threshold;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (stream == null) {
+				stream = new ServletOutputStream() {
+					@Override
+					public void write(final int b) throws IOException {
+						write(new byte[] {(byte)b}, 0, 1);
+					}
+
+					@Override
+					public void write(final byte[] b, final int off, final int len) throws IOException {
+						bytesIn += len;
+						if (out == null) {
+							if (encoding != null && !precompressed && buffer.size() + len < threshold) {
+								buffer.write(b, off, len);
+								return;
+							}
+							start(encoding != null && !precompressed);
+						}
+						out.write(b, off, len);
+					}
+
+					@Override
+					public void flush() throws IOException {
+						// Flushing a held back body would commit it before it is known whether to compress it
+						if (out != null) {
+							out.flush();
+						}
+					}
+				};
+			}
+			return stream;
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+			}
+			return writer;
+		}
+
+		// Send the headers held back, and the body so far, compressed or not
+		private void start(final boolean compress) throws IOException {
+			final OutputStream counted = new CountingOutputStream(super.getOutputStream());
+			if (compress) {
+				compressed = true;
+				super.setHeader("Content-Encoding", encoding);
+				super.setHeader("Vary", vary == null ? "Accept-Encoding"
+						: vary.toLowerCase().contains("accept-encoding") ? vary : vary + ", Accept-Encoding");
+				if (etag != null) {
+					super.setHeader("ETag", tagFor(etag, encoding));
+				}
+				out = GZIP.equals(encoding) ? new GZIPOutputStream(counted) : new DeflaterOutputStream(counted);
+			}
+			else {
+				if (contentLength >= 0) {
+					super.setContentLength(contentLength);
+				}
+				if (vary != null) {
+					super.setHeader("Vary", vary);
+				}
+				if (etag != null) {
+					super.setHeader("ETag", etag);
+				}
+				out = counted;
+			}
+			buffer.writeTo(out);
+			buffer.reset();
+		}
+
+		// Send whatever is still held back, once the endpoint is done
+		void finish() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (sent && out == null)
+				return;
+			if (out == null) {
+				start(false);
+			}
+			if (out instanceof DeflaterOutputStream) {
+				((DeflaterOutputStream)out).finish();
+			}
+			out.flush();
+		}
+
+		@Override
+		public void setContentLength(final int len) {
+			if (out == null) {
+				contentLength = len;
+			}
+			else if (!compressed) {
+				super.setContentLength(len);
+			}
+		}
+
+		@Override
+		public void setHeader(final String name, final String value) {
+			if (!holdHeader(name, value)) {
+				super.setHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addHeader(final String name, final String value) {
+			if (!holdHeader(name, value)) {
+				super.addHeader(name, value);
+			}
+		}
+
+		@Override
+		public void setIntHeader(final String name, final int value) {
+			if (!holdHeader(name, String.valueOf(value))) {
+				super.setIntHeader(name, value);
+			}
+		}
+
+		@Override
+		public void addIntHeader(final String name, final int value) {
+			if (!holdHeader(name, String.valueOf(value))) {
+				super.addIntHeader(name, value);
+			}
+		}
+
+		// Whether the header is held back until it is known if the body is compressed
+		private boolean holdHeader(final String name, final String value) {
+			// Once compressing, the length of the body the endpoint wrote no longer holds
+			if (out != null)
+				return compressed && "Content-Length".equalsIgnoreCase(name);
+
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				contentLength = Integer.parseInt(value);
+				return true;
+			}
+			if ("ETag".equalsIgnoreCase(name)) {
+				etag = value;
+				return true;
+			}
+			if ("Vary".equalsIgnoreCase(name)) {
+				vary = vary == null ? value : vary + ", " + value;
+				return true;
+			}
+			if ("Content-Encoding".equalsIgnoreCase(name)) {
+				precompressed = true;
+			}
+			return false;
+		}
+
+		@Override
+		public void sendError(final int sc, final String msg) throws IOException {
+			sent = true;
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendError(final int sc) throws IOException {
+			sent = true;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendRedirect(final String location) throws IOException {
+			sent = true;
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (out != null) {
+				out.flush();
+				super.flushBuffer();
+			}
+		}
+
+		@Override
+		public void resetBuffer() {
+			super.resetBuffer();
+			buffer.reset();
+		}
+
+		@Override
+		public void reset() {
+			super.reset();
+			buffer.reset();
+			contentLength = -1;
+			etag = null;
+			vary = null;
+			precompressed = false;
+		}
+
+		private class CountingOutputStream extends OutputStream {
+			private final OutputStream wrapped;
+
+			CountingOutputStream(final OutputStream wrapped) {
+				this.wrapped = wrapped;
+			}
+
+			@Override
+			public void write(final int b) throws IOException {
+				wrapped.write(b);
+				bytesOut++;
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				wrapped.write(b, off, len);
+				bytesOut += len;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				wrapped.flush();
+			}
+		}
+	}
+
+	// Strong tags have to differ between encodings of the same body
+	public static String tagFor(final String etag, final String encoding) {
+		if (etag.startsWith("W/"))
+			return etag;
+		return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-" + encoding + "\"" : etag + "-" + encoding;
+	}
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+		final String thresholdParam = filterConfig.getInitParameter("threshold");
+		if (thresholdParam != null) {
+			threshold = Integer.parseInt(thresholdParam);
+		}
+	}
+
+	@Override
+	public void destroy() {
+		// nothing todo
+	}
+}
@@ -0,0 +1,119 @@
+package com.fave100.server.filters;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bytes each endpoint of the API wrote and the bytes sent for them, on the instance that
+ * served them, as counted by {@link CompressionFilter}.
+ */
+public class ResponseStats {
+
+	// Requests that didn't reach an endpoint, such as those for a path the API doesn't have
+	static final String UNMATCHED = "unmatched";
+
+	private static final ConcurrentHashMap<String, ResponseStats> ENDPOINTS = new ConcurrentHashMap<String, ResponseStats>();
+	// The endpoint of the request being served on this thread
+	private static final ThreadLocal<String> ENDPOINT = new ThreadLocal<String>();
+
+	private final String endpoint;
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong compressed = new AtomicLong();
+	private final AtomicLong precompressed = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	private ResponseStats(final String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	// Called once the request has been matched to its endpoint
+	public static void nameEndpoint(final String endpoint) {
+		ENDPOINT.set(endpoint);
+	}
+
+	// Count a response against the endpoint named for it, and forget the name
+	static void record(final long in, final long out, final boolean wasCompressed, final boolean wasPrecompressed) {
+		String endpoint = ENDPOINT.get();
+		ENDPOINT.remove();
+		if (endpoint == null) {
+			endpoint = UNMATCHED;
+		}
+
+		ResponseStats stats = ENDPOINTS.get(endpoint);
+		if (stats == null) {
+			final ResponseStats added = new ResponseStats(endpoint);
+			stats = ENDPOINTS.putIfAbsent(endpoint, added);
+			if (stats == null) {
+				stats = added;
+			}
+		}
+
+		stats.responses.incrementAndGet();
+		if (wasCompressed) {
+			stats.compressed.incrementAndGet();
+		}
+		if (wasPrecompressed) {
+			stats.precompressed.incrementAndGet();
+		}
+		stats.bytesIn.addAndGet(in);
+		stats.bytesOut.addAndGet(out);
+	}
+
+	// Null if the endpoint hasn't served anything yet
+	public static ResponseStats get(final String endpoint) {
+		return ENDPOINTS.get(endpoint);
+	}
+
+	public static Collection<ResponseStats> all() {
+		final List<ResponseStats> all = new ArrayList<ResponseStats>(ENDPOINTS.values());
+		Collections.sort(all, new Comparator<ResponseStats>() {
+			@Override
+			public int compare(final ResponseStats a, final ResponseStats b) {
+				return a.endpoint.compareTo(b.endpoint);
+			}
+		});
+		return all;
+	}
+
+	/* Getters */
+
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	public long getResponses() {
+		return responses.get();
+	}
+
+	// Responses compressed by the filter
+	public long getCompressed() {
+		return compressed.get();
+	}
+
+	// Responses the endpoint had already compressed, which went out as they were
+	public long getPrecompressed() {
+		return precompressed.get();
+	}
+
+	// The bytes the endpoint wrote
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	// The bytes sent for them
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	@Override
+	public String toString() {
+		return endpoint + ": " + getResponses() + " responses, " + getCompressed() + " compressed, " + getPrecompressed() + " precompressed, "
+				+ getBytesIn() + " bytes in, " + getBytesOut() + " bytes out";
+	}
+}
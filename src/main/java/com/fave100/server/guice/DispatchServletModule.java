@@ -6,17 +6,24 @@ import java.util.Map;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
 import com.fave100.server.api.AuthApi;
 import com.fave100.server.api.CacheFilterFactory;
+import com.fave100.server.api.EndpointFilterFactory;
 import com.fave100.server.api.FaveListsApi;
 import com.fave100.server.api.SearchApi;
 import com.fave100.server.api.SongApi;
 import com.fave100.server.api.TrendingApi;
 import com.fave100.server.api.UserApi;
 import com.fave100.server.api.UsersApi;
+import com.fave100.server.filters.CacheChangeFilter;
+import com.fave100.server.filters.CompressionFilter;
 import com.fave100.server.filters.EncodingFilter;
+import com.fave100.server.servlets.CacheStatsServlet;
 import com.fave100.server.servlets.HashtagBuilderServlet;
 import com.fave100.server.servlets.HashtagEnqueuerServlet;
 import com.fave100.server.servlets.ListRedirectServlet;
 import com.fave100.server.servlets.PasswordCleanupServlet;
+import com.fave100.server.servlets.ShardedHashtagBuilderServlet;
+import com.fave100.server.servlets.SnapshotExportServlet;
+import com.fave100.server.servlets.TrendingSketchServlet;
 import com.fave100.server.servlets.UserRedirectServlet;
 import com.fave100.shared.Constants;
 import com.google.apphosting.utils.remoteapi.RemoteApiServlet;
@@ -41,7 +48,7 @@ public class DispatchServletModule extends ServletModule {
 		bind(TrendingApi.class);
 
 		Map<String, String> params = new HashMap<>();
-		params.put(ResourceFilters.class.getName(), CacheFilterFactory.class.getName());
+		params.put(ResourceFilters.class.getName(), EndpointFilterFactory.class.getName() + "," + CacheFilterFactory.class.getName());
 		serve(Constants.API_PATH + "/*").with(Fave100Container.class, params);
 
 		bind(ListRedirectServlet.class).in(Singleton.class);
@@ -62,10 +69,29 @@ public class DispatchServletModule extends ServletModule {
 		bind(HashtagBuilderServlet.class).in(Singleton.class);
 		serve(HashtagBuilderServlet.HASHTAG_BUILDER_URL).with(HashtagBuilderServlet.class);
 
+		bind(ShardedHashtagBuilderServlet.class).in(Singleton.class);
+		serve(ShardedHashtagBuilderServlet.SHARDED_BUILDER_URL).with(ShardedHashtagBuilderServlet.class);
+
+		bind(TrendingSketchServlet.class).in(Singleton.class);
+		serve(TrendingSketchServlet.TRENDING_SKETCH_URL).with(TrendingSketchServlet.class);
+
+		bind(SnapshotExportServlet.class).in(Singleton.class);
+		serve(SnapshotExportServlet.SNAPSHOT_EXPORT_URL).with(SnapshotExportServlet.class);
+
+		bind(CacheStatsServlet.class).in(Singleton.class);
+		serve(CacheStatsServlet.CACHE_STATS_URL).with(CacheStatsServlet.class);
+
+		// Before the ObjectifyFilter, so that the writes it completes are done before the changes are published again
+		bind(CacheChangeFilter.class).in(Singleton.class);
+		filter("/*").through(CacheChangeFilter.class);
+
 		bind(ObjectifyFilter.class).in(Singleton.class);
 		filter("/*").through(ObjectifyFilter.class);
 
 		bind(EncodingFilter.class).in(Singleton.class);
 		filter("/*").through(EncodingFilter.class);
+
+		bind(CompressionFilter.class).in(Singleton.class);
+		filter(Constants.API_PATH + "/*").through(CompressionFilter.class);
 	}
 }
@@ -4,6 +4,8 @@ import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import com.fave100.server.domain.APIKey;
 import com.fave100.server.domain.FeaturedLists;
+import com.fave100.server.domain.SnapshotChunk;
+import com.fave100.server.domain.SnapshotExport;
 import com.fave100.server.domain.Song;
 import com.fave100.server.domain.Whyline;
 import com.fave100.server.domain.appuser.AppUser;
@@ -13,9 +15,16 @@ import com.fave100.server.domain.appuser.Following;
 import com.fave100.server.domain.appuser.GoogleID;
 import com.fave100.server.domain.appuser.PwdResetToken;
 import com.fave100.server.domain.appuser.TwitterID;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.domain.favelist.Hashtag;
-import com.fave100.server.domain.favelist.TrendingList;
+import com.fave100.server.domain.favelist.HashtagBuild;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.domain.favelist.HashtagBuildShard;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.server.domain.favelist.HashtagScore;
+import com.fave100.server.domain.favelist.TrendingSnapshot;
 import com.google.inject.servlet.ServletModule;
 import com.googlecode.objectify.ObjectifyService;
 
@@ -36,7 +45,16 @@ public class ServerModule extends ServletModule {
 		ObjectifyService.register(PwdResetToken.class);
 		ObjectifyService.register(Hashtag.class);
 		ObjectifyService.register(FeaturedLists.class);
-		ObjectifyService.register(TrendingList.class);
+		ObjectifyService.register(HashtagScore.class);
+		ObjectifyService.register(HashtagBuild.class);
+		ObjectifyService.register(HashtagBuildShard.class);
+		ObjectifyService.register(HashtagBuildCheckpoint.class);
+		ObjectifyService.register(FaveListSummary.class);
+		ObjectifyService.register(DirtyHashtag.class);
+		ObjectifyService.register(HashtagSchedule.class);
+		ObjectifyService.register(TrendingSnapshot.class);
+		ObjectifyService.register(SnapshotExport.class);
+		ObjectifyService.register(SnapshotChunk.class);
 
 		final APIKey facebookApiKey = ofy().load().type(APIKey.class).id("facebook").now();
 		AppUser.setFacebookApiKey(facebookApiKey.getKey().trim());
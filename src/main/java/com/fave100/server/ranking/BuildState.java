@@ -0,0 +1,52 @@
+package com.fave100.server.ranking;
+
+import java.util.List;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * Everything a {@link MasterListBuild} has built so far, to be saved and carried on from later
+ * or merged into another build.
+ *
+ * Songs are given as one representative FaveItem each, with their user and critic scores at the
+ * same index, 0 where the song wasn't picked by that kind of list.
+ */
+public class BuildState {
+
+	private final List<FaveItem> faveItems;
+	private final double[] userScores;
+	private final double[] criticScores;
+	private final List<FaveItem> newest;
+	private final int listCount;
+
+	public BuildState(final List<FaveItem> faveItems, final double[] userScores, final double[] criticScores, final List<FaveItem> newest, final int listCount) {
+		this.faveItems = faveItems;
+		this.userScores = userScores;
+		this.criticScores = criticScores;
+		this.newest = newest;
+		this.listCount = listCount;
+	}
+
+	/* Getters */
+
+	public List<FaveItem> getFaveItems() {
+		return faveItems;
+	}
+
+	public double[] getUserScores() {
+		return userScores;
+	}
+
+	public double[] getCriticScores() {
+		return criticScores;
+	}
+
+	// Oldest first
+	public List<FaveItem> getNewest() {
+		return newest;
+	}
+
+	public int getListCount() {
+		return listCount;
+	}
+}
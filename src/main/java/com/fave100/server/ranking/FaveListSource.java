@@ -0,0 +1,17 @@
+package com.fave100.server.ranking;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where a {@link MasterListEngine} reads the FaveLists of each hashtag from.
+ * Implementations must allow different hashtags to be read from different threads.
+ */
+public interface FaveListSource {
+
+	// Every hashtag that has master lists to build
+	List<String> getHashtags() throws IOException;
+
+	// Add every FaveList of the hashtag to the build
+	void addLists(String hashtag, MasterListBuild build) throws IOException;
+}
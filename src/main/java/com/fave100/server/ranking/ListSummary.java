@@ -0,0 +1,74 @@
+package com.fave100.server.ranking;
+
+import java.util.Date;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * The parts of a FaveList that a {@link MasterListBuild} needs: whether it is a critic list, and its
+ * ranked songs as a few zipped arrays with the position implied by the index.
+ *
+ * Read from the datastore's FaveList summaries by the scans of the servlets, or from a snapshot.
+ */
+public class ListSummary {
+
+	private final String id;
+	private final String hashtagId;
+	private final boolean critic;
+	private final String[] songIDs;
+	private final String[] songs;
+	private final String[] artists;
+	private final long[] datesPicked;
+
+	public ListSummary(final String id, final String hashtagId, final boolean critic, final String[] songIDs, final String[] songs, final String[] artists,
+			final long[] datesPicked) {
+		this.id = id;
+		this.hashtagId = hashtagId;
+		this.critic = critic;
+		this.songIDs = songIDs;
+		this.songs = songs;
+		this.artists = artists;
+		this.datesPicked = datesPicked;
+	}
+
+	// The item at the given index (position - 1), without a whyline
+	public FaveItem getFaveItem(final int index) {
+		final FaveItem faveItem = new FaveItem(songs[index], artists[index], songIDs[index]);
+		faveItem.setDatePicked(new Date(datesPicked[index]));
+		return faveItem;
+	}
+
+	/* Getters */
+
+	public String getId() {
+		return id;
+	}
+
+	public String getHashtagId() {
+		return hashtagId;
+	}
+
+	public boolean isCritic() {
+		return critic;
+	}
+
+	public int size() {
+		return songIDs.length;
+	}
+
+	public String getSongID(final int index) {
+		return songIDs[index];
+	}
+
+	public String getSong(final int index) {
+		return songs[index];
+	}
+
+	public String getArtist(final int index) {
+		return artists[index];
+	}
+
+	public long getDatePicked(final int index) {
+		return datesPicked[index];
+	}
+}
@@ -0,0 +1,136 @@
+package com.fave100.server.ranking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * The master lists of one hashtag, built up a FaveList at a time.
+ *
+ * Every list is folded straight into the user and critic score totals and the newest 100
+ * picks, then dropped. Nothing is kept per pick, so memory is bounded by the number of
+ * distinct songs rather than the total number of picks.
+ *
+ * The build touches nothing outside itself, not even the datastore entities it is read from
+ * or saved to, so it runs the same inside a task queue request as it does offline against a snapshot.
+ */
+public class MasterListBuild {
+
+	private final SongDictionary songs = new SongDictionary();
+	private final ScoreAccumulator users = new ScoreAccumulator();
+	private final ScoreAccumulator critics = new ScoreAccumulator();
+	private final TopK<FaveItem> newest = new TopK<FaveItem>(100);
+	private int listCount = 0;
+
+	// The score of the song at the given position of a list, 1 being the top
+	public static double calculateItemScore(final int position) {
+		return ((double)(-1 * position) / 11 + ((double)111 / 11));
+	}
+
+	// Add up the total rank for each song in the list
+	public void addList(final ListSummary faveList) {
+		// Build a critics only master list if needed, otherwise just build the user master list
+		final ScoreAccumulator scores = faveList.isCritic() ? critics : users;
+		for (int i = 0; i < faveList.size(); i++) {
+			final int id = songs.intern(faveList.getSongID(i), faveList.getSong(i), faveList.getArtist(i));
+			scores.add(id, calculateItemScore(i + 1));
+
+			final long datePicked = faveList.getDatePicked(i);
+			if (newest.accepts(datePicked)) {
+				newest.offer(faveList.getFaveItem(i), datePicked);
+			}
+		}
+		listCount++;
+	}
+
+	/* State */
+
+	// Everything built so far, to be saved and restored or merged later
+	public BuildState getState() {
+		final List<FaveItem> faveItems = new ArrayList<FaveItem>(songs.size());
+		final double[] userScores = new double[songs.size()];
+		final double[] criticScores = new double[songs.size()];
+		for (int id = 0; id < songs.size(); id++) {
+			faveItems.add(songs.getFaveItem(id));
+			userScores[id] = users.get(id);
+			criticScores[id] = critics.get(id);
+		}
+		return new BuildState(faveItems, userScores, criticScores, getNewest(), listCount);
+	}
+
+	// Carry on from where the saved build stopped, on a fresh build
+	public void restore(final BuildState state) {
+		for (int i = 0; i < state.getFaveItems().size(); i++) {
+			final int id = songs.intern(state.getFaveItems().get(i));
+			if (state.getUserScores()[i] > 0) {
+				users.set(id, state.getUserScores()[i]);
+			}
+			if (state.getCriticScores()[i] > 0) {
+				critics.set(id, state.getCriticScores()[i]);
+			}
+		}
+		for (final FaveItem faveItem : state.getNewest()) {
+			offerNewest(newest, faveItem);
+		}
+		listCount = state.getListCount();
+	}
+
+	// Add the lists of another build of the same hashtag, such as one shard of it
+	public void merge(final BuildState state) {
+		for (int i = 0; i < state.getFaveItems().size(); i++) {
+			final int id = songs.intern(state.getFaveItems().get(i));
+			if (state.getUserScores()[i] > 0) {
+				users.add(id, state.getUserScores()[i]);
+			}
+			if (state.getCriticScores()[i] > 0) {
+				critics.add(id, state.getCriticScores()[i]);
+			}
+		}
+		for (final FaveItem faveItem : state.getNewest()) {
+			offerNewest(newest, faveItem);
+		}
+		listCount += state.getListCount();
+	}
+
+	/* Newest */
+
+	public static void offerNewest(final TopK<FaveItem> newest, final FaveItem faveItem) {
+		newest.offer(faveItem, faveItem.getDatePicked().getTime());
+	}
+
+	// The 100 most recently picked items, oldest first
+	public static List<FaveItem> toNewestList(final TopK<FaveItem> newestPicks) {
+		final List<FaveItem> newest = newestPicks.toList();
+		Collections.reverse(newest);
+		for (final FaveItem faveItem : newest) {
+			faveItem.setWhyline("");
+			faveItem.setWhylineRef(null);
+		}
+		return newest;
+	}
+
+	/* Results */
+
+	public SongDictionary getSongs() {
+		return songs;
+	}
+
+	public ScoreAccumulator getUsers() {
+		return users;
+	}
+
+	public ScoreAccumulator getCritics() {
+		return critics;
+	}
+
+	public int getListCount() {
+		return listCount;
+	}
+
+	// The 100 most recently picked items, oldest first
+	public List<FaveItem> getNewest() {
+		return toNewestList(newest);
+	}
+}
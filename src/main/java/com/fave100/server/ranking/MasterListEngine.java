@@ -0,0 +1,65 @@
+package com.fave100.server.ranking;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds the master lists of hashtags from a {@link FaveListSource} into a {@link MasterListSink},
+ * with no dependency on the datastore, memcache or the servlet API.
+ *
+ * Hashtags are independent of each other, so {@link #buildAll(int)} builds them on as
+ * many threads as it is given.
+ */
+public class MasterListEngine {
+
+	private final FaveListSource source;
+	private final MasterListSink sink;
+
+	public MasterListEngine(final FaveListSource source, final MasterListSink sink) {
+		this.source = source;
+		this.sink = sink;
+	}
+
+	public MasterListBuild build(final String hashtag) throws IOException {
+		final MasterListBuild build = new MasterListBuild();
+		source.addLists(hashtag, build);
+		sink.save(hashtag, build);
+		return build;
+	}
+
+	// Build every hashtag of the source, returns the number of FaveLists read
+	public long buildAll(final int threads) throws IOException, InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Integer>> builds = new ArrayList<Future<Integer>>();
+			for (final String hashtag : source.getHashtags()) {
+				builds.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws IOException {
+						return build(hashtag).getListCount();
+					}
+				}));
+			}
+
+			long listCount = 0;
+			for (final Future<Integer> build : builds) {
+				try {
+					listCount += build.get();
+				}
+				catch (final ExecutionException e) {
+					throw new IOException("Master list build failed", e.getCause());
+				}
+			}
+			return listCount;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+}
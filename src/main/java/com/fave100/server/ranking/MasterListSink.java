@@ -0,0 +1,12 @@
+package com.fave100.server.ranking;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link MasterListEngine} writes each finished build to.
+ * Implementations must allow different hashtags to be saved from different threads.
+ */
+public interface MasterListSink {
+
+	void save(String hashtag, MasterListBuild build) throws IOException;
+}
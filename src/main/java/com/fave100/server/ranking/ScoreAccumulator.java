@@ -0,0 +1,98 @@
+package com.fave100.server.ranking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * Running score totals per song, indexed by the dense ids of a {@link SongDictionary}.
+ *
+ * Totals live in a growable double[], so adding to a score is an array write with
+ * no wrapper or boxing. Several accumulators (e.g. users and critics) can share one
+ * dictionary; each keeps track of which songs it has actually scored.
+ */
+public class ScoreAccumulator {
+
+	private double[] scores;
+	private final BitSet scored = new BitSet();
+
+	public ScoreAccumulator() {
+		this(1024);
+	}
+
+	public ScoreAccumulator(final int expectedSongs) {
+		scores = new double[Math.max(16, expectedSongs)];
+	}
+
+	public void add(final int id, final double score) {
+		ensureCapacity(id);
+		scores[id] += score;
+		scored.set(id);
+	}
+
+	public void set(final int id, final double score) {
+		ensureCapacity(id);
+		scores[id] = score;
+		scored.set(id);
+	}
+
+	public double get(final int id) {
+		return id < scores.length ? scores[id] : 0;
+	}
+
+	public boolean contains(final int id) {
+		return scored.get(id);
+	}
+
+	// The next scored id at or after the given one, or -1 if there are none
+	public int nextScored(final int fromId) {
+		return scored.nextSetBit(fromId);
+	}
+
+	public boolean isEmpty() {
+		return scored.isEmpty();
+	}
+
+	// Forget every score, keeping the allocated array
+	public void clear() {
+		for (int id = nextScored(0); id >= 0; id = nextScored(id + 1)) {
+			scores[id] = 0;
+		}
+		scored.clear();
+	}
+
+	// The flyweight items of the k highest scored songs, highest first
+	public List<FaveItem> top(final int k, final SongDictionary songs) {
+		final List<FaveItem> top = new ArrayList<FaveItem>(k);
+		for (final int id : topIds(k)) {
+			top.add(songs.getFaveItem(id));
+		}
+		return top;
+	}
+
+	// The ids of the k highest scored songs, highest first
+	public int[] topIds(final int k) {
+		final TopK<Integer> top = new TopK<Integer>(k);
+		for (int id = nextScored(0); id >= 0; id = nextScored(id + 1)) {
+			if (top.accepts(scores[id])) {
+				top.offer(id, scores[id]);
+			}
+		}
+
+		final List<Integer> sorted = top.toList();
+		final int[] ids = new int[sorted.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = sorted.get(i);
+		}
+		return ids;
+	}
+
+	private void ensureCapacity(final int id) {
+		if (id >= scores.length) {
+			scores = Arrays.copyOf(scores, Math.max(id + 1, scores.length * 2));
+		}
+	}
+}
@@ -0,0 +1,397 @@
+package com.fave100.server.ranking;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fave100.server.domain.favelist.FaveListDao;
+
+/**
+ * Encodes the chunks of a snapshot: FaveLists, hashtags or users, each chunk deflated on its own.
+ *
+ * A chunk is columnar. Usernames, hashtags and songs are dictionary encoded, so each is stored
+ * once per chunk and referred to by index, numbers are stored as varints and dates as zigzag
+ * encoded deltas from the previous date in the same column, which for lists saved around the same
+ * time are mostly a few bytes. Dictionaries are per chunk, so neither encoding nor decoding a
+ * chunk needs more memory than the chunk itself.
+ *
+ * The chunk kinds are also the record markers of the snapshot file, with {@link #KIND_END} after the last chunk.
+ */
+public class SnapshotCodec {
+
+	public static final byte KIND_END = 0;
+	public static final byte KIND_FAVELISTS = 1;
+	public static final byte KIND_HASHTAGS = 2;
+	public static final byte KIND_USERS = 3;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* FaveLists */
+
+	// FaveList ids must be username:hashtag, as the username is stored apart from the hashtag
+	public static byte[] encodeFaveLists(final List<ListSummary> faveLists) {
+		final Dictionary users = new Dictionary();
+		final Dictionary hashtags = new Dictionary();
+		final Dictionary songIDs = new Dictionary();
+		final List<String> songs = new ArrayList<String>();
+		final List<String> artists = new ArrayList<String>();
+		final Columns columns = new Columns();
+
+		for (final ListSummary faveList : faveLists) {
+			final String suffix = FaveListDao.SEPERATOR_TOKEN + faveList.getHashtagId();
+			if (!faveList.getId().endsWith(suffix))
+				throw new IllegalArgumentException("Not a username:hashtag FaveList id: " + faveList.getId());
+
+			columns.userIndexes.writeVarint(users.intern(faveList.getId().substring(0, faveList.getId().length() - suffix.length())));
+			columns.hashtagIndexes.writeVarint(hashtags.intern(faveList.getHashtagId()));
+			columns.critics.writeVarint(faveList.isCritic() ? 1 : 0);
+			columns.sizes.writeVarint(faveList.size());
+			for (int i = 0; i < faveList.size(); i++) {
+				final int songIndex = songIDs.intern(faveList.getSongID(i));
+				if (songIndex == songs.size()) {
+					songs.add(faveList.getSong(i));
+					artists.add(faveList.getArtist(i));
+				}
+				columns.songIndexes.writeVarint(songIndex);
+				columns.datesPicked.writeDate(faveList.getDatePicked(i));
+			}
+		}
+
+		final Column chunk = new Column();
+		chunk.writeVarint(faveLists.size());
+		users.writeTo(chunk);
+		hashtags.writeTo(chunk);
+		songIDs.writeTo(chunk);
+		for (int i = 0; i < songs.size(); i++) {
+			chunk.writeString(songs.get(i));
+		}
+		for (int i = 0; i < artists.size(); i++) {
+			chunk.writeString(artists.get(i));
+		}
+		columns.writeTo(chunk);
+		return deflate(chunk);
+	}
+
+	public static List<ListSummary> decodeFaveLists(final byte[] deflated) throws IOException {
+		final ByteBuffer in = inflate(deflated);
+		try {
+			final int listCount = readVarint(in);
+			final String[] users = readStrings(in, readVarint(in));
+			final String[] hashtags = readStrings(in, readVarint(in));
+			final int songCount = readVarint(in);
+			final String[] songIDs = readStrings(in, songCount);
+			final String[] songs = readStrings(in, songCount);
+			final String[] artists = readStrings(in, songCount);
+
+			final ByteBuffer userIndexes = readColumn(in);
+			final ByteBuffer hashtagIndexes = readColumn(in);
+			final ByteBuffer critics = readColumn(in);
+			final ByteBuffer sizes = readColumn(in);
+			final ByteBuffer songIndexes = readColumn(in);
+			final ByteBuffer datesPicked = readColumn(in);
+
+			final List<ListSummary> faveLists = new ArrayList<ListSummary>(listCount);
+			long lastDate = 0;
+			for (int list = 0; list < listCount; list++) {
+				final String hashtag = hashtags[readVarint(hashtagIndexes)];
+				final String id = users[readVarint(userIndexes)] + FaveListDao.SEPERATOR_TOKEN + hashtag;
+				final boolean critic = readVarint(critics) == 1;
+				final int size = readVarint(sizes);
+				final String[] listSongIDs = new String[size];
+				final String[] listSongs = new String[size];
+				final String[] listArtists = new String[size];
+				final long[] listDates = new long[size];
+				for (int i = 0; i < size; i++) {
+					final int song = readVarint(songIndexes);
+					listSongIDs[i] = songIDs[song];
+					listSongs[i] = songs[song];
+					listArtists[i] = artists[song];
+					lastDate += readZigzag(datesPicked);
+					listDates[i] = lastDate;
+				}
+				faveLists.add(new ListSummary(id, hashtag, critic, listSongIDs, listSongs, listArtists, listDates));
+			}
+			return faveLists;
+		}
+		catch (final BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt FaveList chunk", e);
+		}
+	}
+
+	/* Hashtags */
+
+	public static class HashtagRow {
+		public final String id;
+		public final String createdBy;
+		public final long dateCreated;
+		public final double zscore;
+
+		public HashtagRow(final String id, final String createdBy, final long dateCreated, final double zscore) {
+			this.id = id;
+			this.createdBy = createdBy;
+			this.dateCreated = dateCreated;
+			this.zscore = zscore;
+		}
+	}
+
+	public static byte[] encodeHashtags(final List<HashtagRow> hashtags) {
+		final Dictionary users = new Dictionary();
+		final Column ids = new Column();
+		final Column creators = new Column();
+		final Column datesCreated = new Column();
+		final Column zscores = new Column();
+		for (final HashtagRow hashtag : hashtags) {
+			ids.writeString(hashtag.id);
+			creators.writeVarint(users.intern(hashtag.createdBy));
+			datesCreated.writeDate(hashtag.dateCreated);
+			zscores.writeLong(Double.doubleToLongBits(hashtag.zscore));
+		}
+
+		final Column chunk = new Column();
+		chunk.writeVarint(hashtags.size());
+		users.writeTo(chunk);
+		chunk.writeColumn(ids);
+		chunk.writeColumn(creators);
+		chunk.writeColumn(datesCreated);
+		chunk.writeColumn(zscores);
+		return deflate(chunk);
+	}
+
+	public static List<HashtagRow> decodeHashtags(final byte[] deflated) throws IOException {
+		final ByteBuffer in = inflate(deflated);
+		try {
+			final int count = readVarint(in);
+			final String[] users = readStrings(in, readVarint(in));
+			final ByteBuffer ids = readColumn(in);
+			final ByteBuffer creators = readColumn(in);
+			final ByteBuffer datesCreated = readColumn(in);
+			final ByteBuffer zscores = readColumn(in);
+
+			final List<HashtagRow> hashtags = new ArrayList<HashtagRow>(count);
+			long lastDate = 0;
+			for (int i = 0; i < count; i++) {
+				lastDate += readZigzag(datesCreated);
+				hashtags.add(new HashtagRow(readString(ids), users[readVarint(creators)], lastDate, Double.longBitsToDouble(zscores.getLong())));
+			}
+			return hashtags;
+		}
+		catch (final BufferUnderflowException | IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt hashtag chunk", e);
+		}
+	}
+
+	/* Users */
+
+	public static class UserRow {
+		public final String username;
+		public final long joinDate;
+		public final boolean critic;
+
+		public UserRow(final String username, final long joinDate, final boolean critic) {
+			this.username = username;
+			this.joinDate = joinDate;
+			this.critic = critic;
+		}
+	}
+
+	public static byte[] encodeUsers(final List<UserRow> users) {
+		final Column usernames = new Column();
+		final Column joinDates = new Column();
+		final Column critics = new Column();
+		for (final UserRow user : users) {
+			usernames.writeString(user.username);
+			joinDates.writeDate(user.joinDate);
+			critics.writeVarint(user.critic ? 1 : 0);
+		}
+
+		final Column chunk = new Column();
+		chunk.writeVarint(users.size());
+		chunk.writeColumn(usernames);
+		chunk.writeColumn(joinDates);
+		chunk.writeColumn(critics);
+		return deflate(chunk);
+	}
+
+	public static List<UserRow> decodeUsers(final byte[] deflated) throws IOException {
+		final ByteBuffer in = inflate(deflated);
+		try {
+			final int count = readVarint(in);
+			final ByteBuffer usernames = readColumn(in);
+			final ByteBuffer joinDates = readColumn(in);
+			final ByteBuffer critics = readColumn(in);
+
+			final List<UserRow> users = new ArrayList<UserRow>(count);
+			long lastDate = 0;
+			for (int i = 0; i < count; i++) {
+				lastDate += readZigzag(joinDates);
+				users.add(new UserRow(readString(usernames), lastDate, readVarint(critics) == 1));
+			}
+			return users;
+		}
+		catch (final BufferUnderflowException | IllegalArgumentException e) {
+			throw new IOException("Corrupt user chunk", e);
+		}
+	}
+
+	/* Encoding */
+
+	// A growable byte column, with the last date written to it for delta encoding
+	private static class Column extends ByteArrayOutputStream {
+		private long lastDate = 0;
+
+		void writeVarint(long value) {
+			while ((value & ~0x7FL) != 0) {
+				write((int)((value & 0x7F) | 0x80));
+				value >>>= 7;
+			}
+			write((int)value);
+		}
+
+		void writeDate(final long date) {
+			final long delta = date - lastDate;
+			writeVarint((delta << 1) ^ (delta >> 63));
+			lastDate = date;
+		}
+
+		void writeLong(final long value) {
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				write((int)(value >>> shift));
+			}
+		}
+
+		void writeString(final String value) {
+			final byte[] bytes = value.getBytes(UTF_8);
+			writeVarint(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		// Prefixed with its length, so that the reader can slice it out
+		void writeColumn(final Column column) {
+			writeVarint(column.size());
+			write(column.buf, 0, column.size());
+		}
+	}
+
+	private static class Columns {
+		final Column userIndexes = new Column();
+		final Column hashtagIndexes = new Column();
+		final Column critics = new Column();
+		final Column sizes = new Column();
+		final Column songIndexes = new Column();
+		final Column datesPicked = new Column();
+
+		void writeTo(final Column chunk) {
+			chunk.writeColumn(userIndexes);
+			chunk.writeColumn(hashtagIndexes);
+			chunk.writeColumn(critics);
+			chunk.writeColumn(sizes);
+			chunk.writeColumn(songIndexes);
+			chunk.writeColumn(datesPicked);
+		}
+	}
+
+	// Strings by index in the order they were first seen
+	private static class Dictionary {
+		private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		int intern(final String value) {
+			Integer index = indexes.get(value);
+			if (index == null) {
+				index = values.size();
+				indexes.put(value, index);
+				values.add(value);
+			}
+			return index;
+		}
+
+		void writeTo(final Column chunk) {
+			chunk.writeVarint(values.size());
+			for (final String value : values) {
+				chunk.writeString(value);
+			}
+		}
+	}
+
+	private static byte[] deflate(final Column chunk) {
+		final ByteArrayOutputStream deflated = new ByteArrayOutputStream(chunk.size() / 4 + 64);
+		try (DeflaterOutputStream out = new DeflaterOutputStream(deflated, new Deflater(Deflater.BEST_COMPRESSION))) {
+			chunk.writeTo(out);
+		}
+		catch (final IOException e) {
+			// Only ever written to memory
+			throw new IllegalStateException(e);
+		}
+		return deflated.toByteArray();
+	}
+
+	/* Decoding */
+
+	private static ByteBuffer inflate(final byte[] deflated) throws IOException {
+		final ByteArrayOutputStream inflated = new ByteArrayOutputStream(deflated.length * 4);
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				inflated.write(buffer, 0, read);
+			}
+		}
+		return ByteBuffer.wrap(inflated.toByteArray());
+	}
+
+	private static int readVarint(final ByteBuffer in) throws IOException {
+		final long value = readVarlong(in);
+		if (value > Integer.MAX_VALUE)
+			throw new IOException("Varint out of range");
+		return (int)value;
+	}
+
+	private static long readVarlong(final ByteBuffer in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			final byte b = in.get();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	private static long readZigzag(final ByteBuffer in) throws IOException {
+		final long value = readVarlong(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static String readString(final ByteBuffer in) throws IOException {
+		final byte[] bytes = new byte[readVarint(in)];
+		in.get(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static String[] readStrings(final ByteBuffer in, final int count) throws IOException {
+		final String[] strings = new String[count];
+		for (int i = 0; i < count; i++) {
+			strings[i] = readString(in);
+		}
+		return strings;
+	}
+
+	private static ByteBuffer readColumn(final ByteBuffer in) throws IOException {
+		final int length = readVarint(in);
+		final ByteBuffer column = in.slice();
+		column.limit(length);
+		in.position(in.position() + length);
+		return column;
+	}
+}
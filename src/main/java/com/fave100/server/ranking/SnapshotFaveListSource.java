@@ -0,0 +1,85 @@
+package com.fave100.server.ranking;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the FaveLists of a snapshot written by {@link SnapshotWriter}.
+ *
+ * The snapshot is memory mapped and decoded a chunk at a time, with hashtag and user chunks
+ * skipped, then grouped by hashtag. Lists are kept as compact summaries, so this needs roughly
+ * the uncompressed size of the FaveLists in memory, after which any number of threads can build
+ * hashtags from it.
+ */
+public class SnapshotFaveListSource implements FaveListSource {
+
+	private final long snapshotTime;
+	private final Map<String, List<ListSummary>> faveLists = new LinkedHashMap<String, List<ListSummary>>();
+
+	public SnapshotFaveListSource(final ByteBuffer snapshot) throws IOException {
+		try {
+			if (snapshot.getInt() != SnapshotWriter.MAGIC)
+				throw new IOException("Not a FaveList snapshot");
+			final int version = snapshot.getInt();
+			if (version != SnapshotWriter.VERSION)
+				throw new IOException("Unsupported snapshot version " + version);
+			snapshotTime = snapshot.getLong();
+
+			byte kind;
+			while ((kind = snapshot.get()) != SnapshotCodec.KIND_END) {
+				final byte[] chunk = new byte[snapshot.getInt()];
+				snapshot.get(chunk);
+				if (kind != SnapshotCodec.KIND_FAVELISTS)
+					continue;
+
+				for (final ListSummary faveList : SnapshotCodec.decodeFaveLists(chunk)) {
+					List<ListSummary> hashtagLists = faveLists.get(faveList.getHashtagId());
+					if (hashtagLists == null) {
+						hashtagLists = new ArrayList<ListSummary>();
+						faveLists.put(faveList.getHashtagId(), hashtagLists);
+					}
+					hashtagLists.add(faveList);
+				}
+			}
+		}
+		catch (final BufferUnderflowException e) {
+			throw new IOException("Truncated snapshot", e);
+		}
+	}
+
+	// Map the file rather than reading it, so only the chunk being decoded is copied onto the heap
+	public static SnapshotFaveListSource open(final File snapshot) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(snapshot, "r")) {
+			return new SnapshotFaveListSource(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length()));
+		}
+	}
+
+	// When the snapshot was taken, which trending scores should be decayed against
+	public long getSnapshotTime() {
+		return snapshotTime;
+	}
+
+	@Override
+	public List<String> getHashtags() {
+		return new ArrayList<String>(faveLists.keySet());
+	}
+
+	@Override
+	public void addLists(final String hashtag, final MasterListBuild build) {
+		final List<ListSummary> hashtagLists = faveLists.get(hashtag);
+		if (hashtagLists == null)
+			return;
+
+		for (final ListSummary faveList : hashtagLists) {
+			build.addList(faveList);
+		}
+	}
+}
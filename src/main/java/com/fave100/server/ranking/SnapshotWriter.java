@@ -0,0 +1,66 @@
+package com.fave100.server.ranking;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes FaveLists to a snapshot file, which {@link SnapshotFaveListSource} reads back
+ * to build master lists offline.
+ *
+ * A snapshot is a header (magic number, format version and the time the snapshot was taken)
+ * followed by chunks encoded by {@link SnapshotCodec}, each preceded by its kind and length,
+ * and a {@link SnapshotCodec#KIND_END} byte at the end. Chunks are compressed on their own,
+ * so the file can be memory mapped and read a chunk at a time.
+ */
+public class SnapshotWriter implements Closeable {
+
+	public static final int MAGIC = 0x46313030;
+	public static final int VERSION = 2;
+	public static final int LISTS_PER_CHUNK = 100;
+
+	private final DataOutputStream out;
+	private final List<ListSummary> faveLists = new ArrayList<ListSummary>();
+
+	public SnapshotWriter(final OutputStream out, final long snapshotTime) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(MAGIC);
+		this.out.writeInt(VERSION);
+		this.out.writeLong(snapshotTime);
+	}
+
+	public void write(final ListSummary faveList) throws IOException {
+		faveLists.add(faveList);
+		if (faveLists.size() == LISTS_PER_CHUNK) {
+			flushLists();
+		}
+	}
+
+	// Write an already encoded chunk, such as one exported from the datastore
+	public void writeChunk(final byte kind, final byte[] chunk) throws IOException {
+		flushLists();
+		out.writeByte(kind);
+		out.writeInt(chunk.length);
+		out.write(chunk);
+	}
+
+	private void flushLists() throws IOException {
+		if (faveLists.isEmpty())
+			return;
+
+		final byte[] chunk = SnapshotCodec.encodeFaveLists(faveLists);
+		faveLists.clear();
+		writeChunk(SnapshotCodec.KIND_FAVELISTS, chunk);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flushLists();
+		out.writeByte(SnapshotCodec.KIND_END);
+		out.close();
+	}
+}
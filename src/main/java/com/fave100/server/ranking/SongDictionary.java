@@ -0,0 +1,118 @@
+package com.fave100.server.ranking;
+
+import java.util.Arrays;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * Assigns every distinct songID seen during a build a dense int id, starting at 0,
+ * so that per-song totals can be kept in primitive arrays (see {@link ScoreAccumulator}).
+ *
+ * The lookup table is open-addressed with linear probing over plain arrays, so
+ * interning a song that is already known allocates nothing. Each song also keeps
+ * a single flyweight FaveItem, without the whyline or date of any pick, that stands in
+ * for every pick of that song in the master lists.
+ */
+public class SongDictionary {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// Hash table of songID -> id, kept at most half full
+	private String[] slotKeys;
+	private int[] slotIds;
+	private int mask;
+
+	// Indexed by id
+	private String[] songIDs;
+	private FaveItem[] faveItems;
+	private int size = 0;
+
+	public SongDictionary() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public SongDictionary(final int expectedSongs) {
+		int slots = Integer.highestOneBit(Math.max(16, expectedSongs * 2) - 1) << 1;
+		slotKeys = new String[slots];
+		slotIds = new int[slots];
+		mask = slots - 1;
+		songIDs = new String[Math.max(16, expectedSongs)];
+		faveItems = new FaveItem[songIDs.length];
+	}
+
+	// The id of the pick's song, registering the song on first sight
+	public int intern(final FaveItem faveItem) {
+		return intern(faveItem.getSongID(), faveItem.getSong(), faveItem.getArtist());
+	}
+
+	public int intern(final String songID, final String song, final String artist) {
+		int slot = slot(songID);
+		while (slotKeys[slot] != null) {
+			if (slotKeys[slot].equals(songID))
+				return slotIds[slot];
+
+			slot = (slot + 1) & mask;
+		}
+
+		final int id = size++;
+		if (id == songIDs.length) {
+			songIDs = Arrays.copyOf(songIDs, id * 2);
+			faveItems = Arrays.copyOf(faveItems, id * 2);
+		}
+		songIDs[id] = songID;
+		// Only the fields the master lists show, so a build doesn't hold on to whylines or whole FaveLists.
+		// It stands for every pick of the song, so it has no date picked of its own
+		faveItems[id] = new FaveItem(song, artist, songID);
+		faveItems[id].setDatePicked(null);
+		slotKeys[slot] = songID;
+		slotIds[slot] = id;
+
+		if (size * 2 > slotKeys.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	// The id of the song, or -1 if it hasn't been interned
+	public int find(final String songID) {
+		int slot = slot(songID);
+		while (slotKeys[slot] != null) {
+			if (slotKeys[slot].equals(songID))
+				return slotIds[slot];
+
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public FaveItem getFaveItem(final int id) {
+		return faveItems[id];
+	}
+
+	public String getSongID(final int id) {
+		return songIDs[id];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private int slot(final String songID) {
+		final int h = songID.hashCode();
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	private void rehash() {
+		slotKeys = new String[slotKeys.length * 2];
+		slotIds = new int[slotKeys.length];
+		mask = slotKeys.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = slot(songIDs[id]);
+			while (slotKeys[slot] != null) {
+				slot = (slot + 1) & mask;
+			}
+			slotKeys[slot] = songIDs[id];
+			slotIds[slot] = id;
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.fave100.server.ranking;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the K items with the highest keys out of any number offered, using O(K) memory.
+ *
+ * Backed by a min-heap over a primitive key array: an item that doesn't make the cut
+ * costs a single comparison, and one that does costs O(log K). An item whose key only
+ * ties the current K-th key is not taken in.
+ */
+public class TopK<T> {
+
+	private final int k;
+	private final double[] keys;
+	private final Object[] items;
+	private int size = 0;
+
+	public TopK(final int k) {
+		this.k = k;
+		this.keys = new double[k];
+		this.items = new Object[k];
+	}
+
+	// Returns true if the item is currently among the top K
+	public boolean offer(final T item, final double key) {
+		if (size < k) {
+			keys[size] = key;
+			items[size] = item;
+			siftUp(size);
+			size++;
+			return true;
+		}
+
+		if (!accepts(key))
+			return false;
+
+		keys[0] = key;
+		items[0] = item;
+		siftDown(0);
+		return true;
+	}
+
+	// Whether an item with this key would currently make the top K
+	public boolean accepts(final double key) {
+		return size < k || (k > 0 && key > keys[0]);
+	}
+
+	// The lowest key still in the top K, i.e. the K-th highest key once full
+	public double minKey() {
+		if (size == 0)
+			throw new IllegalStateException("No items have been offered");
+
+		return keys[0];
+	}
+
+	public boolean isFull() {
+		return size == k;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// The retained items, highest key first
+	public List<T> toList() {
+		// Pop a copy of the heap so the selection can keep accepting items
+		final TopK<T> copy = new TopK<T>(k);
+		System.arraycopy(keys, 0, copy.keys, 0, size);
+		System.arraycopy(items, 0, copy.items, 0, size);
+		copy.size = size;
+
+		final List<T> sorted = new ArrayList<T>(size);
+		for (int i = 0; i < size; i++) {
+			sorted.add(null);
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			sorted.set(i, copy.pollMin());
+		}
+		return sorted;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T pollMin() {
+		final T min = (T)items[0];
+		size--;
+		keys[0] = keys[size];
+		items[0] = items[size];
+		items[size] = null;
+		if (size > 0) {
+			siftDown(0);
+		}
+		return min;
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (keys[parent] <= keys[i])
+				break;
+
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			final int left = 2 * i + 1;
+			if (left >= size)
+				break;
+
+			final int right = left + 1;
+			final int smallest = (right < size && keys[right] < keys[left]) ? right : left;
+			if (keys[i] <= keys[smallest])
+				break;
+
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(final int a, final int b) {
+		final double key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+
+		final Object item = items[a];
+		items[a] = items[b];
+		items[b] = item;
+	}
+}
@@ -0,0 +1,172 @@
+package com.fave100.server.ranking;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * How much each song has been picked lately, with every pick's weight halving every {@link #HALF_LIFE_MILLIS}.
+ *
+ * Counts of all songs are kept approximately in a Count-Min sketch of fixed size, which never
+ * underestimates. The songs with the highest counts are tracked exactly in a Space-Saving table
+ * of fixed capacity: a song that isn't in a full table replaces the lowest counted song once its
+ * sketch estimate is higher, so heavy hitters can't be missed whatever the order of the picks.
+ *
+ * Decay is applied forward: a pick is added with a weight that grows with its time relative to a
+ * landmark, so counts never need to be decayed in place, and reading them scales them back to the
+ * present. As every count decays by the same factor, the order of the songs never changes between
+ * picks, so {@link #top(int)} needs no time.
+ *
+ * Memory and the cost of a pick are bounded by the width, depth and capacity, whatever the number of songs.
+ */
+public class TrendingSketch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	public static long HALF_LIFE_MILLIS = 3 * 24 * 60 * 60 * 1000L;
+	// Weights are rebased once they grow past 2^64, long before doubles lose any range
+	private static final double MAX_HALF_LIVES = 64;
+
+	private final int width;
+	private final double[][] counts;
+	private final int capacity;
+	private final Map<String, Counted> heavyHitters;
+	private long landmark;
+	private long pickCount;
+
+	private static class Counted implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		final FaveItem song;
+		double count;
+
+		Counted(final FaveItem song, final double count) {
+			this.song = song;
+			this.count = count;
+		}
+	}
+
+	// Capacity should be comfortably above the number of songs read from top(), as the last few are the least certain
+	public TrendingSketch(final int width, final int depth, final int capacity, final long landmark) {
+		this.width = width;
+		this.counts = new double[depth][width];
+		this.capacity = capacity;
+		this.heavyHitters = new HashMap<String, Counted>(capacity * 2);
+		this.landmark = landmark;
+	}
+
+	public void add(final FaveItem pick) {
+		final long datePicked = pick.getDatePicked().getTime();
+		if ((datePicked - landmark) / (double)HALF_LIFE_MILLIS > MAX_HALF_LIVES) {
+			rebase(datePicked);
+		}
+		final double weight = weight(datePicked);
+		pickCount++;
+
+		// Conservative update: only raise the counters that are below the new estimate
+		final String songID = pick.getSongID();
+		final double estimate = estimate(songID) + weight;
+		for (int row = 0; row < counts.length; row++) {
+			final int column = column(songID, row);
+			counts[row][column] = Math.max(counts[row][column], estimate);
+		}
+
+		final Counted counted = heavyHitters.get(songID);
+		if (counted != null) {
+			counted.count += weight;
+			if (datePicked > counted.song.getDatePicked().getTime()) {
+				counted.song.setDatePicked(new Date(datePicked));
+			}
+			return;
+		}
+
+		if (heavyHitters.size() >= capacity) {
+			final Counted lowest = lowest();
+			if (lowest.count >= estimate)
+				return;
+			heavyHitters.remove(lowest.song.getSongID());
+		}
+		heavyHitters.put(songID, new Counted(copy(pick), estimate));
+	}
+
+	// The decayed count of the song at the given time, overestimated by the sketch for songs outside the table
+	public double getScore(final String songID, final long now) {
+		final Counted counted = heavyHitters.get(songID);
+		final double count = counted != null ? counted.count : estimate(songID);
+		return count / weight(now);
+	}
+
+	// The n most picked songs, most picked first, each with the date of its latest pick
+	public List<FaveItem> top(final int n) {
+		final TopK<FaveItem> top = new TopK<FaveItem>(n);
+		for (final Counted counted : heavyHitters.values()) {
+			top.offer(counted.song, counted.count);
+		}
+		final List<FaveItem> songs = new ArrayList<FaveItem>();
+		for (final FaveItem song : top.toList()) {
+			songs.add(copy(song));
+		}
+		return songs;
+	}
+
+	public long getPickCount() {
+		return pickCount;
+	}
+
+	private double estimate(final String songID) {
+		double estimate = Double.MAX_VALUE;
+		for (int row = 0; row < counts.length; row++) {
+			estimate = Math.min(estimate, counts[row][column(songID, row)]);
+		}
+		return estimate;
+	}
+
+	private double weight(final long time) {
+		return Math.pow(2, (time - landmark) / (double)HALF_LIFE_MILLIS);
+	}
+
+	// Move the landmark forward and scale every count down to match
+	private void rebase(final long newLandmark) {
+		final double scale = 1 / weight(newLandmark);
+		for (final double[] row : counts) {
+			for (int column = 0; column < width; column++) {
+				row[column] *= scale;
+			}
+		}
+		for (final Counted counted : heavyHitters.values()) {
+			counted.count *= scale;
+		}
+		landmark = newLandmark;
+	}
+
+	// A linear scan, which only runs when a new song is picked while the table is full
+	private Counted lowest() {
+		Counted lowest = null;
+		for (final Counted counted : heavyHitters.values()) {
+			if (lowest == null || counted.count < lowest.count) {
+				lowest = counted;
+			}
+		}
+		return lowest;
+	}
+
+	// A different hash of the song for each row, mixed so that similar ids spread across the row
+	private int column(final String songID, final int row) {
+		int hash = songID.hashCode() * 0x9E3779B1 + row * 0x85EBCA6B;
+		hash ^= hash >>> 16;
+		hash *= 0x7FEB352D;
+		hash ^= hash >>> 15;
+		return (hash & 0x7FFFFFFF) % width;
+	}
+
+	private static FaveItem copy(final FaveItem pick) {
+		final FaveItem song = new FaveItem(pick.getSong(), pick.getArtist(), pick.getSongID());
+		song.setDatePicked(new Date(pick.getDatePicked().getTime()));
+		return song;
+	}
+}
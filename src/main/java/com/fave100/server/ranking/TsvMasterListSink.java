@@ -0,0 +1,51 @@
+package com.fave100.server.ranking;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.shared.ListMode;
+
+/**
+ * Writes master lists as tab separated lines of hashtag, mode, rank, songID, song, artist and score,
+ * where the score of a newest item is the time it was picked.
+ */
+public class TsvMasterListSink implements MasterListSink {
+
+	private final Writer out;
+
+	public TsvMasterListSink(final Writer out) {
+		this.out = out;
+	}
+
+	@Override
+	public void save(final String hashtag, final MasterListBuild build) throws IOException {
+		final StringBuilder lines = new StringBuilder();
+		appendTop(lines, hashtag, ListMode.USERS, build.getSongs(), build.getUsers());
+		appendTop(lines, hashtag, ListMode.CRITICS, build.getSongs(), build.getCritics());
+
+		final List<FaveItem> newest = build.getNewest();
+		for (int i = 0; i < newest.size(); i++) {
+			final FaveItem faveItem = newest.get(newest.size() - 1 - i);
+			appendLine(lines, hashtag, ListMode.NEWEST, i + 1, faveItem, faveItem.getDatePicked().getTime());
+		}
+
+		// Keep the lines of a hashtag together when several threads write at once
+		synchronized (out) {
+			out.write(lines.toString());
+		}
+	}
+
+	private static void appendTop(final StringBuilder lines, final String hashtag, final String mode, final SongDictionary songs, final ScoreAccumulator scores) {
+		final int[] top = scores.topIds(100);
+		for (int i = 0; i < top.length; i++) {
+			appendLine(lines, hashtag, mode, i + 1, songs.getFaveItem(top[i]), scores.get(top[i]));
+		}
+	}
+
+	private static void appendLine(final StringBuilder lines, final String hashtag, final String mode, final int rank, final FaveItem faveItem, final Object score) {
+		lines.append(hashtag).append('\t').append(mode).append('\t').append(rank).append('\t').append(faveItem.getSongID()).append('\t')
+				.append(faveItem.getSong()).append('\t').append(faveItem.getArtist()).append('\t').append(score).append('\n');
+	}
+}
@@ -0,0 +1,35 @@
+package com.fave100.server.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fave100.server.cache.LocalCache;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.filters.ResponseStats;
+
+/**
+ * Shows the hits, misses and evictions of the local caches of the instance that serves the request,
+ * and the bytes each API endpoint wrote and sent on it.
+ */
+@SuppressWarnings("serial")
+public class CacheStatsServlet extends HttpServlet
+{
+	public static String CACHE_STATS_URL = "/tasks/cachestats";
+
+	@Override
+	public void doGet(final HttpServletRequest req, final HttpServletResponse res)
+			throws ServletException, IOException {
+
+		res.setContentType("text/plain");
+		for (final LocalCache<?> cache : LocalCaches.all()) {
+			res.getWriter().println(cache);
+		}
+		for (final ResponseStats endpoint : ResponseStats.all()) {
+			res.getWriter().println(endpoint);
+		}
+	}
+}
@@ -0,0 +1,116 @@
+package com.fave100.server.servlets;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.ranking.ScoreAccumulator;
+import com.fave100.server.ranking.SongDictionary;
+import com.googlecode.objectify.Result;
+
+/**
+ * Everything a build of one hashtag writes, gathered so that it can be committed at once.
+ *
+ * The Hashtag entity is loaded once and every master list is set on that copy, so a build
+ * costs a single save of the Hashtag. Several results can be committed
+ * together, so a task that builds a group of small hashtags makes one datastore call for all of them.
+ */
+public class HashtagBuildResult {
+
+	private final String hashtag;
+	private final Date started;
+	private final Hashtag hashtagEntity;
+	// Only set by full builds
+	private List<FaveItem> newest;
+	private SongDictionary songs;
+	private ScoreAccumulator users;
+	private ScoreAccumulator critics;
+	// The saved progress of the build, removed once the result is saved
+	private HashtagBuildCheckpoint checkpoint;
+
+	public HashtagBuildResult(String hashtag, Date started, Hashtag hashtagEntity) {
+		this.hashtag = hashtag;
+		this.started = started;
+		this.hashtagEntity = hashtagEntity;
+		hashtagEntity.setLastBuilt(started);
+	}
+
+	// Keep the scores a full build was made from, so that the hashtag's ledger can be checked against them
+	public void setScores(SongDictionary songs, ScoreAccumulator users, ScoreAccumulator critics) {
+		this.songs = songs;
+		this.users = users;
+		this.critics = critics;
+	}
+
+	// Start saving the entities of all the results in one batch, and put their newest lists in memcache
+	public static Result<?> save(List<HashtagBuildResult> results) {
+		final List<Hashtag> entities = new ArrayList<Hashtag>();
+		final Map<String, List<FaveItem>> newestSongs = new HashMap<String, List<FaveItem>>();
+		for (final HashtagBuildResult result : results) {
+			entities.add(result.getHashtagEntity());
+			if (result.getNewest() != null) {
+				newestSongs.put(result.getHashtag(), result.getNewest());
+			}
+		}
+
+		final Result<?> saved = ofy().save().entities(entities);
+		if (!newestSongs.isEmpty()) {
+			MemcacheManager.setNewestSongs(newestSongs);
+		}
+		return saved;
+	}
+
+	public boolean isFullBuild() {
+		return songs != null;
+	}
+
+	/* Getters and Setters */
+
+	public String getHashtag() {
+		return hashtag;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public Hashtag getHashtagEntity() {
+		return hashtagEntity;
+	}
+
+	public List<FaveItem> getNewest() {
+		return newest;
+	}
+
+	public void setNewest(List<FaveItem> newest) {
+		this.newest = newest;
+	}
+
+	public SongDictionary getSongs() {
+		return songs;
+	}
+
+	public ScoreAccumulator getUsers() {
+		return users;
+	}
+
+	public ScoreAccumulator getCritics() {
+		return critics;
+	}
+
+	public HashtagBuildCheckpoint getCheckpoint() {
+		return checkpoint;
+	}
+
+	public void setCheckpoint(HashtagBuildCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+}
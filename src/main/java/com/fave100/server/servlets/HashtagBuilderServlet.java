@@ -1,37 +1,50 @@
 package com.fave100.server.servlets;
 
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Date;
 import java.util.List;
-import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.fave100.server.MemcacheManager;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveList;
-import com.fave100.server.domain.favelist.FaveListDao;
-import com.fave100.server.domain.favelist.FaveRankerWrapper;
 import com.fave100.server.domain.favelist.Hashtag;
-import com.fave100.server.domain.favelist.TrendingList;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.server.domain.favelist.ScoreLedger;
+import com.fave100.server.ranking.ScoreAccumulator;
+import com.fave100.server.ranking.SongDictionary;
 import com.fave100.shared.Constants;
-import com.google.appengine.api.datastore.Cursor;
-import com.google.appengine.api.datastore.QueryResultIterator;
-import com.googlecode.objectify.cmd.Query;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
 
 /**
  * This servlet will process hashtags as they are added to the task queue
  * by getting all FaveLists for the hashtag and calculating the top 100 items
  * 
+ * By default the user and critic master lists are refreshed from the hashtag's
+ * {@link ScoreLedger}. A full rebuild, which also recalculates the newest
+ * list, is run in reconcile mode and repairs any ledger drift. Hashtags whose
+ * ledger has never been reconciled, those from before it existed, are fully built
+ * whatever the mode.
+ * 
+ * Everything a build writes is gathered in a {@link HashtagBuildResult} and saved in one
+ * batch, along with the results of any other hashtags in the same task.
+ * 
+ * Full builds checkpoint their progress, so a build that doesn't fit in one task is
+ * carried on by continuation tasks, and a retried task doesn't scan everything again.
+ * 
  * @author yissachar.radcliffe
  * 
  */
@@ -40,162 +53,222 @@ public class HashtagBuilderServlet extends HttpServlet
 {
 	public static String HASHTAG_BUILDER_URL = "/tasks/hashtags";
 	public static String HASHTAG_PARAM = "hashtag";
+	public static String MODE_PARAM = "mode";
+	public static String MODE_LEDGER = "ledger";
+	public static String MODE_RECONCILE = "reconcile";
+	public static String MODE_SHARDED = "sharded";
+	// The build id of the checkpoint a continuation task resumes
+	public static String RESUME_PARAM = "resume";
+
+	// Scan progress is saved every few pages, and a task that has used up its budget hands over to a continuation task
+	public static int CHECKPOINT_PAGES = 5;
+	public static long TASK_BUDGET_MILLIS = 5 * 60 * 1000;
+	// A retried task only resumes checkpoints recent enough to be its own, matching the queue's task age limit
+	public static long MAX_CHECKPOINT_AGE_MILLIS = 60 * 60 * 1000;
+	// Hashtags with more lists are sharded, smaller ones are scanned a page at a time across continuation tasks,
+	// which for up to a few dozen pages finishes sooner than dispatching the shards through the rate limited queue
+	public static int MAX_SCANNED_LISTS = 20 * 1000;
 
 	@Override
 	public void doPost(final HttpServletRequest req, final HttpServletResponse res)
 			throws ServletException, IOException {
 
-		final String hashtag = req.getParameter(HASHTAG_PARAM);
+		// A task may carry a group of small hashtags, whose results are then saved together
+		final String[] hashtags = req.getParameterValues(HASHTAG_PARAM) != null ? req.getParameterValues(HASHTAG_PARAM) : new String[] { req.getParameter(HASHTAG_PARAM) };
+		final String mode = req.getParameter(MODE_PARAM);
+		final long deadline = System.currentTimeMillis() + TASK_BUDGET_MILLIS;
 
-		final HashMap<FaveRankerWrapper, Double> users = new HashMap<>();
-		final HashMap<FaveRankerWrapper, Double> critics = new HashMap<>();
-		final List<FaveRankerWrapper> all = new ArrayList<FaveRankerWrapper>();
+		// A continuation carries on with its checkpoint, and so does a retried task that got as far as saving one
+		final String resume = req.getParameter(RESUME_PARAM);
+		if (resume != null) {
+			commit(resume(hashtags[0], Long.parseLong(resume), deadline));
+			return;
+		}
+		final String retryCount = req.getHeader("X-AppEngine-TaskRetryCount");
+		final boolean retry = retryCount != null && Integer.parseInt(retryCount) > 0;
+
+		final List<HashtagBuildResult> results = new ArrayList<HashtagBuildResult>();
+		for (final String hashtag : hashtags) {
+			final HashtagBuildResult result = build(hashtag, mode, retry, deadline);
+			if (result != null) {
+				results.add(result);
+			}
+		}
+		commit(results);
+	}
 
-		// Build the lists
-		final int listCount = addAllLists(null, hashtag, users, critics, all);
+	// Build the hashtag, returns null if there is nothing to save yet
+	private HashtagBuildResult build(String hashtag, String mode, boolean retry, long deadline) {
+		// The trending list has no FaveLists of its own, it is aggregated from all other hashtags
+		if (Constants.TRENDING_LIST_NAME.equals(hashtag))
+			return null;
 
-		if (!users.isEmpty()) {
-			saveTopItems(hashtag, users, listCount, false);
+		if (MODE_SHARDED.equals(mode)) {
+			ShardedHashtagBuilderServlet.planShards(hashtag, countLists(hashtag));
+			return null;
 		}
 
-		if (!critics.isEmpty()) {
-			saveTopItems(hashtag, critics, listCount, true);
+		if (!MODE_RECONCILE.equals(mode)) {
+			final Date started = new Date();
+			final Hashtag hashtagEntity = ofy().load().type(Hashtag.class).id(hashtag).now();
+			if (hashtagEntity == null) {
+				DirtyHashtag.clear(hashtag, started);
+				return null;
+			}
+			// A hashtag from before the ledger has no scores in it yet, so it is fully built instead, which fills it
+			if (hashtagEntity.getLedgerReconciled() != null)
+				return refreshFromLedger(hashtag, hashtagEntity, started);
 		}
 
-		saveNewestAndTrendingItems(hashtag, all);
+		// Very large hashtags would take too long to scan in one chain of tasks, split them up
+		final int listCount = countLists(hashtag);
+		if (listCount > MAX_SCANNED_LISTS) {
+			ShardedHashtagBuilderServlet.planShards(hashtag, listCount);
+			return null;
+		}
+		return reconcile(hashtag, retry, deadline);
 	}
 
-	private void saveTopItems(String hashtag, HashMap<FaveRankerWrapper, Double> items, int listCount, boolean critic) {
-		final List<Map.Entry<FaveRankerWrapper, Double>> sorted = sort(items);
-
-		int i = 0;
-		final List<FaveItem> master = new ArrayList<FaveItem>();
-		for (final Map.Entry<FaveRankerWrapper, Double> entry : sorted) {
-			// Add the top 100 songs to master list
-			if (i < 100) {
-				final FaveItem faveItem = entry.getKey().getFaveItem();
-				faveItem.setWhyline("");
-				faveItem.setWhylineRef(null);
-				master.add(faveItem);
-				i++;
-			}
-		}
+	static int countLists(String hashtag) {
+		return ofy().load().type(FaveList.class).filter("hashtagId", hashtag).count();
+	}
 
-		Hashtag hashtagEntity = ofy().load().type(Hashtag.class).id(hashtag).now();
-		if (critic) {
-			hashtagEntity.setCriticsList(master);
-		}
-		else {
-			// Calculate the zcore to determine top trending lists
-			hashtagEntity.setZscore(calculateZscore(hashtagEntity.getSlidingListCount(), listCount));
-			hashtagEntity.addListCount(listCount);
-			hashtagEntity.setList(master);
+	// Refresh the user and critic master lists from the score ledger, without reading any FaveLists
+	private HashtagBuildResult refreshFromLedger(String hashtag, Hashtag hashtagEntity, Date started) {
+		// The list count and zscore are left to full builds, as counting the lists would read every one of them
+		hashtagEntity.setList(ScoreLedger.getTopItems(hashtag, false, 100));
+		hashtagEntity.setCriticsList(ScoreLedger.getTopItems(hashtag, true, 100));
+		return new HashtagBuildResult(hashtag, started, hashtagEntity);
+	}
+
+	// Rebuild all master lists from scratch
+	private HashtagBuildResult reconcile(String hashtag, boolean retry, long deadline) {
+		if (retry) {
+			final HashtagBuildCheckpoint checkpoint = ofy().load().type(HashtagBuildCheckpoint.class).id(hashtag.toLowerCase()).now();
+			if (checkpoint != null && checkpoint.getStarted().getTime() > System.currentTimeMillis() - MAX_CHECKPOINT_AGE_MILLIS)
+				return scan(hashtag, checkpoint, HashtagScan.resume(checkpoint), deadline);
 		}
 
-		// Save the master list to the datastore
-		ofy().save().entity(hashtagEntity).now();
+		HashtagScan.ensureSummaries(hashtag);
+		return scan(hashtag, new HashtagBuildCheckpoint(hashtag), new HashtagScan(), deadline);
 	}
 
-	private void saveNewestAndTrendingItems(String hashtag, List<FaveRankerWrapper> all) {
-		Collections.sort(all, Collections.reverseOrder(new Comparator<FaveRankerWrapper>() {
+	private List<HashtagBuildResult> resume(String hashtag, long buildId, long deadline) {
+		final HashtagBuildCheckpoint checkpoint = ofy().load().type(HashtagBuildCheckpoint.class).id(hashtag.toLowerCase()).now();
+		// A newer build has replaced this one, or it has already finished
+		if (checkpoint == null || checkpoint.getBuildId() != buildId)
+			return Collections.emptyList();
+
+		final HashtagBuildResult result = scan(hashtag, checkpoint, HashtagScan.resume(checkpoint), deadline);
+		return result != null ? Collections.singletonList(result) : Collections.<HashtagBuildResult> emptyList();
+	}
 
-			@Override
-			public int compare(FaveRankerWrapper o1, FaveRankerWrapper o2) {
-				return o1.getFaveItem().getDatePicked().compareTo(o2.getFaveItem().getDatePicked());
+	// Scan the rest of the hashtag's FaveLists from the checkpoint's cursor, returns null if the deadline
+	// came first, in which case the progress has been saved and a continuation task carries on with it
+	private HashtagBuildResult scan(String hashtag, HashtagBuildCheckpoint checkpoint, HashtagScan scan, long deadline) {
+		String cursor = scan.addPage(HashtagScan.query(hashtag), checkpoint.getCursor());
+		int pages = 1;
+		while (cursor != null) {
+			if (System.currentTimeMillis() > deadline) {
+				scan.checkpoint(checkpoint, cursor);
+				ofy().save().entity(checkpoint).now();
+				addContinuation(hashtag, checkpoint);
+				return null;
+			}
+			if (pages % CHECKPOINT_PAGES == 0) {
+				scan.checkpoint(checkpoint, cursor);
+				ofy().save().entity(checkpoint).now();
 			}
 
-		}));
+			cursor = scan.addPage(HashtagScan.query(hashtag), cursor);
+			pages++;
+		}
 
-		// Add the 100 newest songs to the list
-		final List<FaveItem> newest = new ArrayList<FaveItem>();
-		for (int i = Math.min(99, all.size() - 1); i >= 0; i--) {
-			FaveItem faveItem = all.get(i).getFaveItem();
-			faveItem.setWhyline("");
-			faveItem.setWhylineRef(null);
-			newest.add(faveItem);
+		final HashtagBuildResult result = toResult(hashtag, checkpoint.getStarted(), scan.getSongs(), scan.getUsers(), scan.getCritics(), scan.getListCount(),
+				scan.getNewest());
+		// Only a checkpoint that has been saved needs to be removed
+		if (checkpoint.getCursor() != null) {
+			result.setCheckpoint(checkpoint);
 		}
+		return result;
+	}
 
-		// Save the newest list
-		Hashtag hashtagEntity = ofy().load().type(Hashtag.class).id(hashtag).now();
-		hashtagEntity.setNewestList(newest);
-		ofy().save().entity(hashtagEntity).now();
-
-		// Initialize memcache with the list
-		MemcacheManager.setNewestSongs(hashtag, newest);
-
-		// Calculate Trending
-		if (!all.isEmpty()) {
-			long defaultMin = MemcacheManager.getTrendingScore(newest.get(0), false);
-
-			List<FaveItem> pseudoTrending = new ArrayList<FaveItem>();
-			List<Long> trendingScores = new ArrayList<Long>();
-			long minTrending = MemcacheManager.incrementTrendingMin(0L, defaultMin);
-			for (FaveRankerWrapper wrapper : all) {
-				long trendingScore = MemcacheManager.getTrendingScore(wrapper.getFaveItem());
-				if (trendingScore >= minTrending) {
-					trendingScores.add(trendingScore);
-					pseudoTrending.add(wrapper.getFaveItem());
-				}
-			}
+	private static void addContinuation(String hashtag, HashtagBuildCheckpoint checkpoint) {
+		// Task names can't contain the spaces that list names may have, the list count tells the continuations of a build apart
+		final String taskName = hashtag.replaceAll("[^a-zA-Z0-9]", "_") + "-" + checkpoint.getBuildId() + "-" + checkpoint.getListCount();
+		try {
+			QueueFactory.getQueue("hashtag-queue").add(withUrl(HASHTAG_BUILDER_URL)
+					.taskName(taskName)
+					.param(HASHTAG_PARAM, hashtag)
+					.param(MODE_PARAM, MODE_RECONCILE)
+					.param(RESUME_PARAM, String.valueOf(checkpoint.getBuildId())));
+		}
+		catch (final TaskAlreadyExistsException e) {
+			// Already enqueued by an earlier attempt
+		}
+	}
 
-			long oldMin = MemcacheManager.incrementTrendingMin(0L, defaultMin);
-			long newMin = oldMin;
-			Collections.sort(trendingScores);
-			if (trendingScores.size() >= 100) {
-				newMin = trendingScores.get(99);
-			}
+	// Save the results of a full build, whether it was done in one task or merged from shards
+	static void saveBuild(String hashtag, Date started, SongDictionary songs, ScoreAccumulator users, ScoreAccumulator critics, int listCount,
+			List<FaveItem> newest) {
+
+		commit(Collections.singletonList(toResult(hashtag, started, songs, users, critics, listCount, newest)));
+	}
+
+	// Set every list of a full build on the hashtag
+	static HashtagBuildResult toResult(String hashtag, Date started, SongDictionary songs, ScoreAccumulator users, ScoreAccumulator critics, int listCount,
+			List<FaveItem> newest) {
 
-			MemcacheManager.incrementTrendingMin(newMin - oldMin, newMin);
+		final HashtagBuildResult result = new HashtagBuildResult(hashtag, started, ofy().load().type(Hashtag.class).id(hashtag).now());
+		result.setScores(songs, users, critics);
 
-			TrendingList trendingList = new TrendingList(hashtag, pseudoTrending);
-			ofy().save().entity(trendingList).now();
+		// Add the top 100 songs to master list, the dictionary's items already have no whylines
+		if (!users.isEmpty()) {
+			// Calculate the zcore to determine top trending lists
+			final Hashtag hashtagEntity = result.getHashtagEntity();
+			hashtagEntity.setZscore(calculateZscore(hashtagEntity.getSlidingListCount(), listCount));
+			hashtagEntity.addListCount(listCount);
+			hashtagEntity.setList(users.top(100, songs));
 		}
 
-		// If all hashtags built, aggregrate the trending as a last step
-		if (MemcacheManager.incrementRemainingHashtagCount(-1) == 0) {
-			Map<FaveRankerWrapper, Long> trending = new HashMap<FaveRankerWrapper, Long>();
-			// TODO: Nov 3, 2014 Handle more than 1000 lists
-			List<TrendingList> lists = ofy().load().type(TrendingList.class).list();
-			for (TrendingList list : lists) {
-				for (FaveItem faveItem : list.getItems()) {
-					trending.put(new FaveRankerWrapper(faveItem), MemcacheManager.getTrendingScore(faveItem, false));
-				}
-			}
+		if (!critics.isEmpty()) {
+			result.getHashtagEntity().setCriticsList(critics.top(100, songs));
+		}
 
-			List<Map.Entry<FaveRankerWrapper, Long>> sortedTrending = new LinkedList<>(trending.entrySet());
-			Collections.sort(sortedTrending, Collections.reverseOrder(new Comparator<Map.Entry<FaveRankerWrapper, Long>>() {
-				@Override
-				public int compare(final Map.Entry<FaveRankerWrapper, Long> o1, final Map.Entry<FaveRankerWrapper, Long> o2) {
-					return (o1.getValue()).compareTo(o2.getValue());
+		// The newest list is also put in memcache once saved
+		result.getHashtagEntity().setNewestList(newest);
+		result.setNewest(newest);
+		return result;
+	}
+
+	// Save the results in a single batch, then mark their hashtags as built
+	static void commit(List<HashtagBuildResult> results) {
+		if (results.isEmpty())
+			return;
+
+		// Correct any ledger drift of the full builds first, so that a hashtag is only marked reconciled once its ledger is
+		for (final HashtagBuildResult result : results) {
+			if (result.isFullBuild()) {
+				final int drift = ScoreLedger.reconcile(result.getHashtag(), result.getSongs(), result.getUsers(), result.getCritics());
+				if (drift > 0) {
+					Logger.getAnonymousLogger().log(Level.WARNING, "Corrected " + drift + " drifted ledger scores for hashtag " + result.getHashtag());
 				}
-			}));
-
-			List<FaveItem> finalTrending = new ArrayList<FaveItem>();
-			for (int i = 0; i < 100 && i < sortedTrending.size(); i++) {
-				FaveItem faveItem = sortedTrending.get(i).getKey().getFaveItem();
-				faveItem.setWhyline("");
-				faveItem.setWhylineRef(null);
-				finalTrending.add(faveItem);
+				result.getHashtagEntity().setLedgerReconciled(result.getStarted());
 			}
-
-			Hashtag trendingHashtag = new Hashtag(Constants.TRENDING_LIST_NAME, "Fave100");
-			trendingHashtag.setList(finalTrending);
-			ofy().save().entity(trendingHashtag).now();
 		}
-	}
 
-	private List<Map.Entry<FaveRankerWrapper, Double>> sort(Map<FaveRankerWrapper, Double> items) {
-		List<Map.Entry<FaveRankerWrapper, Double>> sorted = new LinkedList<>(items.entrySet());
-		Collections.sort(sorted, new Comparator<Map.Entry<FaveRankerWrapper, Double>>() {
-			@Override
-			public int compare(final Map.Entry<FaveRankerWrapper, Double> o1, final Map.Entry<FaveRankerWrapper, Double> o2) {
-				return (o2.getValue()).compareTo(o1.getValue());
+		HashtagBuildResult.save(results).now();
+		for (final HashtagBuildResult result : results) {
+			DirtyHashtag.clear(result.getHashtag(), result.getStarted());
+			HashtagSchedule.built(result.getHashtag(), result.getStarted());
+			if (result.getCheckpoint() != null) {
+				ofy().delete().entity(result.getCheckpoint()).now();
 			}
-		});
-		return sorted;
+		}
+
 	}
 
-	private double calculateZscore(List<Integer> slidingListCount, int newListCount) {
+	static double calculateZscore(List<Integer> slidingListCount, int newListCount) {
 		int n = slidingListCount.size();
 
 		if (n == 0)
@@ -216,51 +289,4 @@ public class HashtagBuilderServlet extends HttpServlet
 
 		return (newListCount - avg) / std;
 	}
-
-	// Get favelists 1000 at a time, and store their rank, returns number of lists
-	private int addAllLists(String cursor, String hashtag, HashMap<FaveRankerWrapper, Double> users, HashMap<FaveRankerWrapper, Double> critics, List<FaveRankerWrapper> all) {
-		Query<FaveList> query = ofy().load().type(FaveList.class).filter("hashtagId", hashtag).limit(1000);
-
-		if (cursor != null) {
-			query = query.startAt(Cursor.fromWebSafeString(cursor));
-		}
-
-		boolean shouldContinue = false;
-
-		int count = 0;
-		final QueryResultIterator<FaveList> iterator = query.iterator();
-		while (iterator.hasNext()) {
-			count++;
-			final FaveList faveList = iterator.next();
-			// Add up the total rank for each song in the list
-			int i = 1;
-			for (final FaveItem faveItem : faveList.getList()) {
-				final FaveRankerWrapper faveHolder = new FaveRankerWrapper(faveItem);
-				final double score = FaveListDao.calculateItemScore(i);
-
-				// Build a critics only master list if needed
-				if (faveList.getCriticUrl() != null && !faveList.getCriticUrl().isEmpty()) {
-					final double newVal = (critics.get(faveHolder) != null) ? critics.get(faveHolder) + score : score;
-					critics.put(faveHolder, newVal);
-				}
-				// Otherwise just build the user master list
-				else {
-					final double newVal = (users.get(faveHolder) != null) ? users.get(faveHolder) + score : score;
-					users.put(faveHolder, newVal);
-				}
-				all.add(faveHolder);
-				i++;
-			}
-
-			// If we processed the full 1000 limit, grab the next batch of hashtags to process
-			if (count == 1000)
-				shouldContinue = true;
-		}
-
-		// While we still have favelists to process, keep adding their ranks
-		if (shouldContinue) {
-			return addAllLists(iterator.getCursor().toWebSafeString(), hashtag, users, critics, all) + count;
-		}
-		return count;
-	}
 }
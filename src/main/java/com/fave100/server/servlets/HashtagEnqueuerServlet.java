@@ -4,6 +4,18 @@ import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -11,17 +23,37 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.fave100.server.MemcacheManager;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.shared.Constants;
 import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
 import com.googlecode.objectify.cmd.Query;
 
 /**
  * This servlet will periodically be called as a cron job, to add
  * each hashtag to a queue where a master list will be built
  * 
+ * The optional mode parameter is passed through to the builder, so that the
+ * cheap ledger refresh and the full reconciliation build can run on separate schedules
+ * 
+ * Ledger refreshes are scheduled per hashtag: each {@link HashtagSchedule} sets when the
+ * hashtag is next due from its recent activity, and due hashtags are only refreshed if they
+ * were marked as dirty since their last build or haven't been built for longer than the
+ * maximum staleness. Due hashtags are enqueued busiest first, up to a budget per run, and
+ * the rest wait for the next run
+ * 
+ * Several hashtags can be handed to each builder task, so that their results are saved together
+ * 
+ * Hashtags saved before lastBuilt was added are missing it altogether, which no query can find,
+ * so they have to be backfilled once by calling this with the backfill parameter
+ * 
  * @author yissachar.radcliffe
  * 
  */
@@ -30,36 +62,235 @@ public class HashtagEnqueuerServlet extends HttpServlet
 {
 	public static String HASHTAG_ENQUEUER_URL = "/cron/hashtags";
 	public static String CURSOR_PARAM = "cursor";
+	// In minutes
+	public static String MAX_STALENESS_PARAM = "maxStaleness";
+	public static int DEFAULT_MAX_STALENESS = 24 * 60;
+	// The most hashtags refreshed per run, the cron schedule times this should match the queue's rate
+	public static String BUDGET_PARAM = "budget";
+	public static int DEFAULT_BUDGET = 100;
+	// Small hashtags can be grouped into one builder task, which saves all their results in one batch
+	public static String HASHTAGS_PER_TASK_PARAM = "hashtagsPerTask";
+	// Save the hashtags that have never been built instead of enqueueing anything
+	public static String BACKFILL_PARAM = "backfill";
+
+	// The most tasks the queue accepts in a single call
+	private static int TASK_BATCH_SIZE = 100;
 
 	@Override
 	public void doGet(final HttpServletRequest req, final HttpServletResponse res)
 			throws ServletException, IOException {
 
+		if (req.getParameter(BACKFILL_PARAM) != null) {
+			backfillLastBuilt(req, res);
+			return;
+		}
+
+		final String mode = req.getParameter(HashtagBuilderServlet.MODE_PARAM) != null ? req.getParameter(HashtagBuilderServlet.MODE_PARAM) : HashtagBuilderServlet.MODE_LEDGER;
+		final int hashtagsPerTask = req.getParameter(HASHTAGS_PER_TASK_PARAM) != null ? Math.max(1, Integer.parseInt(req.getParameter(HASHTAGS_PER_TASK_PARAM))) : 1;
+		// Full rebuilds are run for every hashtag
+		if (!HashtagBuilderServlet.MODE_LEDGER.equals(mode)) {
+			enqueueAll(req, res, mode, hashtagsPerTask);
+			return;
+		}
+
+		final int maxStaleness = req.getParameter(MAX_STALENESS_PARAM) != null ? Integer.parseInt(req.getParameter(MAX_STALENESS_PARAM)) : DEFAULT_MAX_STALENESS;
+		final int budget = req.getParameter(BUDGET_PARAM) != null ? Integer.parseInt(req.getParameter(BUDGET_PARAM)) : DEFAULT_BUDGET;
+		final Date now = new Date();
+		final Set<String> dirty = new HashSet<>(findDirtyHashtags());
+		final Set<String> stale = new HashSet<>(findStaleHashtags(new Date(now.getTime() - maxStaleness * 60 * 1000L)));
+
+		final Map<String, HashtagSchedule> schedules = findDueSchedules(now, dirty, stale);
+		final Map<String, Long> writes = MemcacheManager.takeHashtagWrites(schedules.keySet());
+		final Map<String, Long> reads = MemcacheManager.takeHashtagReads(schedules.keySet());
+		final Map<String, Hashtag> hashtagEntities = ofy().load().type(Hashtag.class).ids(schedules.keySet());
+
+		final List<HashtagSchedule> candidates = new ArrayList<>();
+		final Map<String, Double> zscores = new HashMap<>();
+		final List<HashtagSchedule> orphans = new ArrayList<>();
+		int unchanged = 0;
+		for (final HashtagSchedule schedule : schedules.values()) {
+			final Hashtag hashtagEntity = hashtagEntities.get(schedule.getId());
+			if (hashtagEntity == null) {
+				orphans.add(schedule);
+				continue;
+			}
+
+			schedule.updateRates(writes.containsKey(schedule.getId()) ? writes.get(schedule.getId()) : 0,
+					reads.containsKey(schedule.getId()) ? reads.get(schedule.getId()) : 0, now);
+			zscores.put(schedule.getId(), hashtagEntity.getZscore());
+			if (dirty.contains(schedule.getId()) || stale.contains(schedule.getId())) {
+				candidates.add(schedule);
+			}
+			else {
+				// Nothing to refresh, look again after another interval
+				schedule.scheduleNext(hashtagEntity.getZscore(), now);
+				unchanged++;
+			}
+		}
+
+		// Busiest and most overdue first, anything over the budget stays due for the next run
+		Collections.sort(candidates, new Comparator<HashtagSchedule>() {
+			@Override
+			public int compare(HashtagSchedule a, HashtagSchedule b) {
+				return Double.compare(b.getPriority(zscores.get(b.getId()), now), a.getPriority(zscores.get(a.getId()), now));
+			}
+		});
+		final List<String> hashtags = new ArrayList<>();
+		for (final HashtagSchedule schedule : candidates.subList(0, Math.min(budget, candidates.size()))) {
+			schedule.enqueued(zscores.get(schedule.getId()), now);
+			hashtags.add(schedule.getId());
+		}
+
+		ofy().save().entities(schedules.values()).now();
+		ofy().delete().entities(orphans).now();
+		enqueue(hashtags, mode, hashtagsPerTask);
+
+		final String stats = "Enqueued " + hashtags.size() + " of " + candidates.size() + " due hashtags, deferred " + (candidates.size() - hashtags.size())
+				+ ", rescheduled " + unchanged + " unchanged";
+		Logger.getAnonymousLogger().log(Level.INFO, stats);
+		res.getWriter().print(stats);
+	}
+
+	// Hashtags whose schedules are due, plus changed or stale hashtags that have never been scheduled, by hashtag
+	static Map<String, HashtagSchedule> findDueSchedules(Date now, Set<String> dirty, Set<String> stale) {
+		final Map<String, HashtagSchedule> schedules = new HashMap<>();
+		for (final HashtagSchedule schedule : ofy().load().type(HashtagSchedule.class).filter("nextBuild <", now)) {
+			schedules.put(schedule.getId(), schedule);
+		}
+
+		final Set<String> unscheduled = new HashSet<>(dirty);
+		unscheduled.addAll(stale);
+		unscheduled.removeAll(schedules.keySet());
+		if (!unscheduled.isEmpty()) {
+			unscheduled.removeAll(ofy().load().type(HashtagSchedule.class).ids(unscheduled).keySet());
+			for (final String hashtag : unscheduled) {
+				schedules.put(hashtag, new HashtagSchedule(hashtag));
+			}
+		}
+		return schedules;
+	}
+
+	// Hashtags whose lists have changed since they were last built
+	static List<String> findDirtyHashtags() {
+		final List<String> hashtags = new ArrayList<>();
+		for (final Key<DirtyHashtag> key : ofy().load().type(DirtyHashtag.class).keys()) {
+			hashtags.add(key.getName());
+		}
+		return hashtags;
+	}
+
+	// Hashtags that haven't been built since the cutoff, including those that have never been built
+	static List<String> findStaleHashtags(Date cutoff) {
+		final List<String> hashtags = new ArrayList<>();
+		// A null lastBuilt is indexed, but an inequality filter only matches dates
+		final List<Key<Hashtag>> keys = new ArrayList<>(ofy().load().type(Hashtag.class).filter("lastBuilt <", cutoff).keys().list());
+		keys.addAll(ofy().load().type(Hashtag.class).filter("lastBuilt", null).keys().list());
+		for (final Key<Hashtag> key : keys) {
+			// Only built from the trending sketches
+			if (!Constants.TRENDING_LIST_NAME.equals(key.getName())) {
+				hashtags.add(key.getName());
+			}
+		}
+		return hashtags;
+	}
+
+	// Save every hashtag without a lastBuilt 1000 at a time, so that those missing it altogether are indexed as never built
+	private void backfillLastBuilt(final HttpServletRequest req, final HttpServletResponse res) throws IOException {
+		Query<Hashtag> query = ofy().load().type(Hashtag.class).limit(1000);
+		final String cursor = req.getParameter(CURSOR_PARAM);
+		if (cursor != null)
+			query = query.startAt(Cursor.fromWebSafeString(cursor));
+
+		int count = 0;
+		int backfilled = 0;
+		final QueryResultIterator<Hashtag> iterator = query.iterator();
+		while (iterator.hasNext()) {
+			count++;
+			final Hashtag hashtag = iterator.next();
+			if (hashtag.getLastBuilt() == null && !Constants.TRENDING_LIST_NAME.equals(hashtag.getId())) {
+				backfilled += backfillLastBuilt(hashtag.getId()) ? 1 : 0;
+			}
+		}
+
+		Logger.getAnonymousLogger().log(Level.INFO, "Backfilled " + backfilled + " of " + count + " hashtags");
+		if (count == 1000) {
+			res.sendRedirect(HASHTAG_ENQUEUER_URL + "?" + BACKFILL_PARAM + "=true&" + CURSOR_PARAM + "=" + iterator.getCursor().toWebSafeString());
+		}
+	}
+
+	// In a transaction, so that a build saved since the page was loaded isn't overwritten
+	private static boolean backfillLastBuilt(final String hashtagId) {
+		return ofy().transact(new Work<Boolean>() {
+			@Override
+			public Boolean run() {
+				final Hashtag hashtag = ofy().load().type(Hashtag.class).id(hashtagId).now();
+				if (hashtag == null || hashtag.getLastBuilt() != null)
+					return false;
+
+				ofy().save().entity(hashtag).now();
+				return true;
+			}
+		});
+	}
+
+	private void enqueue(Collection<String> hashtags, String mode, int hashtagsPerTask) {
+		final Queue queue = QueueFactory.getQueue("hashtag-queue");
+		final List<TaskOptions> tasks = new ArrayList<>();
+		TaskOptions task = null;
+		int taskSize = 0;
+		for (final String hashtag : hashtags) {
+			if (task == null) {
+				task = withUrl(HashtagBuilderServlet.HASHTAG_BUILDER_URL).param(HashtagBuilderServlet.MODE_PARAM, mode);
+				tasks.add(task);
+				taskSize = 0;
+			}
+			task.param(HashtagBuilderServlet.HASHTAG_PARAM, hashtag);
+			taskSize++;
+
+			if (taskSize == hashtagsPerTask) {
+				task = null;
+				if (tasks.size() == TASK_BATCH_SIZE) {
+					queue.add(tasks);
+					tasks.clear();
+				}
+			}
+		}
+		if (!tasks.isEmpty()) {
+			queue.add(tasks);
+		}
+	}
+
+	private void enqueueAll(final HttpServletRequest req, final HttpServletResponse res, String mode, int hashtagsPerTask) throws IOException {
 		// Get hashtags 1000 at a time, and add them to hashtag builder queue
-		final Query<Hashtag> query = ofy().load().type(Hashtag.class).limit(1000);
+		Query<Hashtag> query = ofy().load().type(Hashtag.class).limit(1000);
 		final String cursor = req.getParameter(CURSOR_PARAM);
 		if (cursor != null)
-			query.startAt(Cursor.fromWebSafeString(cursor));
+			query = query.startAt(Cursor.fromWebSafeString(cursor));
 
 		boolean shouldContinue = false;
 
 		int count = 0;
-		MemcacheManager.resetTrendingMin();
+		final List<String> hashtags = new ArrayList<>();
 		final QueryResultIterator<Hashtag> iterator = query.iterator();
 		while (iterator.hasNext()) {
 			count++;
-			final Queue queue = QueueFactory.getQueue("hashtag-queue");
-			queue.add(withUrl(HashtagBuilderServlet.HASHTAG_BUILDER_URL).param(HashtagBuilderServlet.HASHTAG_PARAM, iterator.next().getId()));
-			MemcacheManager.incrementRemainingHashtagCount(1);
+			final String hashtag = iterator.next().getId();
 
 			// If we processed the full 1000 limit, grab the next batch of hashtags to process
 			if (count == 1000)
 				shouldContinue = true;
+
+			// Only built from the trending sketches
+			if (!Constants.TRENDING_LIST_NAME.equals(hashtag))
+				hashtags.add(hashtag);
 		}
 
+		enqueue(hashtags, mode, hashtagsPerTask);
+
 		// While we still have hashtags to process, keep hitting the cron URL with new cursor position
 		if (shouldContinue) {
-			res.sendRedirect(HASHTAG_ENQUEUER_URL + "?" + CURSOR_PARAM + "=" + iterator.getCursor().toWebSafeString());
+			res.sendRedirect(HASHTAG_ENQUEUER_URL + "?" + CURSOR_PARAM + "=" + iterator.getCursor().toWebSafeString()
+					+ "&" + HashtagBuilderServlet.MODE_PARAM + "=" + mode + "&" + HASHTAGS_PER_TASK_PARAM + "=" + hashtagsPerTask);
 		}
 	}
 }
@@ -0,0 +1,148 @@
+package com.fave100.server.servlets;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.domain.favelist.HashtagBuildShard;
+import com.fave100.server.ranking.BuildState;
+import com.fave100.server.ranking.ListSummary;
+import com.fave100.server.ranking.MasterListBuild;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * A streaming pass over the FaveLists of a hashtag in the datastore, read through their
+ * {@link FaveListSummary} a page at a time.
+ *
+ * The lists are built into master lists by the {@link MasterListBuild} this extends, which knows
+ * nothing of the datastore, so the summaries and the saved progress of builds are mapped here.
+ */
+public class HashtagScan extends MasterListBuild {
+
+	public static int PAGE_SIZE = 1000;
+
+	public static Query<FaveListSummary> query(String hashtag) {
+		return ofy().load().type(FaveListSummary.class).filter("hashtagId", hashtag);
+	}
+
+	// Write any summaries of the hashtag's FaveLists that are missing (lists from before summaries existed), and remove orphaned ones
+	public static void ensureSummaries(String hashtag) {
+		// Only keys are needed to find the differences
+		final Set<String> orphans = new HashSet<String>();
+		for (final Key<FaveListSummary> key : query(hashtag).keys()) {
+			orphans.add(key.getName());
+		}
+		final List<String> missing = new ArrayList<String>();
+		for (final Key<FaveList> key : ofy().load().type(FaveList.class).filter("hashtagId", hashtag).keys()) {
+			if (!orphans.remove(key.getName())) {
+				missing.add(key.getName());
+			}
+		}
+
+		if (missing.isEmpty() && orphans.isEmpty())
+			return;
+
+		for (int i = 0; i < missing.size(); i += PAGE_SIZE) {
+			final Map<String, FaveList> faveLists = ofy().load().type(FaveList.class).ids(missing.subList(i, Math.min(i + PAGE_SIZE, missing.size())));
+			ofy().save().entities(FaveListSummary.of(faveLists.values())).now();
+			ofy().clear();
+		}
+		ofy().delete().type(FaveListSummary.class).ids(orphans).now();
+
+		Logger.getAnonymousLogger().log(Level.WARNING, "Wrote " + missing.size() + " missing and removed " + orphans.size() + " orphaned FaveList summaries for hashtag " + hashtag);
+	}
+
+	// Fold every FaveList the query matches into the scan, a page at a time, returns number of lists
+	public int addAll(Query<FaveListSummary> query) {
+		return addAll(query, this);
+	}
+
+	// Fold the page of FaveLists at the cursor (the first page if null) into the scan,
+	// returns the cursor of the next page, or null if this was the last one
+	public String addPage(Query<FaveListSummary> query, String cursor) {
+		return addPage(query, cursor, this);
+	}
+
+	// Fold every FaveList the query matches into the build, a page at a time, returns number of lists
+	public static int addAll(Query<FaveListSummary> query, MasterListBuild build) {
+		final int before = build.getListCount();
+		String cursor = addPage(query, null, build);
+		while (cursor != null) {
+			cursor = addPage(query, cursor, build);
+		}
+		return build.getListCount() - before;
+	}
+
+	public static String addPage(Query<FaveListSummary> query, String cursor, MasterListBuild build) {
+		Query<FaveListSummary> page = query.limit(PAGE_SIZE);
+		if (cursor != null) {
+			page = page.startAt(Cursor.fromWebSafeString(cursor));
+		}
+
+		int pageCount = 0;
+		final QueryResultIterator<FaveListSummary> iterator = page.iterator();
+		while (iterator.hasNext()) {
+			build.addList(toListSummary(iterator.next()));
+			pageCount++;
+		}
+
+		// If we processed the full page, there may be another one
+		final String nextCursor = pageCount == PAGE_SIZE ? iterator.getCursor().toWebSafeString() : null;
+
+		// Don't let the session cache hold on to the lists of every page
+		ofy().clear();
+		return nextCursor;
+	}
+
+	// A scan that carries on from where the checkpointed one stopped
+	public static HashtagScan resume(HashtagBuildCheckpoint checkpoint) {
+		final HashtagScan scan = new HashtagScan();
+		scan.restore(getState(checkpoint));
+		return scan;
+	}
+
+	// Save everything scanned so far into the checkpoint, along with the cursor to resume from
+	public void checkpoint(HashtagBuildCheckpoint checkpoint, String cursor) {
+		final BuildState state = getState();
+		checkpoint.setScores(state.getFaveItems(), state.getUserScores(), state.getCriticScores());
+		checkpoint.setListCount(state.getListCount());
+		checkpoint.setNewest(state.getNewest());
+		checkpoint.setCursor(cursor);
+	}
+
+	// Save everything scanned so far as the result of the shard
+	public void saveTo(HashtagBuildShard shard) {
+		final BuildState state = getState();
+		shard.setScores(state.getFaveItems(), state.getUserScores(), state.getCriticScores());
+		shard.setListCount(state.getListCount());
+		shard.setNewest(state.getNewest());
+	}
+
+	/* Mapping between the entities and the build */
+
+	public static ListSummary toListSummary(FaveListSummary summary) {
+		return new ListSummary(summary.getId(), summary.getHashtagId(), summary.isCritic(), summary.getSongIDs(), summary.getSongs(), summary.getArtists(),
+				summary.getDatesPicked());
+	}
+
+	public static BuildState getState(HashtagBuildCheckpoint checkpoint) {
+		return new BuildState(checkpoint.getFaveItems(), checkpoint.getUserScores(), checkpoint.getCriticScores(), checkpoint.getNewest(),
+				checkpoint.getListCount());
+	}
+
+	public static BuildState getState(HashtagBuildShard shard) {
+		return new BuildState(shard.getFaveItems(), shard.getUserScores(), shard.getCriticScores(), shard.getNewest(), shard.getListCount());
+	}
+}
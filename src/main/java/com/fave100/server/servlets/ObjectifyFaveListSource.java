@@ -0,0 +1,38 @@
+package com.fave100.server.servlets;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.ranking.FaveListSource;
+import com.fave100.server.ranking.MasterListBuild;
+import com.fave100.shared.Constants;
+import com.googlecode.objectify.Key;
+
+/**
+ * Reads the FaveLists of each hashtag from the datastore, through their summaries,
+ * so that a {@link com.fave100.server.ranking.MasterListEngine} can build from live data,
+ * e.g. over the remote API.
+ */
+public class ObjectifyFaveListSource implements FaveListSource {
+
+	@Override
+	public List<String> getHashtags() {
+		final List<String> hashtags = new ArrayList<String>();
+		for (final Key<Hashtag> key : ofy().load().type(Hashtag.class).keys()) {
+			// Only built from the trending sketches
+			if (!Constants.TRENDING_LIST_NAME.equals(key.getName())) {
+				hashtags.add(key.getName());
+			}
+		}
+		return hashtags;
+	}
+
+	@Override
+	public void addLists(String hashtag, MasterListBuild build) {
+		HashtagScan.ensureSummaries(hashtag);
+		HashtagScan.addAll(HashtagScan.query(hashtag), build);
+	}
+}
@@ -0,0 +1,25 @@
+package com.fave100.server.servlets;
+
+import java.util.Date;
+
+import com.fave100.server.ranking.MasterListBuild;
+import com.fave100.server.ranking.MasterListSink;
+
+/**
+ * Saves finished builds to the datastore exactly as a full build of the hashtag builder would,
+ * repairing the score ledger along the way.
+ */
+public class ObjectifyMasterListSink implements MasterListSink {
+
+	private final Date started;
+
+	// Changes made to a hashtag after started leave it marked as dirty
+	public ObjectifyMasterListSink(Date started) {
+		this.started = started;
+	}
+
+	@Override
+	public void save(String hashtag, MasterListBuild build) {
+		HashtagBuilderServlet.saveBuild(hashtag, started, build.getSongs(), build.getUsers(), build.getCritics(), build.getListCount(), build.getNewest());
+	}
+}
@@ -0,0 +1,184 @@
+package com.fave100.server.servlets;
+
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fave100.server.domain.favelist.FaveListSummary;
+import com.fave100.server.domain.favelist.HashtagBuild;
+import com.fave100.server.domain.favelist.HashtagBuildShard;
+import com.fave100.server.ranking.MasterListBuild;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Work;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Builds the master lists of hashtags that are too large to scan in one chain of tasks,
+ * see {@link HashtagBuilderServlet#MAX_SCANNED_LISTS}.
+ *
+ * The FaveListSummary key space of the hashtag is split into cursor ranges, and each range
+ * is scored by its own map task into a {@link HashtagBuildShard}. Once every shard
+ * has reported, a single reduce task merges the partial scores and saves the master
+ * lists exactly like a regular full build would.
+ *
+ * Shard results are keyed by shard index, and the reduce task is named after the build,
+ * so retried tasks never count the same lists twice. Each map task marks its shard finished
+ * on the {@link HashtagBuild} in a transaction, so only the last one has to start the reduce.
+ */
+@SuppressWarnings("serial")
+public class ShardedHashtagBuilderServlet extends HttpServlet
+{
+	public static String SHARDED_BUILDER_URL = "/tasks/hashtags/sharded";
+	public static String PHASE_PARAM = "phase";
+	public static String PHASE_MAP = "map";
+	public static String PHASE_REDUCE = "reduce";
+	public static String BUILD_PARAM = "build";
+	public static String SHARD_PARAM = "shard";
+
+	// Shard size, keeps each map task well within the request deadline and each partial under the entity size limit.
+	// There is no limit on the number of shards, so no map task ever has to score more
+	public static int LISTS_PER_SHARD = 500;
+	// Shards merged between clearing the session cache, so the reduce holds only a few of them at a time
+	public static int SHARDS_PER_BATCH = 20;
+
+	@Override
+	public void doPost(final HttpServletRequest req, final HttpServletResponse res)
+			throws ServletException, IOException {
+
+		final String hashtag = req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM);
+		final long buildId = Long.parseLong(req.getParameter(BUILD_PARAM));
+
+		final HashtagBuild build = ofy().load().type(HashtagBuild.class).id(hashtag).now();
+		// A newer build has replaced this one, or it has already been reduced
+		if (build == null || build.getBuildId() != buildId)
+			return;
+
+		if (PHASE_REDUCE.equals(req.getParameter(PHASE_PARAM))) {
+			reduce(hashtag, build);
+		}
+		else {
+			map(hashtag, build, Integer.parseInt(req.getParameter(SHARD_PARAM)));
+		}
+	}
+
+	// Split the hashtag's FaveLists, as counted by the caller, into cursor ranges and start a map task for each one
+	public static void planShards(String hashtag, int listCount) {
+		final int shardCount = Math.max(1, (listCount + LISTS_PER_SHARD - 1) / LISTS_PER_SHARD);
+		final int listsPerShard = Math.max(1, (listCount + shardCount - 1) / shardCount);
+
+		HashtagScan.ensureSummaries(hashtag);
+		final HashtagBuild build = new HashtagBuild(hashtag);
+		build.getCursors().add("");
+
+		// Only keys are needed to find the shard boundaries
+		final QueryResultIterator<Key<FaveListSummary>> iterator = HashtagScan.query(hashtag).keys().iterator();
+		int count = 0;
+		while (iterator.hasNext() && build.getShardCount() < shardCount) {
+			iterator.next();
+			count++;
+			if (count % listsPerShard == 0 && iterator.hasNext()) {
+				build.getCursors().add(iterator.getCursor().toWebSafeString());
+			}
+		}
+
+		ofy().save().entity(build).now();
+
+		for (int shard = 0; shard < build.getShardCount(); shard++) {
+			addTask(hashtag, build, PHASE_MAP, shard);
+		}
+	}
+
+	private void map(String hashtag, HashtagBuild build, int shard) {
+		Query<FaveListSummary> query = HashtagScan.query(hashtag);
+		if (build.getStartCursor(shard) != null) {
+			query = query.startAt(Cursor.fromWebSafeString(build.getStartCursor(shard)));
+		}
+		if (build.getEndCursor(shard) != null) {
+			query = query.endAt(Cursor.fromWebSafeString(build.getEndCursor(shard)));
+		}
+
+		final HashtagScan scan = new HashtagScan();
+		scan.addAll(query);
+
+		final HashtagBuildShard partial = new HashtagBuildShard(hashtag, shard, build.getBuildId());
+		scan.saveTo(partial);
+		ofy().save().entity(partial).now();
+
+		// The last shard to finish kicks off the reduce
+		if (finishShard(hashtag, build.getBuildId(), shard)) {
+			addTask(hashtag, build, PHASE_REDUCE, -1);
+		}
+	}
+
+	// Record the shard as finished on the build, returns whether every shard now is
+	private static boolean finishShard(final String hashtag, final long buildId, final int shard) {
+		return ofy().transact(new Work<Boolean>() {
+			@Override
+			public Boolean run() {
+				final HashtagBuild build = ofy().load().type(HashtagBuild.class).id(hashtag).now();
+				// A newer build has replaced this one
+				if (build == null || build.getBuildId() != buildId)
+					return false;
+
+				final boolean finished = build.finishShard(shard);
+				ofy().save().entity(build);
+				return finished;
+			}
+		});
+	}
+
+	private void reduce(String hashtag, HashtagBuild build) {
+		final List<String> ids = new ArrayList<>();
+		for (int shard = 0; shard < build.getShardCount(); shard++) {
+			ids.add(HashtagBuildShard.createId(hashtag, shard));
+		}
+
+		// A batch of shards at a time, so the reduce never holds every shard's results at once
+		final MasterListBuild merged = new MasterListBuild();
+		for (int i = 0; i < ids.size(); i += SHARDS_PER_BATCH) {
+			final Map<String, HashtagBuildShard> shards = ofy().load().type(HashtagBuildShard.class).ids(ids.subList(i, Math.min(i + SHARDS_PER_BATCH, ids.size())));
+			for (final HashtagBuildShard shard : shards.values()) {
+				if (shard.getBuildId() == build.getBuildId()) {
+					merged.merge(HashtagScan.getState(shard));
+				}
+			}
+			ofy().clear();
+		}
+
+		HashtagBuilderServlet.saveBuild(hashtag, build.getStarted(), merged.getSongs(), merged.getUsers(), merged.getCritics(), merged.getListCount(),
+				merged.getNewest());
+
+		// Clean up, which also turns any late retries of this build into no-ops
+		ofy().delete().type(HashtagBuildShard.class).ids(ids).now();
+		ofy().delete().entity(build).now();
+	}
+
+	private static void addTask(String hashtag, HashtagBuild build, String phase, int shard) {
+		// Task names can't contain the spaces that list names may have
+		final String taskName = hashtag.replaceAll("[^a-zA-Z0-9]", "_") + "-" + build.getBuildId() + "-" + (PHASE_REDUCE.equals(phase) ? PHASE_REDUCE : PHASE_MAP + shard);
+		try {
+			QueueFactory.getQueue("hashtag-queue").add(withUrl(SHARDED_BUILDER_URL)
+					.taskName(taskName)
+					.param(HashtagBuilderServlet.HASHTAG_PARAM, hashtag)
+					.param(BUILD_PARAM, String.valueOf(build.getBuildId()))
+					.param(PHASE_PARAM, phase)
+					.param(SHARD_PARAM, String.valueOf(shard)));
+		}
+		catch (final TaskAlreadyExistsException e) {
+			// Already enqueued by an earlier attempt
+		}
+	}
+}
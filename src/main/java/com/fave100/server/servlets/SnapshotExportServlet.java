@@ -0,0 +1,178 @@
+package com.fave100.server.servlets;
+
+import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fave100.server.domain.SnapshotChunk;
+import com.fave100.server.domain.SnapshotExport;
+import com.fave100.server.domain.appuser.AppUser;
+import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
+import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.ranking.ListSummary;
+import com.fave100.server.ranking.SnapshotCodec;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskAlreadyExistsException;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import com.googlecode.objectify.cmd.Query;
+
+/**
+ * Exports every FaveList, Hashtag and AppUser into {@link SnapshotChunk}s, which
+ * {@link com.fave100.SnapshotDownloader} copies into a snapshot file for offline builds.
+ *
+ * A GET starts a new export, or with an export parameter resumes one whose task gave up.
+ * Each task encodes the next page of one kind from the cursor saved on the {@link SnapshotExport},
+ * saves it as the next chunk and chains the task for the chunk after it, so only one page is
+ * ever in memory. Tasks are named after the export and the
+ * chunk they write, and a task whose chunk has already been saved does nothing, so retries
+ * and resumes carry on from the last saved chunk.
+ *
+ * Only what builds need is exported: whylines, emails and passwords are left out.
+ */
+@SuppressWarnings("serial")
+public class SnapshotExportServlet extends HttpServlet
+{
+	public static String SNAPSHOT_EXPORT_URL = "/tasks/snapshot";
+	public static String EXPORT_PARAM = "export";
+	public static String CHUNK_PARAM = "chunk";
+
+	// Keeps a FaveList chunk well under the datastore's entity size limit
+	public static int LISTS_PER_CHUNK = 100;
+	public static int ROWS_PER_CHUNK = 1000;
+
+	@Override
+	public void doGet(final HttpServletRequest req, final HttpServletResponse res)
+			throws ServletException, IOException {
+
+		// Carry on with an export whose task gave up, from the chunk after its last saved one
+		if (req.getParameter(EXPORT_PARAM) != null) {
+			final SnapshotExport export = ofy().load().type(SnapshotExport.class).id(Long.parseLong(req.getParameter(EXPORT_PARAM))).now();
+			if (export == null || export.isFinished()) {
+				res.getWriter().println("Nothing to resume");
+				return;
+			}
+			// The task name of the failed chunk can't be reused
+			QueueFactory.getQueue("hashtag-queue").add(taskFor(export));
+			res.getWriter().println("Resumed snapshot export " + export.getId() + " at chunk " + export.getChunkCount());
+			return;
+		}
+
+		final SnapshotExport export = new SnapshotExport(new Date());
+		ofy().save().entity(export).now();
+		addTask(export);
+		res.getWriter().println("Started snapshot export " + export.getId());
+	}
+
+	@Override
+	public void doPost(final HttpServletRequest req, final HttpServletResponse res)
+			throws ServletException, IOException {
+
+		final SnapshotExport export = ofy().load().type(SnapshotExport.class).id(Long.parseLong(req.getParameter(EXPORT_PARAM))).now();
+		// The chunk was already saved by an earlier attempt
+		if (export == null || export.isFinished() || export.getChunkCount() != Integer.parseInt(req.getParameter(CHUNK_PARAM)))
+			return;
+
+		// A kind with nothing left to export moves straight on to the next one
+		while (!export.isFinished() && !exportChunk(export)) {
+			export.nextKind();
+		}
+
+		if (export.isFinished()) {
+			ofy().save().entity(export).now();
+			Logger.getAnonymousLogger().log(Level.INFO, "Snapshot export " + export.getId() + " finished with " + export.getRowCount() + " rows in "
+					+ export.getChunkCount() + " chunks");
+			return;
+		}
+		addTask(export);
+	}
+
+	// Save the next chunk of the export's current kind, or return false if there is nothing left of that kind
+	private static boolean exportChunk(final SnapshotExport export) {
+		final byte kind = export.getKind();
+		final byte[] data;
+		final int rows;
+		final String cursor;
+		if (kind == SnapshotCodec.KIND_FAVELISTS) {
+			final List<ListSummary> faveLists = new ArrayList<>();
+			final QueryResultIterator<FaveList> iterator = page(FaveList.class, export, LISTS_PER_CHUNK);
+			while (iterator.hasNext()) {
+				faveLists.add(HashtagScan.toListSummary(new FaveListSummary(iterator.next())));
+			}
+			rows = faveLists.size();
+			cursor = iterator.getCursor().toWebSafeString();
+			data = rows > 0 ? SnapshotCodec.encodeFaveLists(faveLists) : null;
+		}
+		else if (kind == SnapshotCodec.KIND_HASHTAGS) {
+			final List<SnapshotCodec.HashtagRow> hashtags = new ArrayList<>();
+			final QueryResultIterator<Hashtag> iterator = page(Hashtag.class, export, ROWS_PER_CHUNK);
+			while (iterator.hasNext()) {
+				final Hashtag hashtag = iterator.next();
+				hashtags.add(new SnapshotCodec.HashtagRow(hashtag.getId(), hashtag.getCreatedBy() != null ? hashtag.getCreatedBy().getKey().getName() : "",
+						hashtag.getDateCreated() != null ? hashtag.getDateCreated().getTime() : 0, hashtag.getZscore()));
+			}
+			rows = hashtags.size();
+			cursor = iterator.getCursor().toWebSafeString();
+			data = rows > 0 ? SnapshotCodec.encodeHashtags(hashtags) : null;
+		}
+		else {
+			final List<SnapshotCodec.UserRow> users = new ArrayList<>();
+			final QueryResultIterator<AppUser> iterator = page(AppUser.class, export, ROWS_PER_CHUNK);
+			while (iterator.hasNext()) {
+				final AppUser user = iterator.next();
+				users.add(new SnapshotCodec.UserRow(user.getUsername(), user.getJoinDate() != null ? user.getJoinDate().getTime() : 0, user.isCritic()));
+			}
+			rows = users.size();
+			cursor = iterator.getCursor().toWebSafeString();
+			data = rows > 0 ? SnapshotCodec.encodeUsers(users) : null;
+		}
+
+		if (rows == 0)
+			return false;
+
+		ofy().save().entity(new SnapshotChunk(export.getId(), export.getChunkCount(), kind, data)).now();
+		export.chunkSaved(rows, cursor);
+		// A short page was the last of its kind, which saves a task that would find nothing
+		if (rows < (kind == SnapshotCodec.KIND_FAVELISTS ? LISTS_PER_CHUNK : ROWS_PER_CHUNK)) {
+			export.nextKind();
+		}
+		ofy().save().entity(export).now();
+		return true;
+	}
+
+	private static <T> QueryResultIterator<T> page(final Class<T> type, final SnapshotExport export, final int limit) {
+		Query<T> query = ofy().load().type(type).limit(limit);
+		if (export.getCursor() != null) {
+			query = query.startAt(Cursor.fromWebSafeString(export.getCursor()));
+		}
+		return query.iterator();
+	}
+
+	private static void addTask(final SnapshotExport export) {
+		try {
+			QueueFactory.getQueue("hashtag-queue").add(taskFor(export).taskName("snapshot-" + export.getId() + "-" + export.getChunkCount()));
+		}
+		catch (final TaskAlreadyExistsException e) {
+			// Already enqueued by an earlier attempt
+		}
+	}
+
+	private static TaskOptions taskFor(final SnapshotExport export) {
+		return withUrl(SNAPSHOT_EXPORT_URL)
+				.param(EXPORT_PARAM, String.valueOf(export.getId()))
+				.param(CHUNK_PARAM, String.valueOf(export.getChunkCount()));
+	}
+}
@@ -0,0 +1,168 @@
+package com.fave100.server.servlets;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.TrendingSnapshot;
+import com.fave100.shared.Constants;
+import com.google.appengine.api.taskqueue.Queue;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskHandle;
+import com.google.appengine.api.taskqueue.TaskOptions;
+
+/**
+ * Keeps the trending songs of every hashtag, and of all hashtags together, up to date.
+ *
+ * Every pick is put on the trending pull queue as it is made. This runs as a cron job,
+ * leasing the queued picks a batch at a time and folding them into the {@link TrendingSnapshot}
+ * of their hashtag and the global one, and finally sets the global top songs as the trending list.
+ * Picks are only removed from the queue once the snapshots they were folded into are saved, so
+ * none are lost if a run fails part way, though a pick folded by a failed run may be counted twice.
+ *
+ * Snapshots are read, changed and written back, so runs must not overlap: a run only starts if it
+ * can take the fold lease, and stops leasing picks well before the fold lease expires.
+ */
+@SuppressWarnings("serial")
+public class TrendingSketchServlet extends HttpServlet
+{
+	public static String TRENDING_SKETCH_URL = "/cron/trending";
+	public static String HASHTAG_PARAM = "hashtag";
+	public static String SONG_ID_PARAM = "songID";
+	public static String SONG_PARAM = "song";
+	public static String ARTIST_PARAM = "artist";
+	public static String DATE_PICKED_PARAM = "datePicked";
+
+	public static String PICKS_QUEUE = "trending-picks";
+	// The most tasks that can be leased at once
+	public static int PICKS_PER_LEASE = 1000;
+	public static long LEASE_SECONDS = 120;
+	public static String FOLD_LEASE = "trending-fold";
+	public static long RUN_BUDGET_MILLIS = 60 * 1000;
+
+	@Override
+	public void doGet(final HttpServletRequest req, final HttpServletResponse res)
+			throws ServletException, IOException {
+
+		if (!MemcacheManager.takeLease(FOLD_LEASE, LEASE_SECONDS)) {
+			res.getWriter().println("Trending picks are already being folded");
+			return;
+		}
+		try {
+			final long deadline = new Date().getTime() + RUN_BUDGET_MILLIS;
+			final Queue queue = QueueFactory.getQueue(PICKS_QUEUE);
+			int picks = 0;
+			TrendingSnapshot global = null;
+			while (new Date().getTime() < deadline) {
+				final List<TaskHandle> tasks = queue.leaseTasks(LEASE_SECONDS, TimeUnit.SECONDS, PICKS_PER_LEASE);
+				if (tasks.isEmpty())
+					break;
+
+				global = fold(tasks);
+				queue.deleteTask(tasks);
+				picks += tasks.size();
+			}
+
+			if (global != null) {
+				final Hashtag trendingHashtag = new Hashtag(Constants.TRENDING_LIST_NAME, "Fave100");
+				trendingHashtag.setList(global.getTop());
+				trendingHashtag.setLastBuilt(global.getUpdated());
+				ofy().save().entity(trendingHashtag).now();
+			}
+			Logger.getAnonymousLogger().log(Level.INFO, "Folded " + picks + " picks into the trending sketches");
+			res.getWriter().println("Folded " + picks + " picks");
+		}
+		finally {
+			MemcacheManager.releaseLease(FOLD_LEASE);
+		}
+	}
+
+	// Queue a pick to be folded into the trending sketches
+	public static void recordPick(final String hashtag, final FaveItem pick) {
+		QueueFactory.getQueue(PICKS_QUEUE).add(TaskOptions.Builder.withMethod(TaskOptions.Method.PULL)
+				.param(HASHTAG_PARAM, hashtag.toLowerCase())
+				.param(SONG_ID_PARAM, pick.getSongID())
+				.param(SONG_PARAM, pick.getSong())
+				.param(ARTIST_PARAM, pick.getArtist())
+				.param(DATE_PICKED_PARAM, String.valueOf(pick.getDatePicked().getTime())));
+	}
+
+	// Fold a batch of picks into their snapshots and save them, returns the global snapshot
+	private static TrendingSnapshot fold(final List<TaskHandle> tasks) {
+		final Map<String, List<FaveItem>> picks = new HashMap<>();
+		for (final TaskHandle task : tasks) {
+			final Map<String, String> params = params(task);
+			if (params == null)
+				continue;
+
+			final FaveItem pick = new FaveItem(params.get(SONG_PARAM), params.get(ARTIST_PARAM), params.get(SONG_ID_PARAM));
+			pick.setDatePicked(new Date(Long.parseLong(params.get(DATE_PICKED_PARAM))));
+			List<FaveItem> hashtagPicks = picks.get(params.get(HASHTAG_PARAM));
+			if (hashtagPicks == null) {
+				hashtagPicks = new ArrayList<>();
+				picks.put(params.get(HASHTAG_PARAM), hashtagPicks);
+			}
+			hashtagPicks.add(pick);
+		}
+
+		final Set<String> ids = new HashSet<>(picks.keySet());
+		ids.add(Constants.TRENDING_LIST_NAME);
+		final Map<String, TrendingSnapshot> snapshots = new HashMap<>(ofy().load().type(TrendingSnapshot.class).ids(ids));
+		final Date now = new Date();
+		for (final String id : ids) {
+			if (!snapshots.containsKey(id)) {
+				snapshots.put(id, new TrendingSnapshot(id, now));
+			}
+		}
+
+		final TrendingSnapshot global = snapshots.get(Constants.TRENDING_LIST_NAME);
+		for (final Map.Entry<String, List<FaveItem>> entry : picks.entrySet()) {
+			final TrendingSnapshot snapshot = snapshots.get(entry.getKey());
+			for (final FaveItem pick : entry.getValue()) {
+				// Picks of the trending list itself would be counted twice
+				if (snapshot != global) {
+					snapshot.add(pick);
+				}
+				global.add(pick);
+			}
+		}
+		for (final TrendingSnapshot snapshot : snapshots.values()) {
+			snapshot.refreshTop(now);
+		}
+		ofy().save().entities(snapshots.values()).now();
+		return global;
+	}
+
+	private static Map<String, String> params(final TaskHandle task) {
+		try {
+			final Map<String, String> params = new HashMap<>();
+			for (final Map.Entry<String, String> param : task.extractParams()) {
+				params.put(param.getKey(), param.getValue());
+			}
+			return params;
+		}
+		catch (final UnsupportedEncodingException | UnsupportedOperationException e) {
+			Logger.getAnonymousLogger().log(Level.WARNING, "Dropping unreadable trending pick " + task.getName(), e);
+			return null;
+		}
+	}
+}
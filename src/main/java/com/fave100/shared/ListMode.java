@@ -5,5 +5,6 @@ public class ListMode {
 	public final static String USERS = "users";
 	public final static String CRITICS = "critics";
 	public final static String NEWEST = "newest";
+	public final static String TRENDING = "trending";
 
 }
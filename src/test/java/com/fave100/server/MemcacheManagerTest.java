@@ -0,0 +1,142 @@
+package com.fave100.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.fave100.server.api.ApiTest;
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.shared.Constants;
+import com.google.apphosting.api.ApiProxy;
+
+public class MemcacheManagerTest extends ApiTest {
+
+	private static final int WRITERS = 8;
+
+	@Test
+	public void hashtag_reads_should_be_counted_without_waiting_on_memcache() {
+		for (int i = 0; i < 3; i++) {
+			MemcacheManager.countHashtagRead("Rock");
+		}
+
+		assertThat(MemcacheManager.takeHashtagReads(Collections.singletonList("rock"))).containsEntry("rock", 3L);
+		assertThat(MemcacheManager.takeHashtagReads(Collections.singletonList("rock"))).containsEntry("rock", 0L);
+	}
+
+	@Test
+	public void newest_songs_should_be_empty_before_any_pick() {
+		assertThat(MemcacheManager.getNewestSongs("empty")).isEmpty();
+	}
+
+	@Test
+	public void newest_songs_should_keep_the_newest_picks_newest_first() {
+		for (int i = 0; i < Constants.MAX_ITEMS_PER_LIST + 50; i++) {
+			MemcacheManager.addNewSong("rock", pick("song" + i));
+		}
+
+		List<FaveItem> newest = MemcacheManager.getNewestSongs("rock");
+		assertThat(newest).hasSize(Constants.MAX_ITEMS_PER_LIST);
+		assertThat(newest.get(0).getSongID()).isEqualTo("song" + (Constants.MAX_ITEMS_PER_LIST + 49));
+		assertThat(newest.get(newest.size() - 1).getSongID()).isEqualTo("song50");
+	}
+
+	@Test
+	public void newest_songs_should_continue_from_a_reset_ring() {
+		for (int i = 0; i < 30; i++) {
+			MemcacheManager.addNewSong("rock", pick("old" + i));
+		}
+		List<FaveItem> built = new ArrayList<FaveItem>();
+		built.add(pick("built0"));
+		built.add(pick("built1"));
+		MemcacheManager.setNewestSongs("rock", built);
+		MemcacheManager.addNewSong("rock", pick("new"));
+
+		assertThat(MemcacheManager.getNewestSongs("rock")).extracting("songID").containsExactly("new", "built1", "built0");
+	}
+
+	@Test
+	public void parallel_adds_should_not_lose_picks() throws Exception {
+		// Fewer picks than fit in the ring, so every one of them must be kept
+		Set<String> picked = addInParallel("rock", Constants.MAX_ITEMS_PER_LIST / WRITERS);
+
+		List<FaveItem> newest = MemcacheManager.getNewestSongs("rock");
+		assertThat(newest).hasSize(picked.size());
+		assertThat(newest).extracting("songID").containsOnlyElementsOf(picked);
+	}
+
+	@Test
+	public void parallel_adds_should_fill_the_ring_with_each_writers_latest_picks() throws Exception {
+		int picksPerWriter = Constants.MAX_ITEMS_PER_LIST;
+		addInParallel("rock", picksPerWriter);
+
+		List<FaveItem> newest = MemcacheManager.getNewestSongs("rock");
+		assertThat(newest).hasSize(Constants.MAX_ITEMS_PER_LIST);
+
+		// Each writer's picks must come back newest first, with none missing from the middle
+		for (int writer = 0; writer < WRITERS; writer++) {
+			List<Integer> picks = new ArrayList<Integer>();
+			for (FaveItem faveItem : newest) {
+				if (faveItem.getSongID().startsWith(writer + "-")) {
+					picks.add(Integer.parseInt(faveItem.getSongID().substring(faveItem.getSongID().indexOf('-') + 1)));
+				}
+			}
+			for (int i = 0; i < picks.size(); i++) {
+				assertThat(picks.get(i)).isEqualTo(picksPerWriter - 1 - i);
+			}
+		}
+	}
+
+	// Add picks to the list from several threads at once, returns the ids of every song picked
+	private static Set<String> addInParallel(final String list, final int picksPerWriter) throws Exception {
+		final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+		try {
+			List<Future<?>> writers = new ArrayList<Future<?>>();
+			for (int i = 0; i < WRITERS; i++) {
+				final int writer = i;
+				writers.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						ApiProxy.setEnvironmentForCurrentThread(environment);
+						start.await();
+						for (int pick = 0; pick < picksPerWriter; pick++) {
+							MemcacheManager.addNewSong(list, pick(writer + "-" + pick));
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> writer : writers) {
+				writer.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		Set<String> picked = new HashSet<String>();
+		for (int writer = 0; writer < WRITERS; writer++) {
+			for (int pick = 0; pick < picksPerWriter; pick++) {
+				picked.add(writer + "-" + pick);
+			}
+		}
+		return picked;
+	}
+
+	private static FaveItem pick(String songID) {
+		return new FaveItem("Song " + songID, "Artist", songID);
+	}
+}
@@ -3,8 +3,12 @@ package com.fave100.server.api;
 import org.junit.After;
 import org.junit.Before;
 
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.cache.LocalCaches;
 import com.fave100.server.domain.APIKey;
 import com.fave100.server.domain.FeaturedLists;
+import com.fave100.server.domain.SnapshotChunk;
+import com.fave100.server.domain.SnapshotExport;
 import com.fave100.server.domain.Song;
 import com.fave100.server.domain.Whyline;
 import com.fave100.server.domain.appuser.AppUser;
@@ -14,11 +18,19 @@ import com.fave100.server.domain.appuser.Following;
 import com.fave100.server.domain.appuser.GoogleID;
 import com.fave100.server.domain.appuser.PwdResetToken;
 import com.fave100.server.domain.appuser.TwitterID;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.domain.favelist.Hashtag;
-import com.fave100.server.domain.favelist.TrendingList;
+import com.fave100.server.domain.favelist.HashtagBuild;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.domain.favelist.HashtagBuildShard;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.server.domain.favelist.HashtagScore;
+import com.fave100.server.domain.favelist.TrendingSnapshot;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
 import com.googlecode.objectify.ObjectifyFilter;
 import com.googlecode.objectify.ObjectifyService;
 
@@ -38,11 +50,22 @@ public abstract class ApiTest {
 		ObjectifyService.register(PwdResetToken.class);
 		ObjectifyService.register(Hashtag.class);
 		ObjectifyService.register(FeaturedLists.class);
-		ObjectifyService.register(TrendingList.class);
+		ObjectifyService.register(HashtagScore.class);
+		ObjectifyService.register(HashtagBuild.class);
+		ObjectifyService.register(HashtagBuildShard.class);
+		ObjectifyService.register(HashtagBuildCheckpoint.class);
+		ObjectifyService.register(FaveListSummary.class);
+		ObjectifyService.register(DirtyHashtag.class);
+		ObjectifyService.register(HashtagSchedule.class);
+		ObjectifyService.register(TrendingSnapshot.class);
+		ObjectifyService.register(SnapshotExport.class);
+		ObjectifyService.register(SnapshotChunk.class);
 	}
 
 	private final LocalDatastoreServiceTestConfig config = new LocalDatastoreServiceTestConfig().setDefaultHighRepJobPolicyUnappliedJobPercentage(100);
-	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(config);
+	// Builds can start the trending aggregation on the hashtag queue
+	private final LocalTaskQueueTestConfig taskQueueConfig = new LocalTaskQueueTestConfig().setQueueXmlPath("src/main/webapp/WEB-INF/queue.xml").setDisableAutoTaskExecution(true);
+	private final LocalServiceTestHelper helper = new LocalServiceTestHelper(config, taskQueueConfig);
 
 	@Before
 	public void setUp() {
@@ -50,8 +73,12 @@ public abstract class ApiTest {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		ObjectifyFilter.complete();
+		// The local caches outlive the services they cache
+		LocalCaches.clearAll();
+		// Along with the reads counted on the heap, which would otherwise turn up in the next test
+		MemcacheManager.flushHashtagReads().get();
 		helper.tearDown();
 	}
 
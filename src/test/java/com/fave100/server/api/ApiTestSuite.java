@@ -6,7 +6,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({SongApiTest.class, AuthApiTest.class, FaveListsApiTest.class, SearchApiTest.class, UsersApiTest.class,
-				UserApiTest.class, TrendingApiTest.class, AdminTest.class})
+				UserApiTest.class, TrendingApiTest.class, AdminTest.class, CacheFilterFactoryTest.class})
 public class ApiTestSuite {
 
 }
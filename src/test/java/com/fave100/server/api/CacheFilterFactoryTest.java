@@ -0,0 +1,114 @@
+package com.fave100.server.api;
+
+import static com.googlecode.objectify.ObjectifyService.ofy;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.mock;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+
+import org.junit.Test;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.sun.jersey.api.model.AbstractMethod;
+import com.sun.jersey.api.model.AbstractResource;
+import com.sun.jersey.api.model.AbstractSubResourceMethod;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.server.impl.modelapi.annotation.IntrospectionModeller;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ResourceFilter;
+import com.sun.jersey.spi.container.WebApplication;
+
+public class CacheFilterFactoryTest extends ApiTest {
+
+	@Test
+	public void cache_filter_should_keep_built_lists_until_their_next_build() {
+		Date enqueued = new Date();
+		HashtagSchedule schedule = new HashtagSchedule("rock");
+		schedule.enqueued(0, enqueued);
+		ofy().save().entity(schedule).now();
+		HashtagSchedule.built("rock", enqueued);
+
+		ContainerRequest request = filterRequest("favelists/list/rock?mode=users", new InBoundHeaders());
+
+		// A dormant hashtag is built once a day
+		String cacheControl = (String)request.getProperties().get(CacheFilterFactory.CACHE_CONTROL_PROPERTY);
+		assertThat(cacheControl).startsWith("public, max-age=60, s-maxage=").endsWith(", stale-while-revalidate=300");
+		long sharedMaxAge = Long.parseLong(cacheControl.replaceAll(".*s-maxage=(\\d+).*", "$1"));
+		assertThat(sharedMaxAge).isBetween(HashtagSchedule.MAX_INTERVAL_MILLIS / 1000 - 60, HashtagSchedule.MAX_INTERVAL_MILLIS / 1000);
+	}
+
+	@Test
+	public void cache_filter_should_keep_lists_no_longer_than_browsers_until_their_build_is_saved() {
+		HashtagSchedule schedule = new HashtagSchedule("rock");
+		schedule.enqueued(0, new Date());
+		ofy().save().entity(schedule).now();
+
+		ContainerRequest request = filterRequest("favelists/list/rock?mode=users", new InBoundHeaders());
+
+		assertThat(request.getProperties().get(CacheFilterFactory.CACHE_CONTROL_PROPERTY))
+				.isEqualTo("public, max-age=60, s-maxage=60, stale-while-revalidate=300");
+	}
+
+	@Test
+	public void cache_filter_should_not_keep_overdue_lists_in_shared_caches() {
+		ContainerRequest request = filterRequest("favelists/list/unscheduled?mode=users", new InBoundHeaders());
+
+		assertThat(request.getProperties().get(CacheFilterFactory.CACHE_CONTROL_PROPERTY))
+				.isEqualTo("public, max-age=0, s-maxage=0, stale-while-revalidate=300");
+	}
+
+	@Test
+	public void cache_filter_should_answer_a_current_tag_with_not_modified() throws Exception {
+		long version = MemcacheManager.getCacheVersion(LocalCaches.MASTER_LIST_STAMP, "rock");
+		InBoundHeaders headers = new InBoundHeaders();
+		headers.putSingle(HttpHeaders.IF_NONE_MATCH, "\"" + LocalCaches.MASTER_LIST_STAMP + "-" + version + "-gzip\"");
+		// A client that no longer takes gzip can't be sent back to its gzipped copy
+		headers.putSingle(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0");
+		assertThat(filterRequest("favelists/list/rock?mode=users", headers)).isNotNull();
+		headers.putSingle(HttpHeaders.ACCEPT_ENCODING, "gzip");
+
+		try {
+			filterRequest("favelists/list/rock?mode=users", headers);
+			fail("Expected a 304");
+		}
+		catch (WebApplicationException e) {
+			assertThat(e.getResponse().getStatus()).isEqualTo(304);
+			assertThat(e.getResponse().getMetadata().getFirst(HttpHeaders.CACHE_CONTROL).toString()).startsWith("public");
+		}
+
+		// Until the list is built again
+		MemcacheManager.bumpCacheVersions(LocalCaches.MASTER_LIST_STAMP, Collections.singletonList("rock")).get();
+		assertThat(filterRequest("favelists/list/rock?mode=users", headers)).isNotNull();
+	}
+
+	// Run the request filters of the master list endpoint over a request for the path
+	private static ContainerRequest filterRequest(String path, InBoundHeaders headers) {
+		ContainerRequest request = new ContainerRequest(mock(WebApplication.class), "GET", URI.create("http://localhost/api/"),
+				URI.create("http://localhost/api/" + path), headers, null);
+		for (ResourceFilter filter : new CacheFilterFactory().create(masterListMethod())) {
+			if (filter.getRequestFilter() != null) {
+				request = filter.getRequestFilter().filter(request);
+			}
+		}
+		return request;
+	}
+
+	private static AbstractMethod masterListMethod() {
+		AbstractResource resource = IntrospectionModeller.createResource(FaveListsApi.class);
+		List<AbstractSubResourceMethod> methods = resource.getSubResourceMethods();
+		for (AbstractSubResourceMethod method : methods) {
+			if (method.getMethod().getName().equals("getRenderedMasterFaveList"))
+				return method;
+		}
+		throw new IllegalStateException("No master list method");
+	}
+}
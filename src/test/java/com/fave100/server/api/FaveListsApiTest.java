@@ -2,29 +2,75 @@ package com.fave100.server.api;
 
 import static com.googlecode.objectify.ObjectifyService.ofy;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.offset;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fave100.server.MemcacheManager;
 import com.fave100.server.TestHelper;
+import com.fave100.server.cache.LocalCaches;
+import com.fave100.server.domain.SnapshotChunk;
+import com.fave100.server.domain.SnapshotExport;
 import com.fave100.server.domain.StringResult;
 import com.fave100.server.domain.UserRegistration;
 import com.fave100.server.domain.appuser.AppUser;
+import com.fave100.server.domain.favelist.DirtyHashtag;
 import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.FaveListDao;
+import com.fave100.server.domain.favelist.FaveListSummary;
 import com.fave100.server.domain.favelist.Hashtag;
+import com.fave100.server.domain.favelist.HashtagBuild;
+import com.fave100.server.domain.favelist.HashtagBuildCheckpoint;
+import com.fave100.server.domain.favelist.HashtagBuildShard;
+import com.fave100.server.domain.favelist.HashtagSchedule;
+import com.fave100.server.domain.favelist.HashtagScore;
+import com.fave100.server.domain.favelist.ScoreLedger;
+import com.fave100.server.domain.favelist.TrendingSnapshot;
+import com.fave100.server.ranking.MasterListBuild;
+import com.fave100.server.ranking.SnapshotFaveListSource;
+import com.fave100.server.ranking.SnapshotWriter;
 import com.fave100.server.servlets.HashtagBuilderServlet;
+import com.fave100.server.servlets.HashtagEnqueuerServlet;
+import com.fave100.server.servlets.HashtagScan;
+import com.fave100.server.servlets.ShardedHashtagBuilderServlet;
+import com.fave100.server.servlets.SnapshotExportServlet;
+import com.fave100.server.servlets.TrendingSketchServlet;
+import com.fave100.shared.Constants;
 import com.fave100.shared.ListMode;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.taskqueue.dev.QueueStateInfo.TaskStateInfo;
+import com.google.appengine.tools.development.testing.LocalTaskQueueTestConfig;
+import com.google.apphosting.api.ApiProxy;
 
 public class FaveListsApiTest extends ApiTest {
 
@@ -55,6 +101,463 @@ public class FaveListsApiTest extends ApiTest {
 		assertThat(faveItems).extracting("songID").contains(songId);
 	}
 
+	@Test
+	public void favelists_api_should_build_master_list_from_ledger() throws ServletException, IOException {
+		String listName = "ledgered";
+		Hashtag hashtag = new Hashtag(listName, "tallyman");
+		FaveList faveList = new FaveList("tallyman", listName);
+		faveList.getList().add(new FaveItem("Second", "Place", "second"));
+		faveList.getList().add(new FaveItem("First", "Place", "first"));
+		ofy().save().entities(hashtag, faveList).now();
+		ScoreLedger.recordChange(faveList, new ArrayList<FaveItem>());
+
+		// Move the second song to the top
+		List<FaveItem> before = new ArrayList<>(faveList.getList());
+		faveList.getList().add(0, faveList.getList().remove(1));
+		ScoreLedger.recordChange(faveList, before);
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+		List<FaveItem> faveItems = FaveListsApi.getMasterFaveList(listName, ListMode.USERS).getItems();
+		assertThat(faveItems).extracting("songID").containsExactly("first", "second");
+		// Master list items stand for every pick of their song, so they don't carry a date picked
+		assertThat(faveItems).extracting("datePicked").containsOnly((Object)null);
+		assertThat(FaveListsApi.getMasterFaveList(listName, ListMode.NEWEST).getItems()).extracting("datePicked").doesNotContainNull();
+	}
+
+	@Test
+	public void favelists_api_should_fully_build_hashtags_from_before_the_ledger() throws ServletException, IOException {
+		String listName = "vintage";
+		Hashtag hashtag = new Hashtag(listName, "oldtimer");
+		// Saved before there was a ledger, so none of its picks are in it
+		hashtag.setLedgerReconciled(null);
+		FaveList faveList = new FaveList("oldtimer", listName);
+		faveList.getList().add(new FaveItem("Oldie", "Band", "oldie"));
+		ofy().save().entities(hashtag, faveList, new FaveListSummary(faveList)).now();
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+		ofy().clear();
+
+		assertThat(ofy().load().type(Hashtag.class).id(listName).now().getLedgerReconciled()).isNotNull();
+		assertThat(FaveListsApi.getMasterFaveList(listName, ListMode.USERS).getItems()).extracting("songID").containsExactly("oldie");
+
+		// Now the ledger has been filled, refreshes come from it
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+		ofy().clear();
+		assertThat(ofy().load().type(Hashtag.class).id(listName).now().getList()).extracting("songID").containsExactly("oldie");
+	}
+
+	@Test
+	public void favelists_api_should_count_every_concurrent_ledger_change() throws Exception {
+		final String listName = "contested";
+		final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Future<?>> picks = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			picks.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					ApiProxy.setEnvironmentForCurrentThread(environment);
+					ScoreLedger.recordChange(listName, false, new ArrayList<FaveItem>(), Arrays.asList(new FaveItem("Hot", "Pick", "hot")));
+					return null;
+				}
+			}));
+		}
+		for (Future<?> pick : picks) {
+			pick.get();
+		}
+		executor.shutdown();
+
+		HashtagScore score = ofy().load().type(HashtagScore.class).id(ScoreLedger.createId(listName, "hot")).now();
+		assertThat(score.getUserScore()).isEqualTo(8 * FaveListDao.calculateItemScore(1), offset(ScoreLedger.EPSILON));
+	}
+
+	@Test
+	public void favelists_api_should_repair_ledger_drift_when_reconciling() throws ServletException, IOException {
+		String listName = "drifty";
+		Hashtag hashtag = new Hashtag(listName, "driftwood");
+		FaveList faveList = new FaveList("driftwood", listName);
+		faveList.getList().add(new FaveItem("Not", "Ledgered", "missing"));
+		ofy().save().entities(hashtag, faveList).now();
+
+		// A stale ledger row for a song no longer in any list
+		ScoreLedger.recordChange(listName, false, new ArrayList<FaveItem>(), Arrays.asList(new FaveItem("Gone", "Away", "stale")));
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+		when(req.getParameter(HashtagBuilderServlet.MODE_PARAM)).thenReturn(HashtagBuilderServlet.MODE_RECONCILE);
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+		assertThat(ScoreLedger.getTopItems(listName, false, 100)).extracting("songID").containsExactly("missing");
+	}
+
+	@Test
+	public void favelists_api_should_rewrite_list_summaries_when_reconciling() throws ServletException, IOException {
+		String listName = "summarized";
+		Hashtag hashtag = new Hashtag(listName, "summer");
+		FaveList faveList = new FaveList("summer", listName);
+		faveList.getList().add(new FaveItem("No", "Summary", "unsummarized"));
+		// A summary left behind by a list that no longer exists
+		FaveList deletedList = new FaveList("winter", listName);
+		deletedList.getList().add(new FaveItem("Deleted", "List", "orphaned"));
+		ofy().save().entities(hashtag, faveList, new FaveListSummary(deletedList)).now();
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+		when(req.getParameter(HashtagBuilderServlet.MODE_PARAM)).thenReturn(HashtagBuilderServlet.MODE_RECONCILE);
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+		assertThat(ofy().load().type(FaveListSummary.class).list()).extracting("id").containsExactly(faveList.getId());
+		assertThat(ofy().load().type(Hashtag.class).id(listName).now().getList()).extracting("songID").containsExactly("unsummarized");
+	}
+
+	@Test
+	public void favelists_api_should_mark_changed_hashtags_dirty_until_built() throws ServletException, IOException {
+		HttpServletRequest req = TestHelper.newReq();
+		AppUser user = AuthApi.createAppUser(req, new UserRegistration("changer", "great-security", "changer@gmail.com"));
+
+		String listName = "changing";
+		UserApi.addFaveListForCurrentUser(user, listName);
+		FaveList faveList = FaveListDao.findFaveList("changer", listName);
+		faveList.getList().add(new FaveItem("First", "Song", "first"));
+		faveList.getList().add(new FaveItem("Second", "Song", "second"));
+		ofy().save().entity(faveList).now();
+		assertThat(ofy().load().type(DirtyHashtag.class).id(listName).now()).isNull();
+
+		UserApi.rerankFaveItemForCurrentUser(user, listName, "second", 0);
+		assertThat(ofy().load().type(DirtyHashtag.class).id(listName).now()).isNotNull();
+
+		when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+		assertThat(ofy().load().type(DirtyHashtag.class).id(listName).now()).isNull();
+		assertThat(ofy().load().type(Hashtag.class).id(listName).now().getLastBuilt()).isNotNull();
+	}
+
+	@Test
+	public void favelists_api_should_refresh_hashtags_that_have_never_been_built() throws ServletException, IOException {
+		ofy().save().entity(new Hashtag("unbuilt", "newcomer")).now();
+		// A hashtag saved before lastBuilt was added
+		DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+		Entity legacy = new Entity("Hashtag", "legacy");
+		legacy.setProperty("name", "legacy");
+		datastore.put(legacy);
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagEnqueuerServlet.BACKFILL_PARAM)).thenReturn("true");
+		new HashtagEnqueuerServlet().doGet(req, mock(HttpServletResponse.class));
+
+		HttpServletResponse res = mock(HttpServletResponse.class);
+		when(res.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+		new HashtagEnqueuerServlet().doGet(TestHelper.newReq(), res);
+
+		assertThat(ofy().load().type(HashtagSchedule.class).ids("unbuilt", "legacy")).containsOnlyKeys("unbuilt", "legacy");
+	}
+
+	@Test
+	public void favelists_api_should_build_a_group_of_hashtags_in_one_task() throws ServletException, IOException {
+		for (String listName : Arrays.asList("grouped", "together")) {
+			FaveList faveList = new FaveList("grouper", listName);
+			faveList.getList().add(new FaveItem("Same", "Task", listName + "Song"));
+			ofy().save().entities(new Hashtag(listName, "grouper"), faveList).now();
+			ScoreLedger.recordChange(faveList, new ArrayList<FaveItem>());
+		}
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameterValues(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(new String[] { "grouped", "together" });
+		new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+		assertThat(FaveListsApi.getMasterFaveList("grouped", ListMode.USERS).getItems()).extracting("songID").containsExactly("groupedSong");
+		assertThat(FaveListsApi.getMasterFaveList("together", ListMode.USERS).getItems()).extracting("songID").containsExactly("togetherSong");
+	}
+
+	@Test
+	public void favelists_api_should_refresh_busiest_hashtags_first_within_budget() throws ServletException, IOException {
+		ofy().save().entities(new Hashtag("busy", "bee"), new Hashtag("quiet", "mouse")).now();
+		for (int i = 0; i < 10; i++) {
+			DirtyHashtag.mark("busy");
+		}
+		DirtyHashtag.mark("quiet");
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getParameter(HashtagEnqueuerServlet.BUDGET_PARAM)).thenReturn("1");
+		HttpServletResponse res = mock(HttpServletResponse.class);
+		when(res.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+		new HashtagEnqueuerServlet().doGet(req, res);
+		Date after = new Date();
+
+		HashtagSchedule busy = ofy().load().type(HashtagSchedule.class).id("busy").now();
+		HashtagSchedule quiet = ofy().load().type(HashtagSchedule.class).id("quiet").now();
+		assertThat(busy.getWriteRate()).isGreaterThan(quiet.getWriteRate());
+		// Only the busy hashtag fit in the budget, the quiet one is still due
+		assertThat(busy.getNextBuild()).isAfter(after);
+		assertThat(quiet.getNextBuild()).isBeforeOrEqualsTo(after);
+	}
+
+	@Test
+	public void favelists_api_should_resume_full_builds_from_checkpoints() throws ServletException, IOException {
+		String listName = "resumable";
+		ofy().save().entity(new Hashtag(listName, "patient")).now();
+		// One more list than fits on a page
+		List<Object> entities = new ArrayList<>();
+		for (int i = 0; i <= HashtagScan.PAGE_SIZE; i++) {
+			FaveList faveList = new FaveList("patient" + i, listName);
+			faveList.getList().add(new FaveItem("Shared", "Song", "shared"));
+			faveList.getList().add(new FaveItem("Own", "Song", "own" + i % 3));
+			entities.add(faveList);
+			entities.add(new FaveListSummary(faveList));
+		}
+		ofy().save().entities(entities).now();
+		ofy().clear();
+
+		long budget = HashtagBuilderServlet.TASK_BUDGET_MILLIS;
+		// Every task stops after its first page
+		HashtagBuilderServlet.TASK_BUDGET_MILLIS = -1;
+		try {
+			HttpServletRequest req = TestHelper.newReq();
+			when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+			when(req.getParameter(HashtagBuilderServlet.MODE_PARAM)).thenReturn(HashtagBuilderServlet.MODE_RECONCILE);
+			new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+
+			int continuations = 0;
+			HashtagBuildCheckpoint checkpoint = ofy().load().type(HashtagBuildCheckpoint.class).id(listName).now();
+			while (checkpoint != null) {
+				assertThat(checkpoint.getListCount()).isEqualTo(HashtagScan.PAGE_SIZE);
+				continuations++;
+				when(req.getParameter(HashtagBuilderServlet.RESUME_PARAM)).thenReturn(String.valueOf(checkpoint.getBuildId()));
+				new HashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+				ofy().clear();
+				checkpoint = ofy().load().type(HashtagBuildCheckpoint.class).id(listName).now();
+			}
+
+			assertThat(continuations).isEqualTo(1);
+			List<FaveItem> faveItems = ofy().load().type(Hashtag.class).id(listName).now().getList();
+			assertThat(faveItems).extracting("songID").containsOnly("shared", "own0", "own1", "own2");
+			assertThat(faveItems.get(0).getSongID()).isEqualTo("shared");
+			assertThat(ScoreLedger.getTopItems(listName, false, 1).get(0).getSongID()).isEqualTo("shared");
+		}
+		finally {
+			HashtagBuilderServlet.TASK_BUDGET_MILLIS = budget;
+		}
+	}
+
+	@Test
+	public void favelists_api_should_build_large_hashtags_in_shards() throws ServletException, IOException {
+		String listName = "sharded";
+		ofy().save().entity(new Hashtag(listName, "mapper")).now();
+		for (int i = 0; i < 5; i++) {
+			FaveList faveList = new FaveList("mapper" + i, listName);
+			faveList.getList().add(new FaveItem("Shared", "Song", "shared"));
+			faveList.getList().add(new FaveItem("Own", "Song", "own" + i));
+			ofy().save().entities(faveList, new FaveListSummary(faveList)).now();
+		}
+
+		int listsPerShard = ShardedHashtagBuilderServlet.LISTS_PER_SHARD;
+		int shardsPerBatch = ShardedHashtagBuilderServlet.SHARDS_PER_BATCH;
+		ShardedHashtagBuilderServlet.LISTS_PER_SHARD = 2;
+		ShardedHashtagBuilderServlet.SHARDS_PER_BATCH = 2;
+		try {
+			ShardedHashtagBuilderServlet.planShards(listName, 5);
+			HashtagBuild build = ofy().load().type(HashtagBuild.class).id(listName).now();
+			assertThat(build.getShardCount()).isEqualTo(3);
+
+			HttpServletRequest req = TestHelper.newReq();
+			when(req.getParameter(HashtagBuilderServlet.HASHTAG_PARAM)).thenReturn(listName);
+			when(req.getParameter(ShardedHashtagBuilderServlet.BUILD_PARAM)).thenReturn(String.valueOf(build.getBuildId()));
+			when(req.getParameter(ShardedHashtagBuilderServlet.PHASE_PARAM)).thenReturn(ShardedHashtagBuilderServlet.PHASE_MAP);
+			// The first shard is retried, which mustn't count it twice or start the reduce early
+			for (int shard : new int[] { 0, 0, 1, 2 }) {
+				assertThat(reduceTasks(listName)).isEqualTo(0);
+				when(req.getParameter(ShardedHashtagBuilderServlet.SHARD_PARAM)).thenReturn(String.valueOf(shard));
+				new ShardedHashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+			}
+			assertThat(reduceTasks(listName)).isEqualTo(1);
+
+			when(req.getParameter(ShardedHashtagBuilderServlet.PHASE_PARAM)).thenReturn(ShardedHashtagBuilderServlet.PHASE_REDUCE);
+			new ShardedHashtagBuilderServlet().doPost(req, mock(HttpServletResponse.class));
+			ofy().clear();
+
+			List<FaveItem> faveItems = ofy().load().type(Hashtag.class).id(listName).now().getList();
+			assertThat(faveItems).extracting("songID").containsOnly("shared", "own0", "own1", "own2", "own3", "own4");
+			assertThat(faveItems.get(0).getSongID()).isEqualTo("shared");
+			assertThat(ScoreLedger.getTopItems(listName, false, 1).get(0).getSongID()).isEqualTo("shared");
+			assertThat(ofy().load().type(HashtagBuild.class).id(listName).now()).isNull();
+			assertThat(ofy().load().type(HashtagBuildShard.class).id(HashtagBuildShard.createId(listName, 0)).now()).isNull();
+		}
+		finally {
+			ShardedHashtagBuilderServlet.LISTS_PER_SHARD = listsPerShard;
+			ShardedHashtagBuilderServlet.SHARDS_PER_BATCH = shardsPerBatch;
+		}
+	}
+
+	// The reduce tasks of the hashtag's sharded builds on the queue
+	private static int reduceTasks(String hashtag) {
+		int tasks = 0;
+		for (TaskStateInfo task : LocalTaskQueueTestConfig.getLocalTaskQueue().getQueueStateInfo().get("hashtag-queue").getTaskInfo()) {
+			if (task.getTaskName().startsWith(hashtag) && task.getTaskName().endsWith(ShardedHashtagBuilderServlet.PHASE_REDUCE)) {
+				tasks++;
+			}
+		}
+		return tasks;
+	}
+
+	@Test
+	public void favelists_api_should_export_a_snapshot_chunk_by_chunk() throws ServletException, IOException {
+		ofy().save().entities(new Hashtag("exported", "exporter"), new AppUser("exporter")).now();
+		for (int i = 0; i < 3; i++) {
+			FaveList faveList = new FaveList("exporter" + i, "exported");
+			faveList.getList().add(new FaveItem("Exported", "Song", "exported" + i));
+			ofy().save().entity(faveList).now();
+		}
+
+		int listsPerChunk = SnapshotExportServlet.LISTS_PER_CHUNK;
+		SnapshotExportServlet.LISTS_PER_CHUNK = 2;
+		try {
+			SnapshotExportServlet servlet = new SnapshotExportServlet();
+			HttpServletResponse res = mock(HttpServletResponse.class);
+			when(res.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+			servlet.doGet(TestHelper.newReq(), res);
+
+			SnapshotExport export = ofy().load().type(SnapshotExport.class).first().now();
+			while (!export.isFinished()) {
+				HttpServletRequest req = TestHelper.newReq();
+				when(req.getParameter(SnapshotExportServlet.EXPORT_PARAM)).thenReturn(String.valueOf(export.getId()));
+				when(req.getParameter(SnapshotExportServlet.CHUNK_PARAM)).thenReturn(String.valueOf(export.getChunkCount()));
+				servlet.doPost(req, res);
+				// A retry of the same task must not write the chunk again
+				servlet.doPost(req, res);
+				ofy().clear();
+				export = ofy().load().type(SnapshotExport.class).id(export.getId()).now();
+			}
+
+			// Two FaveList chunks, then one each for hashtags and users
+			assertThat(export.getChunkCount()).isEqualTo(4);
+			assertThat(export.getRowCount()).isEqualTo(5);
+
+			ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+			try (SnapshotWriter writer = new SnapshotWriter(snapshot, export.getStarted().getTime())) {
+				for (int i = 0; i < export.getChunkCount(); i++) {
+					SnapshotChunk chunk = ofy().load().key(SnapshotChunk.key(export.getId(), i)).now();
+					writer.writeChunk(chunk.getKind(), chunk.getData());
+				}
+			}
+			SnapshotFaveListSource source = new SnapshotFaveListSource(ByteBuffer.wrap(snapshot.toByteArray()));
+			assertThat(source.getHashtags()).containsExactly("exported");
+
+			MasterListBuild build = new MasterListBuild();
+			source.addLists("exported", build);
+			assertThat(build.getListCount()).isEqualTo(3);
+			assertThat(build.getNewest()).extracting("songID").containsOnly("exported0", "exported1", "exported2");
+		}
+		finally {
+			SnapshotExportServlet.LISTS_PER_CHUNK = listsPerChunk;
+		}
+	}
+
+	@Test
+	public void favelists_api_should_refill_a_missing_newest_list_from_the_last_build() {
+		Hashtag hashtag = new Hashtag("evicted", "evictor");
+		hashtag.setNewestList(Arrays.asList(new FaveItem("Older", "Pick", "older"), new FaveItem("Newer", "Pick", "newer")));
+		ofy().save().entity(hashtag).now();
+
+		assertThat(FaveListsApi.getMasterFaveList("evicted", ListMode.NEWEST).getItems()).extracting("songID").containsExactly("newer", "older");
+		assertThat(MemcacheManager.getNewestSongs("evicted")).extracting("songID").containsExactly("newer", "older");
+
+		// Picks made since go on top of the refilled ring
+		MemcacheManager.addNewSong("evicted", new FaveItem("Newest", "Pick", "newest"));
+		assertThat(FaveListsApi.getMasterFaveList("evicted", ListMode.NEWEST).getItems()).extracting("songID").containsExactly("newest", "newer", "older");
+	}
+
+	@Test
+	public void favelists_api_should_serve_rendered_master_lists_until_they_change() throws IOException {
+		Hashtag hashtag = new Hashtag("rendered", "renderer");
+		hashtag.setList(Arrays.asList(new FaveItem("First", "Render", "firstRender")));
+		ofy().save().entity(hashtag).now();
+
+		Response gzipped = FaveListsApi.getRenderedMasterFaveList("rendered", ListMode.USERS, 0, 0, null, "gzip, deflate");
+		assertThat(gzipped.getMetadata().getFirst("Content-Encoding")).isEqualTo("gzip");
+		assertThat(gunzip((byte[])gzipped.getEntity())).contains("firstRender");
+		Response plain = FaveListsApi.getRenderedMasterFaveList("rendered", ListMode.USERS, 0, 0, null, null);
+		assertThat(new String((byte[])plain.getEntity(), "UTF-8")).contains("firstRender");
+		// Left for the CompressionFilter to deflate
+		Response refused = FaveListsApi.getRenderedMasterFaveList("rendered", ListMode.USERS, 0, 0, null, "gzip;q=0, deflate");
+		assertThat(refused.getMetadata().getFirst("Content-Encoding")).isNull();
+		long version = MemcacheManager.getCacheVersion(LocalCaches.MASTER_LIST_STAMP, "rendered");
+
+		// Saving the hashtag must render its lists again
+		hashtag.setList(Arrays.asList(new FaveItem("Second", "Render", "secondRender")));
+		ofy().save().entity(hashtag).now();
+
+		Response rerendered = FaveListsApi.getRenderedMasterFaveList("rendered", ListMode.USERS, 0, 0, null, "gzip");
+		assertThat(gunzip((byte[])rerendered.getEntity())).contains("secondRender").doesNotContain("firstRender");
+		// Along with the ETag of the lists
+		assertThat(MemcacheManager.getCacheVersion(LocalCaches.MASTER_LIST_STAMP, "rendered")).isNotEqualTo(version);
+	}
+
+	@Test
+	public void favelists_api_should_serve_a_slice_of_a_master_list() throws IOException {
+		Hashtag hashtag = new Hashtag("sliced", "slicer");
+		hashtag.setList(Arrays.asList(new FaveItem("First", "Slice", "firstSlice"), new FaveItem("Second", "Slice", "secondSlice"),
+				new FaveItem("Third", "Slice", "thirdSlice")));
+		ofy().save().entity(hashtag).now();
+
+		Response slice = FaveListsApi.getRenderedMasterFaveList("sliced", ListMode.USERS, 1, 1, "songID", "gzip");
+		String json = gunzip((byte[])slice.getEntity());
+		assertThat(json).contains("secondSlice").doesNotContain("firstSlice").doesNotContain("thirdSlice").doesNotContain("artist");
+		// Rendered once and kept with the whole list
+		Response again = FaveListsApi.getRenderedMasterFaveList("sliced", ListMode.USERS, 1, 1, " songID ", "gzip");
+		assertThat(again.getEntity()).isSameAs(slice.getEntity());
+
+		try {
+			FaveListsApi.getRenderedMasterFaveList("sliced", ListMode.USERS, 0, 0, "songID,password", "gzip");
+			fail("Expected a 400");
+		}
+		catch (WebApplicationException e) {
+			assertThat(e.getResponse().getStatus()).isEqualTo(400);
+		}
+	}
+
+	private static String gunzip(byte[] gzipped) throws IOException {
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			ByteArrayOutputStream json = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = gzip.read(buffer)) != -1) {
+				json.write(buffer, 0, read);
+			}
+			return json.toString("UTF-8");
+		}
+	}
+
+	@Test
+	public void favelists_api_should_fold_picks_into_trending_sketches() throws ServletException, IOException {
+		for (int i = 0; i < 3; i++) {
+			TrendingSketchServlet.recordPick("rock", new FaveItem("Hit", "Band", "hit"));
+		}
+		TrendingSketchServlet.recordPick("rock", new FaveItem("Miss", "Band", "miss"));
+		TrendingSketchServlet.recordPick("jazz", new FaveItem("Hit", "Band", "hit"));
+		TrendingSketchServlet.recordPick("jazz", new FaveItem("Blue", "Band", "blue"));
+
+		HttpServletResponse res = mock(HttpServletResponse.class);
+		when(res.getWriter()).thenReturn(new PrintWriter(new StringWriter()));
+		new TrendingSketchServlet().doGet(TestHelper.newReq(), res);
+
+		assertThat(FaveListsApi.getMasterFaveList("rock", ListMode.TRENDING).getItems()).extracting("songID").containsExactly("hit", "miss");
+		assertThat(FaveListsApi.getMasterFaveList("jazz", ListMode.TRENDING).getItems()).extracting("songID").containsOnly("hit", "blue");
+		assertThat(ofy().load().type(Hashtag.class).id(Constants.TRENDING_LIST_NAME).now().getList()).extracting("songID").startsWith("hit")
+				.containsOnly("hit", "miss", "blue");
+		assertThat(FaveListsApi.getMasterFaveListModes(Constants.TRENDING_LIST_NAME).getItems()).extracting("value").contains(ListMode.TRENDING);
+
+		// Folded picks are gone from the queue
+		new TrendingSketchServlet().doGet(TestHelper.newReq(), res);
+		ofy().clear();
+		assertThat(ofy().load().type(TrendingSnapshot.class).id(Constants.TRENDING_LIST_NAME).now().getSketch().getPickCount()).isEqualTo(6);
+	}
+
 	@Test
 	public void favelists_api_should_get_master_list() {
 		String listName = "hababi";
@@ -49,7 +49,7 @@ public class UserApiTest extends ApiTest {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		super.tearDown();
 		loggedInUser = null;
 	}
@@ -3,7 +3,9 @@ package com.fave100.server.api;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 
@@ -11,12 +13,15 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fave100.server.SessionAttributes;
 import com.fave100.server.TestHelper;
 import com.fave100.server.domain.UserRegistration;
 import com.fave100.server.domain.appuser.AppUser;
 import com.fave100.server.domain.appuser.FollowingResult;
 import com.fave100.server.domain.favelist.FaveItem;
 import com.fave100.server.domain.favelist.FaveList;
+import com.fave100.server.domain.favelist.ListPage;
+import com.fave100.shared.Constants;
 
 public class UsersApiTest extends ApiTest {
 
@@ -30,7 +35,7 @@ public class UsersApiTest extends ApiTest {
 	}
 
 	@After
-	public void tearDown() {
+	public void tearDown() throws Exception {
 		super.tearDown();
 		loggedInUser = null;
 	}
@@ -134,4 +139,30 @@ public class UsersApiTest extends ApiTest {
 			assertThat(e.getResponse().getStatus()).isEqualTo(Response.Status.NOT_FOUND.getStatusCode());
 		}
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void users_api_should_get_the_whole_list_page_at_once() {
+		AppUser pageOwner = TestHelper.createLoggedOutUser("PageOwner", "pageasdf1", "page@fave100.com");
+		TestHelper.addSingleFaveItemToDefaultList(pageOwner, "pagesong");
+		UserApi.followUser(loggedInUser, pageOwner.getUsername());
+
+		HttpServletRequest req = TestHelper.newReq();
+		when(req.getSession().getAttribute(SessionAttributes.AUTH_USER)).thenReturn(loggedInUser.getUsername());
+
+		// A list the user doesn't have falls back to their default list
+		ListPage page = UsersApi.getListPage(req, "pageowner", "madeup");
+		assertThat(page.getUser().getUsername()).isEqualTo("PageOwner");
+		assertThat(page.getList()).isEqualTo(Constants.DEFAULT_HASHTAG);
+		assertThat(page.getItems()).extracting("songID").containsExactly("pagesong");
+		assertThat(page.getCriticUrl()).isEmpty();
+		assertThat(page.isFollowed()).isTrue();
+		assertThat(page.getFollowing().getFollowing()).isEmpty();
+
+		// Nobody else sees the following of a user who keeps it private
+		pageOwner.setFollowingPrivate(true);
+		ofy().save().entity(pageOwner).now();
+		page = UsersApi.getListPage(TestHelper.newReq(), "pageowner", Constants.DEFAULT_HASHTAG);
+		assertThat(page.isFollowed()).isFalse();
+		assertThat(page.getFollowing()).isNull();
+	}
+}
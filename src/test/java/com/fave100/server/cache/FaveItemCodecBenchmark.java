@@ -0,0 +1,107 @@
+package com.fave100.server.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+/**
+ * Compares the Java serialization of the LinkedHashSet memcache used to hold newest lists with {@link FaveItemCodec}.
+ * Sizes are printed once per trial.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.mainClass=com.fave100.server.cache.FaveItemCodecBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FaveItemCodecBenchmark {
+
+	@Param({"1", "100"}) private int items;
+
+	private List<FaveItem> faveItems;
+	private byte[] serialized;
+	private byte[] encoded;
+
+	@Setup
+	public void setUp() throws IOException {
+		faveItems = newestList(items);
+		serialized = javaSerialize();
+		encoded = FaveItemCodec.encode(faveItems);
+		System.out.println(items + " items: " + serialized.length + " bytes serialized, " + encoded.length + " bytes encoded");
+	}
+
+	// Picks of a busy list, with some songs picked more than once
+	public static List<FaveItem> newestList(final int items) {
+		final Random random = new Random(42);
+		long datePicked = new Date().getTime();
+		final List<FaveItem> faveItems = new ArrayList<FaveItem>();
+		for (int i = 0; i < items; i++) {
+			final int song = random.nextInt(items * 3 / 4 + 1);
+			final FaveItem faveItem = new FaveItem("Song number " + song, "Artist " + (song % 20), "songID" + song);
+			if (random.nextInt(4) == 0) {
+				faveItem.setWhyline("The best song of the year, by far");
+			}
+			datePicked -= random.nextInt(60 * 60 * 1000);
+			faveItem.setDatePicked(new Date(datePicked));
+			faveItems.add(faveItem);
+		}
+		return faveItems;
+	}
+
+	@Benchmark
+	public byte[] javaSerialize() throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(new LinkedHashSet<FaveItem>(faveItems));
+		}
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public Object javaDeserialize() throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+			return in.readObject();
+		}
+	}
+
+	@Benchmark
+	public byte[] codecEncode() {
+		return FaveItemCodec.encode(faveItems);
+	}
+
+	@Benchmark
+	public List<FaveItem> codecDecode() throws IOException {
+		return FaveItemCodec.decode(encoded);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(FaveItemCodecBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -0,0 +1,64 @@
+package com.fave100.server.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+public class FaveItemCodecTest {
+
+	@Test
+	public void codec_should_round_trip_fave_items() throws IOException {
+		FaveItem first = new FaveItem("Song", "Artist", "id1");
+		first.setWhyline("Because");
+		first.setDatePicked(new Date(1400000000000L));
+		FaveItem second = new FaveItem("Sóng ♫", "Artist", "id2");
+		second.setDatePicked(new Date(1300000000000L));
+		FaveItem undated = new FaveItem("Song", null, "id1");
+		undated.setDatePicked(null);
+
+		List<FaveItem> decoded = FaveItemCodec.decode(FaveItemCodec.encode(Arrays.asList(first, second, undated)));
+
+		assertThat(decoded).extracting("song").containsExactly("Song", "Sóng ♫", "Song");
+		assertThat(decoded).extracting("artist").containsExactly("Artist", "Artist", null);
+		assertThat(decoded).extracting("songID").containsExactly("id1", "id2", "id1");
+		assertThat(decoded).extracting("whyline").containsExactly("Because", "", "");
+		assertThat(decoded.get(0).getDatePicked()).isEqualTo(first.getDatePicked());
+		assertThat(decoded.get(1).getDatePicked()).isEqualTo(second.getDatePicked());
+		assertThat(decoded.get(2).getDatePicked()).isNull();
+	}
+
+	@Test
+	public void codec_should_reject_other_versions() {
+		byte[] encoded = FaveItemCodec.encode(Arrays.asList(new FaveItem("Song", "Artist", "id")));
+		encoded[0] = FaveItemCodec.VERSION + 1;
+		try {
+			FaveItemCodec.decode(encoded);
+			fail("Decoded another version");
+		}
+		catch (IOException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void codec_should_be_much_smaller_than_java_serialization() throws IOException {
+		List<FaveItem> newest = FaveItemCodecBenchmark.newestList(100);
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+			out.writeObject(new LinkedHashSet<FaveItem>(newest));
+		}
+
+		assertThat(FaveItemCodec.encode(newest).length).isLessThan(serialized.size() / 2);
+	}
+}
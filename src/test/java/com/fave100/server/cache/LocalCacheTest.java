@@ -0,0 +1,318 @@
+package com.fave100.server.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.fave100.server.MemcacheManager;
+import com.fave100.server.api.ApiTest;
+import com.google.apphosting.api.ApiProxy;
+
+public class LocalCacheTest extends ApiTest {
+
+	private static final LocalCache.Weigher<String> LENGTH = new LocalCache.Weigher<String>() {
+		@Override
+		public int weigh(String value) {
+			return value.length();
+		}
+	};
+
+	// Loads the key with the number of times it has been loaded
+	private static class CountingLoader implements LocalCache.Loader<String> {
+		final Map<String, Integer> loads = new HashMap<String, Integer>();
+
+		@Override
+		public String load(String key) {
+			Integer count = loads.get(key);
+			loads.put(key, count == null ? 1 : count + 1);
+			return key + loads.get(key);
+		}
+	}
+
+	@Test
+	public void local_cache_should_serve_hits_from_the_heap() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 60000, LENGTH);
+		CountingLoader loader = new CountingLoader();
+
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+
+		assertThat(cache.getHits()).isEqualTo(2);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void local_cache_should_evict_the_least_recently_used_values_over_its_size() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 5, 60000, 60000, LENGTH);
+		CountingLoader loader = new CountingLoader();
+
+		cache.get("a", loader);
+		cache.get("b", loader);
+		cache.get("a", loader);
+		cache.get("c", loader);
+
+		assertThat(cache.getEvictions()).isEqualTo(1);
+		assertThat(cache.getWeight()).isEqualTo(4);
+		// b was used least recently, so a is still cached
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+		assertThat(cache.get("b", loader)).isEqualTo("b2");
+	}
+
+	@Test
+	public void local_cache_should_reload_values_changed_on_another_instance() throws Exception {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 0, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+
+		MemcacheManager.bumpCacheVersions("Test", Collections.singletonList("a")).get();
+
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+	}
+
+	@Test
+	public void local_cache_should_drop_values_changed_on_this_instance_at_once() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 60000, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+
+		cache.changed("a");
+
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+	}
+
+	@Test
+	public void local_cache_should_reload_values_loaded_before_a_change_was_committed() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 0, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+
+		// A load between the save publishing its change and its write completing sees the old value
+		cache.changed("a");
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+
+		LocalCaches.publishChanges();
+
+		assertThat(cache.get("a", loader)).isEqualTo("a3");
+		assertThat(cache.get("a", loader)).isEqualTo("a3");
+	}
+
+	@Test
+	public void local_cache_should_reload_values_older_than_a_checked_version() throws Exception {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 60000, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+		long version = MemcacheManager.getCacheVersion("Test", "a");
+
+		// The same version the value was loaded at keeps it
+		cache.checkVersion("a", version);
+		assertThat(cache.get("a", loader)).isEqualTo("a1");
+
+		// A newer one, as read for an ETag, has to be served with a value at least as new
+		MemcacheManager.bumpCacheVersions("Test", Collections.singletonList("a")).get();
+		cache.checkVersion("a", MemcacheManager.getCacheVersion("Test", "a"));
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+	}
+
+	@Test
+	public void local_cache_should_expire_values_after_their_ttl() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 0, 60000, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+
+		assertThat(cache.get("a", loader)).isEqualTo("a2");
+		assertThat(cache.getExpirations()).isEqualTo(1);
+	}
+
+	@Test
+	public void local_cache_should_load_concurrent_misses_once() throws Exception {
+		final LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 60000, LENGTH);
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final LocalCache.Loader<String> slowLoader = new LocalCache.Loader<String>() {
+			@Override
+			public String load(String key) {
+				loads.incrementAndGet();
+				loading.countDown();
+				await(release);
+				return key;
+			}
+		};
+
+		List<Future<String>> readers = new ArrayList<Future<String>>();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			readers.add(executor.submit(reader(cache, slowLoader)));
+			loading.await();
+			for (int i = 0; i < 3; i++) {
+				readers.add(executor.submit(reader(cache, slowLoader)));
+			}
+			// Let the waiting readers get to the load in progress before it finishes
+			while (cache.getCoalesced() < 3) {
+				Thread.sleep(1);
+			}
+			release.countDown();
+			for (Future<String> reader : readers) {
+				assertThat(reader.get()).isEqualTo("a");
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertThat(loads.get()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void local_cache_should_serve_the_stale_value_while_it_is_reloaded() throws Exception {
+		final LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 0, LENGTH);
+		final CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+		MemcacheManager.bumpCacheVersions("Test", Collections.singletonList("a")).get();
+
+		final CountDownLatch loading = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final LocalCache.Loader<String> slowLoader = new LocalCache.Loader<String>() {
+			@Override
+			public String load(String key) {
+				loading.countDown();
+				await(release);
+				return loader.load(key);
+			}
+		};
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<String> reloaded = executor.submit(reader(cache, slowLoader));
+			loading.await();
+			assertThat(cache.get("a", loader)).isEqualTo("a1");
+			assertThat(cache.getStaleHits()).isEqualTo(1);
+
+			release.countDown();
+			assertThat(reloaded.get()).isEqualTo("a2");
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void leased_loader_should_share_values_across_instances() {
+		LocalCache<ArrayList<String>> instance = new LocalCache<ArrayList<String>>("Shared", 100, 60000, 60000, new LocalCache.Weigher<ArrayList<String>>() {
+			@Override
+			public int weigh(ArrayList<String> value) {
+				return value.size();
+			}
+		});
+		final AtomicInteger loads = new AtomicInteger();
+		LocalCache.Loader<ArrayList<String>> loader = new LeasedLoader<ArrayList<String>>(instance, new StringListCodec(), new LocalCache.Loader<ArrayList<String>>() {
+			@Override
+			public ArrayList<String> load(String key) {
+				loads.incrementAndGet();
+				return new ArrayList<String>(Arrays.asList(key));
+			}
+		});
+
+		instance.get("a", loader);
+		// Another instance, with nothing cached yet
+		instance.clear();
+		assertThat(instance.get("a", loader)).containsExactly("a");
+
+		assertThat(loads.get()).isEqualTo(1);
+	}
+
+	@Test
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public void local_cache_should_load_straight_through_while_memcache_is_unavailable() {
+		LocalCache<String> cache = new LocalCache<String>("Test", 100, 60000, 0, LENGTH);
+		CountingLoader loader = new CountingLoader();
+		cache.get("a", loader);
+
+		final ApiProxy.Delegate delegate = ApiProxy.getDelegate();
+		ApiProxy.setDelegate(new ApiProxy.Delegate<ApiProxy.Environment>() {
+			@Override
+			public byte[] makeSyncCall(ApiProxy.Environment environment, String packageName, String methodName, byte[] request) {
+				if (packageName.equals("memcache"))
+					throw new ApiProxy.ApplicationException(0, "Memcache is down");
+				return delegate.makeSyncCall(environment, packageName, methodName, request);
+			}
+
+			@Override
+			public Future<byte[]> makeAsyncCall(ApiProxy.Environment environment, String packageName, String methodName, byte[] request, ApiProxy.ApiConfig apiConfig) {
+				if (packageName.equals("memcache")) {
+					FutureTask<byte[]> failed = new FutureTask<byte[]>(new Callable<byte[]>() {
+						@Override
+						public byte[] call() {
+							throw new ApiProxy.ApplicationException(0, "Memcache is down");
+						}
+					});
+					failed.run();
+					return failed;
+				}
+				return delegate.makeAsyncCall(environment, packageName, methodName, request, apiConfig);
+			}
+
+			@Override
+			public void log(ApiProxy.Environment environment, ApiProxy.LogRecord record) {
+				delegate.log(environment, record);
+			}
+
+			@Override
+			public void flushLogs(ApiProxy.Environment environment) {
+				delegate.flushLogs(environment);
+			}
+
+			@Override
+			public List<Thread> getRequestThreads(ApiProxy.Environment environment) {
+				return delegate.getRequestThreads(environment);
+			}
+		});
+		try {
+			// Neither the cached value nor a new one can be checked, so every get loads
+			assertThat(cache.get("a", loader)).isEqualTo("a2");
+			assertThat(cache.get("b", loader)).isEqualTo("b1");
+			assertThat(cache.get("b", loader)).isEqualTo("b2");
+		}
+		finally {
+			ApiProxy.setDelegate(delegate);
+		}
+	}
+
+	private static Callable<String> reader(final LocalCache<String> cache, final LocalCache.Loader<String> loader) {
+		final ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+		return new Callable<String>() {
+			@Override
+			public String call() {
+				ApiProxy.setEnvironmentForCurrentThread(environment);
+				return cache.get("a", loader);
+			}
+		};
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		}
+		catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
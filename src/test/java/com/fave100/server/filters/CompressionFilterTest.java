@@ -0,0 +1,139 @@
+package com.fave100.server.filters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+public class CompressionFilterTest {
+
+	private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+
+	@Test
+	public void compression_filter_should_gzip_big_responses() throws Exception {
+		byte[] json = json(4000);
+		HttpServletResponse response = filter("gzip, deflate", "GET big", json, null);
+
+		verify(response).setHeader("Content-Encoding", "gzip");
+		verify(response).setHeader("Vary", "Accept-Encoding");
+		verify(response).setHeader("ETag", "\"Stamp-1-gzip\"");
+		verify(response, never()).setContentLength(anyInt());
+		assertThat(gunzip(sent.toByteArray())).isEqualTo(json);
+
+		ResponseStats stats = ResponseStats.get("GET big");
+		assertThat(stats.getCompressed()).isEqualTo(1);
+		assertThat(stats.getBytesIn()).isEqualTo(json.length);
+		assertThat(stats.getBytesOut()).isEqualTo(sent.size()).isLessThan(json.length);
+	}
+
+	@Test
+	public void compression_filter_should_send_small_responses_as_they_are() throws Exception {
+		byte[] json = json(100);
+		HttpServletResponse response = filter("gzip", "GET small", json, null);
+
+		verify(response, never()).setHeader("Content-Encoding", "gzip");
+		verify(response).setContentLength(json.length);
+		verify(response).setHeader("ETag", "\"Stamp-1\"");
+		assertThat(sent.toByteArray()).isEqualTo(json);
+		assertThat(ResponseStats.get("GET small").getCompressed()).isEqualTo(0);
+	}
+
+	@Test
+	public void compression_filter_should_not_compress_precompressed_responses_again() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(json(4000));
+		}
+		byte[] gzipped = bytes.toByteArray();
+		filter("gzip", "GET rendered", gzipped, "gzip");
+
+		assertThat(sent.toByteArray()).isEqualTo(gzipped);
+		ResponseStats stats = ResponseStats.get("GET rendered");
+		assertThat(stats.getPrecompressed()).isEqualTo(1);
+		assertThat(stats.getCompressed()).isEqualTo(0);
+		assertThat(stats.getBytesOut()).isEqualTo(gzipped.length);
+	}
+
+	@Test
+	public void compression_filter_should_fall_back_to_deflate() {
+		assertThat(CompressionFilter.negotiate("deflate, gzip;q=0")).isEqualTo("deflate");
+		assertThat(CompressionFilter.negotiate("gzip;q=0.5, deflate")).isEqualTo("gzip");
+		assertThat(CompressionFilter.negotiate("*")).isEqualTo("gzip");
+		assertThat(CompressionFilter.negotiate("identity")).isNull();
+		assertThat(CompressionFilter.negotiate(null)).isNull();
+	}
+
+	// Filter a response the endpoint writes as Jersey would, headers first
+	private HttpServletResponse filter(String acceptEncoding, final String endpoint, final byte[] body, final String contentEncoding)
+			throws IOException, ServletException {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getHeader("Accept-Encoding")).thenReturn(acceptEncoding);
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				sent.write(b);
+			}
+		});
+
+		new CompressionFilter().doFilter(request, response, new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException {
+				ResponseStats.nameEndpoint(endpoint);
+				HttpServletResponse http = (HttpServletResponse)response;
+				http.setContentLength(body.length);
+				http.addHeader("ETag", "\"Stamp-1\"");
+				if (contentEncoding != null) {
+					http.setHeader("Content-Encoding", contentEncoding);
+				}
+				// Written in chunks, as a serializer would
+				for (int i = 0; i < body.length; i += 512) {
+					http.getOutputStream().write(body, i, Math.min(512, body.length - i));
+				}
+				http.getOutputStream().flush();
+			}
+		});
+		verify(response, never()).addHeader(anyString(), anyString());
+		return response;
+	}
+
+	// Repetitive, like a list of FaveItems
+	private static byte[] json(int length) {
+		StringBuilder json = new StringBuilder();
+		while (json.length() < length) {
+			json.append("{\"song\":\"Song\",\"artist\":\"Artist\"},");
+		}
+		return json.substring(0, length).getBytes();
+	}
+
+	private static byte[] gunzip(byte[] gzipped) throws IOException {
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = gzip.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+	}
+}
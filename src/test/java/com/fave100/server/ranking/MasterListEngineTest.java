@@ -0,0 +1,52 @@
+package com.fave100.server.ranking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fave100.server.domain.favelist.FaveListDao;
+
+public class MasterListEngineTest {
+
+	@Test
+	public void master_list_engine_should_rebuild_every_hashtag_of_a_snapshot() throws IOException, InterruptedException {
+		long now = 1_000_000_000_000L;
+		ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+		try (SnapshotWriter writer = new SnapshotWriter(snapshot, now)) {
+			writer.write(list("a:rock", "rock", false, "first", "second"));
+			writer.write(list("b:rock", "rock", false, "second", "third"));
+			writer.write(list("c:jazz", "jazz", true, "blue"));
+		}
+
+		SnapshotFaveListSource source = new SnapshotFaveListSource(ByteBuffer.wrap(snapshot.toByteArray()));
+		assertThat(source.getSnapshotTime()).isEqualTo(now);
+		assertThat(source.getHashtags()).containsExactly("rock", "jazz");
+
+		StringWriter out = new StringWriter();
+		long listCount = new MasterListEngine(source, new TsvMasterListSink(out)).buildAll(2);
+
+		assertThat(listCount).isEqualTo(3);
+		List<String> lines = Arrays.asList(out.toString().split("\n"));
+		// Picked by both rock lists, so ahead of the songs picked first in only one of them
+		assertThat(lines).contains("rock\tusers\t1\tsecond\tSong second\tArtist\t" + (FaveListDao.calculateItemScore(1) + FaveListDao.calculateItemScore(2)),
+				"jazz\tcritics\t1\tblue\tSong blue\tArtist\t" + FaveListDao.calculateItemScore(1));	}
+
+	private static ListSummary list(String id, String hashtag, boolean critic, String... songIDs) {
+		String[] songs = new String[songIDs.length];
+		String[] artists = new String[songIDs.length];
+		long[] datesPicked = new long[songIDs.length];
+		for (int i = 0; i < songIDs.length; i++) {
+			songs[i] = "Song " + songIDs[i];
+			artists[i] = "Artist";
+			datesPicked[i] = 1_000_000_000_000L - 60 * 60 * 1000;
+		}
+		return new ListSummary(id, hashtag, critic, songIDs, songs, artists, datesPicked);
+	}
+}
@@ -0,0 +1,106 @@
+package com.fave100.server.ranking;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.FaveListDao;
+import com.fave100.server.domain.favelist.FaveRankerWrapper;
+
+/**
+ * Compares the allocations of the HashMap the hashtag builder used to accumulate
+ * song scores in with {@link SongDictionary} and {@link ScoreAccumulator}.
+ *
+ * Runs with the GC profiler, compare the gc.alloc.rate.norm (bytes per build) of each benchmark.
+ * Run with: mvn test-compile exec:java -Dexec.mainClass=com.fave100.server.ranking.ScoreAccumulatorBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class ScoreAccumulatorBenchmark {
+
+	@Param({"1000", "10000"}) private int lists;
+	@Param({"5000", "100000"}) private int songs;
+
+	// Each list is 100 picks, as many of them as possible are for popular songs
+	private List<List<FaveItem>> faveLists;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		faveLists = new ArrayList<>(lists);
+		for (int i = 0; i < lists; i++) {
+			final List<FaveItem> faveList = new ArrayList<>(100);
+			for (int j = 0; j < 100; j++) {
+				final int song = (int)(songs * Math.pow(random.nextDouble(), 3));
+				faveList.add(new FaveItem("song", "artist", "song" + song));
+			}
+			faveLists.add(faveList);
+		}
+	}
+
+	@Benchmark
+	public List<FaveItem> hashMap() {
+		final HashMap<FaveRankerWrapper, Double> users = new HashMap<>();
+		for (final List<FaveItem> faveList : faveLists) {
+			int i = 1;
+			for (final FaveItem faveItem : faveList) {
+				final FaveRankerWrapper faveHolder = new FaveRankerWrapper(faveItem);
+				final double score = FaveListDao.calculateItemScore(i);
+				final double newVal = (users.get(faveHolder) != null) ? users.get(faveHolder) + score : score;
+				users.put(faveHolder, newVal);
+				i++;
+			}
+		}
+
+		final TopK<FaveItem> top = new TopK<>(100);
+		for (final Map.Entry<FaveRankerWrapper, Double> entry : users.entrySet()) {
+			top.offer(entry.getKey().getFaveItem(), entry.getValue());
+		}
+		return top.toList();
+	}
+
+	@Benchmark
+	public List<FaveItem> scoreAccumulator() {
+		final SongDictionary dictionary = new SongDictionary();
+		final ScoreAccumulator users = new ScoreAccumulator();
+		for (final List<FaveItem> faveList : faveLists) {
+			int i = 1;
+			for (final FaveItem faveItem : faveList) {
+				users.add(dictionary.intern(faveItem), FaveListDao.calculateItemScore(i));
+				i++;
+			}
+		}
+		return users.top(100, dictionary);
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder()
+				.include(ScoreAccumulatorBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
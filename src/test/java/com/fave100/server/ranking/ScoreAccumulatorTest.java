@@ -0,0 +1,53 @@
+package com.fave100.server.ranking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+public class ScoreAccumulatorTest {
+
+	@Test
+	public void song_dictionary_should_give_each_song_one_dense_id() {
+		SongDictionary songs = new SongDictionary(4);
+		for (int i = 0; i < 5000; i++) {
+			assertThat(songs.intern(new FaveItem("song", "artist", "id" + i))).isEqualTo(i);
+		}
+
+		FaveItem pick = new FaveItem("song", "artist", "id42");
+		pick.setWhyline("a whyline");
+
+		assertThat(songs.intern(pick)).isEqualTo(42);
+		assertThat(songs.find("id4999")).isEqualTo(4999);
+		assertThat(songs.find("missing")).isEqualTo(-1);
+		assertThat(songs.size()).isEqualTo(5000);
+		assertThat(songs.getFaveItem(42)).isNotSameAs(pick);
+		assertThat(songs.getFaveItem(42).getWhyline()).isEmpty();
+	}
+
+	@Test
+	public void score_accumulator_should_return_top_songs_by_total_score() {
+		SongDictionary songs = new SongDictionary();
+		ScoreAccumulator users = new ScoreAccumulator(1);
+		ScoreAccumulator critics = new ScoreAccumulator(1);
+
+		users.add(songs.intern(new FaveItem("a", "artist", "a")), 1);
+		users.add(songs.intern(new FaveItem("b", "artist", "b")), 5);
+		critics.add(songs.intern(new FaveItem("c", "artist", "c")), 7);
+		users.add(songs.intern(new FaveItem("a", "artist", "a")), 9);
+
+		List<String> top = new ArrayList<>();
+		for (FaveItem faveItem : users.top(100, songs)) {
+			top.add(faveItem.getSongID());
+		}
+
+		assertThat(top).containsExactly("a", "b");
+		assertThat(users.get(songs.find("a"))).isEqualTo(10);
+		assertThat(users.contains(songs.find("c"))).isFalse();
+		assertThat(critics.top(100, songs)).hasSize(1);
+	}
+}
@@ -0,0 +1,117 @@
+package com.fave100.server.ranking;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fave100.server.domain.favelist.FaveItem;
+import com.fave100.server.domain.favelist.FaveRankerWrapper;
+
+/**
+ * Compares the full sorts the hashtag builder used to select its top 100 lists with {@link TopK}.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.mainClass=com.fave100.server.ranking.TopKBenchmark -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx6g"})
+public class TopKBenchmark {
+
+	@Param({"10000", "1000000", "10000000"}) private int items;
+
+	private HashMap<FaveRankerWrapper, Double> scores;
+	private List<FaveItem> picks;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		final long now = new Date().getTime();
+
+		scores = new HashMap<>();
+		picks = new ArrayList<>(items);
+		for (int i = 0; i < items; i++) {
+			final FaveItem faveItem = new FaveItem("song", "artist", String.valueOf(i));
+			faveItem.setDatePicked(new Date(now - random.nextInt(Integer.MAX_VALUE)));
+			scores.put(new FaveRankerWrapper(faveItem), random.nextDouble() * 1000);
+			picks.add(faveItem);
+		}
+	}
+
+	@Benchmark
+	public List<FaveItem> masterListSort() {
+		final List<Map.Entry<FaveRankerWrapper, Double>> sorted = new LinkedList<>(scores.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<FaveRankerWrapper, Double>>() {
+			@Override
+			public int compare(final Map.Entry<FaveRankerWrapper, Double> o1, final Map.Entry<FaveRankerWrapper, Double> o2) {
+				return (o2.getValue()).compareTo(o1.getValue());
+			}
+		});
+
+		final List<FaveItem> master = new ArrayList<>();
+		for (final Map.Entry<FaveRankerWrapper, Double> entry : sorted) {
+			if (master.size() < 100) {
+				master.add(entry.getKey().getFaveItem());
+			}
+		}
+		return master;
+	}
+
+	@Benchmark
+	public List<FaveItem> masterListTopK() {
+		final TopK<FaveItem> top = new TopK<>(100);
+		for (final Map.Entry<FaveRankerWrapper, Double> entry : scores.entrySet()) {
+			top.offer(entry.getKey().getFaveItem(), entry.getValue());
+		}
+		return top.toList();
+	}
+
+	@Benchmark
+	public List<FaveItem> newestSort() {
+		final List<FaveItem> all = new ArrayList<>(picks);
+		Collections.sort(all, Collections.reverseOrder(new Comparator<FaveItem>() {
+			@Override
+			public int compare(final FaveItem o1, final FaveItem o2) {
+				return o1.getDatePicked().compareTo(o2.getDatePicked());
+			}
+		}));
+		return new ArrayList<>(all.subList(0, Math.min(100, all.size())));
+	}
+
+	@Benchmark
+	public List<FaveItem> newestTopK() {
+		final TopK<FaveItem> newest = new TopK<>(100);
+		for (final FaveItem faveItem : picks) {
+			newest.offer(faveItem, faveItem.getDatePicked().getTime());
+		}
+		return newest.toList();
+	}
+
+	public static void main(final String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(TopKBenchmark.class.getSimpleName()).build()).run();
+	}
+}
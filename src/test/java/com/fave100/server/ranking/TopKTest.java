@@ -0,0 +1,53 @@
+package com.fave100.server.ranking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TopKTest {
+
+	@Test
+	public void top_k_should_keep_highest_keys_in_descending_order() {
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			values.add(i);
+		}
+		Collections.shuffle(values, new Random(7));
+
+		TopK<Integer> top = new TopK<>(10);
+		for (Integer value : values) {
+			top.offer(value, value);
+		}
+
+		assertThat(top.toList()).containsExactly(999, 998, 997, 996, 995, 994, 993, 992, 991, 990);
+		assertThat(top.minKey()).isEqualTo(990);
+	}
+
+	@Test
+	public void top_k_should_return_everything_when_fewer_than_k_offered() {
+		TopK<String> top = new TopK<>(100);
+		top.offer("low", 1);
+		top.offer("high", 3);
+		top.offer("middle", 2);
+
+		assertThat(top.isFull()).isFalse();
+		assertThat(top.toList()).containsExactly("high", "middle", "low");
+	}
+
+	@Test
+	public void top_k_should_keep_accepting_items_after_being_listed() {
+		TopK<String> top = new TopK<>(2);
+		top.offer("a", 1);
+		top.offer("b", 2);
+		assertThat(top.toList()).containsExactly("b", "a");
+
+		assertThat(top.accepts(1)).isFalse();
+		top.offer("c", 3);
+		assertThat(top.toList()).containsExactly("c", "b");
+	}
+}
@@ -0,0 +1,62 @@
+package com.fave100.server.ranking;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+import com.fave100.server.domain.favelist.FaveItem;
+
+public class TrendingSketchTest {
+
+	private static final long NOW = 1_000_000_000_000L;
+
+	@Test
+	public void trending_sketch_should_halve_picks_every_half_life() {
+		TrendingSketch sketch = new TrendingSketch(64, 4, 10, NOW);
+		sketch.add(pick("old", NOW - TrendingSketch.HALF_LIFE_MILLIS));
+		sketch.add(pick("new", NOW));
+
+		assertThat(sketch.getScore("old", NOW)).isCloseTo(0.5, within(1e-9));
+		assertThat(sketch.getScore("new", NOW)).isCloseTo(1, within(1e-9));
+		assertThat(sketch.getScore("new", NOW + 2 * TrendingSketch.HALF_LIFE_MILLIS)).isCloseTo(0.25, within(1e-9));
+		assertThat(sketch.top(2)).extracting("songID").containsExactly("new", "old");
+	}
+
+	@Test
+	public void trending_sketch_should_keep_heavy_hitters_in_a_full_table() {
+		TrendingSketch sketch = new TrendingSketch(256, 4, 5, NOW);
+		// Many songs picked once, with a few picked often in between
+		for (int i = 0; i < 200; i++) {
+			sketch.add(pick("once" + i, NOW));
+			if (i % 10 == 0) {
+				sketch.add(pick("hit", NOW));
+			}
+			if (i % 20 == 0) {
+				sketch.add(pick("runnerUp", NOW));
+			}
+		}
+
+		assertThat(sketch.top(2)).extracting("songID").containsExactly("hit", "runnerUp");
+		assertThat(sketch.getScore("hit", NOW)).isCloseTo(20, within(1e-9));
+		assertThat(sketch.getPickCount()).isEqualTo(230);
+	}
+
+	@Test
+	public void trending_sketch_should_rebase_without_changing_scores() {
+		TrendingSketch sketch = new TrendingSketch(64, 4, 10, NOW);
+		sketch.add(pick("song", NOW));
+		long later = NOW + 100 * TrendingSketch.HALF_LIFE_MILLIS;
+		sketch.add(pick("song", later));
+
+		assertThat(sketch.getScore("song", later)).isCloseTo(1, within(1e-9));
+	}
+
+	private static FaveItem pick(String songID, long datePicked) {
+		FaveItem pick = new FaveItem("Song " + songID, "Artist", songID);
+		pick.setDatePicked(new Date(datePicked));
+		return pick;
+	}
+}